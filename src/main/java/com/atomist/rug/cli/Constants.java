@@ -67,6 +67,14 @@ public class Constants {
         System.setProperty("RUG_CLI_SHELL", isShell.toString());
     }
 
+    public static Boolean isDaemon() {
+        return Boolean.valueOf(System.getProperty("RUG_CLI_DAEMON", "false"));
+    }
+
+    public static void setDaemon(Boolean isDaemon) {
+        System.setProperty("RUG_CLI_DAEMON", isDaemon.toString());
+    }
+
     public static String command() {
         // When running inside the shell we don't need command to show in help and error msg
         if (isShell()) {
@@ -85,4 +93,12 @@ public class Constants {
         System.setProperty("RUG_CLI_RESTART", isReload.toString());
 
     }
+
+    public static Boolean isRebuilding() {
+        return Boolean.valueOf(System.getProperty("RUG_CLI_REBUILDING", "false"));
+    }
+
+    public static void setRebuilding(Boolean isRebuilding) {
+        System.setProperty("RUG_CLI_REBUILDING", isRebuilding.toString());
+    }
 }
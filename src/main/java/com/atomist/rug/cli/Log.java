@@ -18,6 +18,9 @@ public class Log implements Logger {
     // There is a performance hit to have a logger per clazz
     private static final Logger logger;
 
+    // Work running in the background, eg. the shell rebuilding rugs, must not print to the console
+    private static final InheritableThreadLocal<Boolean> silent = new InheritableThreadLocal<>();
+
     static {
 
         if (ClassUtils.isPresent("ch.qos.logback.classic.LoggerContext",
@@ -33,6 +36,14 @@ public class Log implements Logger {
 
     }
 
+    public static boolean isSilent() {
+        return Boolean.TRUE.equals(silent.get());
+    }
+
+    public static void setSilent(boolean isSilent) {
+        silent.set(isSilent);
+    }
+
     @Override
     public void debug(Marker marker, String msg) {
         logger.debug(marker, msg);
@@ -391,6 +402,9 @@ public class Log implements Logger {
     }
 
     private void doPrintln(String message) {
+        if (isSilent()) {
+            return;
+        }
         Optional<ProgressReporter> indicator = ProgressReporterUtils.getActiveProgressReporter();
         if (indicator.isPresent()) {
             indicator.get().report(message);
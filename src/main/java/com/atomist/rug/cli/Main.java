@@ -2,9 +2,12 @@ package com.atomist.rug.cli;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Optional;
 
 import com.atomist.rug.cli.command.ServiceLoadingCommandInfoRegistry;
+import com.atomist.rug.cli.daemon.DaemonClient;
 import com.atomist.rug.cli.output.ConsoleUtils;
+import com.atomist.rug.cli.utils.Profiler;
 
 /**
  * Main entry point into the CLI
@@ -16,6 +19,18 @@ public class Main {
         // commandline
         args = waitForInput(args);
 
+        // Profiling needs to start before anything else and is only meaningful in this JVM
+        if (Arrays.asList(args).contains("--profile")) {
+            Profiler.enable();
+        }
+        else {
+            // Hand the command over to a running daemon if there is one
+            Optional<Integer> rc = DaemonClient.run(args);
+            if (rc.isPresent()) {
+                System.exit(rc.get());
+            }
+        }
+
         // Some setup
         configureEnv();
 
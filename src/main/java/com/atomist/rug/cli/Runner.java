@@ -1,11 +1,19 @@
 package com.atomist.rug.cli;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.lang3.StringUtils;
 
 import com.atomist.rug.cli.command.CommandInfoRegistry;
 import com.atomist.rug.cli.command.CommandUtils;
+import com.atomist.rug.cli.command.ReflectiveCommandRunner;
 import com.atomist.rug.cli.command.ShellCommandRunner;
 import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
 import com.atomist.rug.cli.version.VersionThread;
 import com.atomist.rug.cli.version.VersionUtils;
 import com.atomist.rug.cli.version.VersionUtils.VersionInformation;
@@ -24,9 +32,15 @@ public class Runner {
     }
 
     public void run(String[] args) {
+        System.exit(execute(args));
+    }
+
+    public int execute(String[] args) {
 
         // Validate the JDK version
-        VersionUtils.validateJdkVersion();
+        try (Span span = Profiler.span("jdk check")) {
+            VersionUtils.validateJdkVersion();
+        }
 
         int returnCode = 0;
 
@@ -36,7 +50,12 @@ public class Runner {
         else {
             CommandLine commandLine = null;
             try {
-                commandLine = CommandUtils.parseInitialCommandline(args, registry);
+                try (Span span = Profiler.span("parse command line")) {
+                    commandLine = CommandUtils.parseInitialCommandline(args, registry);
+                }
+                // Settings are needed by almost every command; parse them while the command gets
+                // looked up
+                SettingsReader.preload();
                 returnCode = runCommand(args, commandLine);
             }
             catch (ReloadException e) {
@@ -48,9 +67,29 @@ public class Runner {
             }
 
             printNewVersion();
+            printProfile();
         }
-        System.exit(returnCode);
+        return returnCode;
+    }
 
+    private void printProfile() {
+        if (!Profiler.isEnabled()) {
+            return;
+        }
+        List<String[]> summary = Profiler.summary();
+        int width = summary.stream().mapToInt(s -> s[0].length()).max().orElse(0);
+
+        log.newline();
+        log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("Profile"));
+        summary.forEach(s -> log.info("  %s  %5s  %10s", StringUtils.rightPad(s[0], width), s[1],
+                s[2]));
+        try {
+            log.newline();
+            log.info("Trace written to %s", Style.underline(Profiler.writeTrace().getPath()));
+        }
+        catch (IOException e) {
+            log.info(Style.yellow("Failed to write trace file: %s", e.getMessage()));
+        }
     }
 
     private void logException(CommandLine commandLine, Throwable e) {
@@ -82,7 +121,7 @@ public class Runner {
         if ((commandLine.hasOption("?") || commandLine.hasOption("h"))
                 && commandLine.getArgList().isEmpty()) {
             args = new String[] { "help" };
-            new ShellCommandRunner(registry).runCommand(args);
+            commandRunner(registry).runCommand(args);
         }
         else if (commandLine.getArgList().isEmpty()) {
             log.error("Missing command argument.\n" + "\n"
@@ -90,8 +129,12 @@ public class Runner {
             return 1;
         }
         else {
-            return new ShellCommandRunner(registry).runCommand(args);
+            return commandRunner(registry).runCommand(args);
         }
         return 0;
     }
+
+    protected ReflectiveCommandRunner commandRunner(CommandInfoRegistry registry) {
+        return new ShellCommandRunner(registry);
+    }
 }
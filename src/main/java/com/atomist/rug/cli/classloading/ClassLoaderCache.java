@@ -0,0 +1,116 @@
+package com.atomist.rug.cli.classloading;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.atomist.rug.cli.utils.ChecksumUtils;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+
+/**
+ * Bounded LRU cache of {@link URLClassLoader}s keyed by a fingerprint of the classpath they were
+ * created for. Evicted classloaders get closed to release their jar file handles.
+ */
+class ClassLoaderCache {
+
+    private static final String COMMAND_CLASS_NAME = "com.atomist.rug.cli.command."
+            + "AbstractCompilingAndOperationLoadingCommand";
+
+    private final Map<String, URLClassLoader> classLoaders;
+    private int hits = 0;
+    private int misses = 0;
+
+    @SuppressWarnings("serial")
+    ClassLoaderCache(int maxSize) {
+        this.classLoaders = new LinkedHashMap<String, URLClassLoader>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, URLClassLoader> eldest) {
+                if (size() > maxSize) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized Optional<URLClassLoader> get(String fingerprint) {
+        URLClassLoader classLoader = classLoaders.get(fingerprint);
+        if (classLoader != null) {
+            hits++;
+        }
+        else {
+            misses++;
+        }
+        return Optional.ofNullable(classLoader);
+    }
+
+    synchronized void put(String fingerprint, URLClassLoader classLoader) {
+        classLoaders.put(fingerprint, classLoader);
+    }
+
+    synchronized int hits() {
+        return hits;
+    }
+
+    synchronized int misses() {
+        return misses;
+    }
+
+    /**
+     * Fingerprint of the ordered classpath. Jars that got rebuilt in place, e.g. extensions under
+     * ~/.atomist/ext, change the fingerprint via their timestamp and size.
+     */
+    static String fingerprint(ArtifactDescriptor artifact, List<URL> urls) {
+        StringBuilder fingerprint = new StringBuilder().append(artifact.group()).append(":")
+                .append(artifact.artifact()).append(":").append(artifact.version()).append(":")
+                .append(artifact.uri()).append("\n");
+        urls.forEach(u -> {
+            fingerprint.append(u);
+            if ("file".equals(u.getProtocol())) {
+                try {
+                    File file = new File(u.toURI());
+                    fingerprint.append(":").append(file.lastModified()).append(":")
+                            .append(file.length());
+                }
+                catch (URISyntaxException | IllegalArgumentException e) {
+                    // Fall back to the url only
+                }
+            }
+            fingerprint.append("\n");
+        });
+        return ChecksumUtils.sha256(fingerprint.toString());
+    }
+
+    private static void close(URLClassLoader classLoader) {
+        shutdown(classLoader);
+        try {
+            classLoader.close();
+        }
+        catch (IOException e) {
+            // Nothing we can do about it; the classloader is gone from the cache either way
+        }
+    }
+
+    /**
+     * Stops the threads the commands started inside the classloader; they would keep it alive.
+     */
+    private static void shutdown(URLClassLoader classLoader) {
+        try {
+            Class<?> commandClass = classLoader.loadClass(COMMAND_CLASS_NAME);
+            // Classloaders used from the IDE might not define the command classes themselves
+            if (commandClass.getClassLoader() == classLoader) {
+                commandClass.getMethod("shutdownDependencyPool").invoke(null);
+            }
+        }
+        catch (ReflectiveOperationException e) {
+            // The threads die with the JVM
+        }
+    }
+}
@@ -10,7 +10,9 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
 
+import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.settings.SettingsReader;
 import com.atomist.rug.resolver.ArtifactDescriptor;
 
 /**
@@ -22,6 +24,13 @@ import com.atomist.rug.resolver.ArtifactDescriptor;
  */
 public abstract class ClassLoaderFactory {
 
+    private static final String CLASSLOADER_CACHE_SIZE_KEY = "classloader_cache_size";
+    private static final int CLASSLOADER_CACHE_SIZE = 4;
+
+    // The shell and daemon hold on to classloaders so that subsequent commands with the same
+    // classpath find classes, Nashorn and the TypeScript compiler warm
+    private static ClassLoaderCache cache;
+
     public static void setupClassLoader(ArtifactDescriptor artifact,
             List<ArtifactDescriptor> dependencies) {
         setupClassLoader(artifact, dependencies, null);
@@ -39,7 +48,18 @@ public abstract class ClassLoaderFactory {
         addExtensionsToClasspath(urls);
         addCommandExtensionsToClasspath(artifact, classpathEntryProvider, urls);
 
-        ClassLoader cls = null;
+        Optional<ClassLoaderCache> classLoaderCache = cache();
+        String fingerprint = null;
+        if (classLoaderCache.isPresent()) {
+            fingerprint = ClassLoaderCache.fingerprint(artifact, urls);
+            Optional<URLClassLoader> cached = classLoaderCache.get().get(fingerprint);
+            if (cached.isPresent()) {
+                Thread.currentThread().setContextClassLoader(cached.get());
+                return;
+            }
+        }
+
+        URLClassLoader cls = null;
 
         // If running from an IDE we need a different classloader hierarchy
         if (codeLocation.toString().endsWith("jar")) {
@@ -49,10 +69,38 @@ public abstract class ClassLoaderFactory {
             cls = createDevClassLoader(urls);
         }
 
+        if (classLoaderCache.isPresent()) {
+            classLoaderCache.get().put(fingerprint, cls);
+        }
+
         Thread.currentThread().setContextClassLoader(cls);
     }
 
-    private static ClassLoader createDevClassLoader(List<URL> urls) {
+    public static int cacheHits() {
+        return (cache != null ? cache.hits() : 0);
+    }
+
+    public static int cacheMisses() {
+        return (cache != null ? cache.misses() : 0);
+    }
+
+    private static synchronized Optional<ClassLoaderCache> cache() {
+        // Single commands get a fresh JVM anyway, so only bother in long-running sessions
+        if (!Constants.isShell() && !Constants.isDaemon()) {
+            return Optional.empty();
+        }
+        if (cache == null) {
+            int size = SettingsReader.read().getConfigValue(CLASSLOADER_CACHE_SIZE_KEY,
+                    CLASSLOADER_CACHE_SIZE);
+            if (size <= 0) {
+                return Optional.empty();
+            }
+            cache = new ClassLoaderCache(size);
+        }
+        return Optional.of(cache);
+    }
+
+    private static URLClassLoader createDevClassLoader(List<URL> urls) {
         // Used only in ide/dev/build so that we use Rug from this project's pom, and not from the
         // Rug Archive used in the tests!
         List<URL> filtered = urls.stream()
@@ -61,7 +109,7 @@ public abstract class ClassLoaderFactory {
         return new URLClassLoader(filtered.toArray(new URL[filtered.size()]));
     }
 
-    private static ClassLoader createJarClassLoader(List<URL> urls) {
+    private static URLClassLoader createJarClassLoader(List<URL> urls) {
         return new DelegatingUrlClassLoader(urls.toArray(new URL[urls.size()]),
                 Thread.currentThread().getContextClassLoader());
     }
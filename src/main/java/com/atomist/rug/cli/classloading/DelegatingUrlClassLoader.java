@@ -1,14 +1,30 @@
 package com.atomist.rug.cli.classloading;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.CodeSource;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
-import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.atomist.rug.cli.settings.SettingsReader;
 
 class DelegatingUrlClassLoader extends URLClassLoader {
 
+    private static final String ENABLE_CLASSPATH_INDEX_KEY = "enable_classpath_index";
+    private static final boolean ENABLE_CLASSPATH_INDEX = true;
+
     // Nashorn and some of the scripting classes need to come from the system classloader;
     // everything else we need to isolate and not delegate to the parent class loader
 
@@ -22,28 +38,173 @@ class DelegatingUrlClassLoader extends URLClassLoader {
             "com.atomist.rug.resolver", "com.atomist.rug.cli", "com.atomist.rug.cli.command.error",
             "com.atomist.rug.cli.settings" };
 
-    private List<String> delegatingPackagesAndSubPackages = Arrays
-            .asList(DEFAULT_DELEGATING_PACKAGES_AND_SUBPACKAGES);
-    private List<String> delegatingPackages = Arrays.asList(DEFAULT_DELEGATING_PACKAGES);
+    // Single classes whose state needs to be shared with the CLI outside of the delegated
+    // packages; the profiler records spans of both sides into one trace, both sides lock the
+    // local repository through the same in-process locks and see the same environment
+    private static final String[] DEFAULT_DELEGATING_CLASSES = new String[] {
+            "com.atomist.rug.cli.utils.Profiler",
+            "com.atomist.rug.cli.resolver.LocalRepositoryLocks",
+            "com.atomist.rug.cli.utils.Environment" };
+
+    private static final PrefixTrie delegatingPackagesAndSubPackages = new PrefixTrie(
+            DEFAULT_DELEGATING_PACKAGES_AND_SUBPACKAGES);
+    private static final Set<String> delegatingPackages = new HashSet<>(
+            Arrays.asList(DEFAULT_DELEGATING_PACKAGES));
+    private static final Set<String> delegatingClasses = new HashSet<>(
+            Arrays.asList(DEFAULT_DELEGATING_CLASSES));
 
+    private final Map<URL, JarFile> jars = new HashMap<>();
+    private final PackageIndex index;
     private ClassLoader parent;
 
     DelegatingUrlClassLoader(URL[] urls, ClassLoader parent) {
         super(urls, null);
         this.parent = parent;
+        this.index = (SettingsReader.read().getConfigValue(ENABLE_CLASSPATH_INDEX_KEY,
+                ENABLE_CLASSPATH_INDEX) ? PackageIndex.create(urls) : null);
     }
 
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
-        String packageName = ClassUtils.getPackageCanonicalName(name);
-        if (delegatingPackagesAndSubPackages.stream().anyMatch(name::startsWith)) {
-            return parent.loadClass(name);
-        }
-        else if (delegatingPackages.stream().anyMatch(packageName::equals)) {
+        if (delegatingPackagesAndSubPackages.matches(name)
+                || delegatingPackages.contains(packageName(name))
+                || delegatingClasses.contains(outerClassName(name))) {
             return parent.loadClass(name);
         }
         else {
             return super.loadClass(name);
         }
     }
+
+    /**
+     * Goes straight to the jars that contain the package of the requested class instead of
+     * searching the complete classpath.
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (index == null) {
+            return super.findClass(name);
+        }
+        String path = name.replace('.', '/').concat(".class");
+        for (URL url : index.jars(packageName(name))) {
+            JarFile jar = jar(url);
+            JarEntry entry = (jar != null ? jar.getJarEntry(path) : null);
+            if (entry != null) {
+                return defineClass(name, url, jar, entry);
+            }
+        }
+        if (index.isComplete()) {
+            throw new ClassNotFoundException(name);
+        }
+        return super.findClass(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (jars) {
+            for (JarFile jar : jars.values()) {
+                IOUtils.closeQuietly(jar);
+            }
+            jars.clear();
+        }
+        super.close();
+    }
+
+    private Class<?> defineClass(String name, URL url, JarFile jar, JarEntry entry)
+            throws ClassNotFoundException {
+        try {
+            byte[] bytes;
+            try (InputStream is = jar.getInputStream(entry)) {
+                bytes = IOUtils.toByteArray(is);
+            }
+            definePackage(packageName(name), url, jar);
+            return defineClass(name, bytes, 0, bytes.length,
+                    new CodeSource(url, entry.getCodeSigners()));
+        }
+        catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private void definePackage(String packageName, URL url, JarFile jar) throws IOException {
+        if (packageName.isEmpty() || getPackage(packageName) != null) {
+            return;
+        }
+        try {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                definePackage(packageName, manifest, url);
+            }
+            else {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            // Package got defined concurrently
+        }
+    }
+
+    private JarFile jar(URL url) {
+        synchronized (jars) {
+            JarFile jar = jars.get(url);
+            if (jar == null) {
+                File file = PackageIndex.file(url);
+                if (file == null) {
+                    return null;
+                }
+                try {
+                    jar = new JarFile(file);
+                    jars.put(url, jar);
+                }
+                catch (IOException e) {
+                    return null;
+                }
+            }
+            return jar;
+        }
+    }
+
+    private static String packageName(String name) {
+        int ix = name.lastIndexOf('.');
+        return (ix > 0 ? name.substring(0, ix) : "");
+    }
+
+    private static String outerClassName(String name) {
+        int ix = name.indexOf('$');
+        return (ix > 0 ? name.substring(0, ix) : name);
+    }
+
+    /**
+     * Character trie over package prefixes so that checking a class name costs a single walk
+     * over its characters.
+     */
+    private static class PrefixTrie {
+
+        private final Map<Character, PrefixTrie> children = new HashMap<>();
+        private boolean terminal = false;
+
+        PrefixTrie(String... prefixes) {
+            for (String prefix : prefixes) {
+                PrefixTrie node = this;
+                for (char c : prefix.toCharArray()) {
+                    node = node.children.computeIfAbsent(c, k -> new PrefixTrie());
+                }
+                node.terminal = true;
+            }
+        }
+
+        boolean matches(String name) {
+            PrefixTrie node = this;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package com.atomist.rug.cli.classloading;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.atomist.rug.cli.resolver.DependencyResolutionCache;
+import com.atomist.rug.cli.utils.CacheUtils;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+
+/**
+ * Maps packages to the jars of a classpath that contain classes of that package. The index is built
+ * once per classpath and stored next to the resolution cache keyed by a fingerprint of the jars.
+ * <p>
+ * An index is only complete if every entry of the classpath is a jar; directories can't be indexed
+ * and need the regular classpath search.
+ */
+class PackageIndex {
+
+    private static final String COMPLETE = "complete";
+    private static final String INCOMPLETE = "incomplete";
+
+    private final Map<String, List<URL>> packages;
+    private final boolean complete;
+
+    private PackageIndex(Map<String, List<URL>> packages, boolean complete) {
+        this.packages = packages;
+        this.complete = complete;
+    }
+
+    List<URL> jars(String packageName) {
+        return packages.getOrDefault(packageName, Collections.emptyList());
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    static PackageIndex create(URL[] urls) {
+        File indexFile = new File(indexRoot(), fingerprint(urls) + ".idx");
+        if (indexFile.exists()) {
+            try {
+                return read(indexFile, urls);
+            }
+            catch (IOException | RuntimeException e) {
+                // Build it again
+            }
+        }
+
+        List<Set<String>> jarPackages = new ArrayList<>();
+        boolean complete = true;
+        for (URL url : urls) {
+            Set<String> names = packages(url);
+            complete &= (names != null);
+            jarPackages.add(names != null ? names : Collections.emptySet());
+        }
+        write(indexFile, jarPackages, complete);
+        return new PackageIndex(toIndex(urls, jarPackages), complete);
+    }
+
+    private static PackageIndex read(File indexFile, URL[] urls) throws IOException {
+        List<Set<String>> jarPackages = new ArrayList<>();
+        boolean complete;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            complete = COMPLETE.equals(reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Set<String> names = new LinkedHashSet<>();
+                if (!line.isEmpty()) {
+                    Collections.addAll(names, line.split(","));
+                }
+                jarPackages.add(names);
+            }
+        }
+        if (jarPackages.size() != urls.length) {
+            throw new IOException("Index doesn't match classpath");
+        }
+        return new PackageIndex(toIndex(urls, jarPackages), complete);
+    }
+
+    private static void write(File indexFile, List<Set<String>> jarPackages, boolean complete) {
+        StringBuilder content = new StringBuilder(complete ? COMPLETE : INCOMPLETE).append("\n");
+        jarPackages.forEach(names -> content.append(String.join(",", names)).append("\n"));
+        try {
+            CacheUtils.write(indexFile, content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            // Next classloader for this classpath will index again
+        }
+    }
+
+    private static Map<String, List<URL>> toIndex(URL[] urls, List<Set<String>> jarPackages) {
+        Map<String, List<URL>> index = new HashMap<>();
+        for (int i = 0; i < urls.length; i++) {
+            URL url = urls[i];
+            jarPackages.get(i).forEach(p -> index.computeIfAbsent(p, k -> new ArrayList<>(1))
+                    .add(url));
+        }
+        return index;
+    }
+
+    /**
+     * Returns the packages of all classes in the given jar or <code>null</code> if the url isn't a
+     * jar that could be read.
+     */
+    private static Set<String> packages(URL url) {
+        File file = file(url);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    int ix = name.lastIndexOf('/');
+                    names.add(ix > 0 ? name.substring(0, ix).replace('/', '.') : "");
+                }
+            }
+            return names;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    static File file(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        }
+        catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String fingerprint(URL[] urls) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (URL url : urls) {
+            fingerprint.append(url);
+            File file = file(url);
+            if (file != null) {
+                fingerprint.append(":").append(file.lastModified()).append(":")
+                        .append(file.length());
+            }
+            fingerprint.append("\n");
+        }
+        return ChecksumUtils.sha256(fingerprint.toString());
+    }
+
+    private static File indexRoot() {
+        return new File(DependencyResolutionCache.cacheRoot().getParentFile(), "classpath");
+    }
+}
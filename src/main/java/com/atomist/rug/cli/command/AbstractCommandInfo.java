@@ -31,6 +31,8 @@ public abstract class AbstractCommandInfo implements CommandInfo {
         options.addOption("n", "noisy", false, "Display more progress messages");
         options.addOption("o", "offline", false, "Use only downloaded archives");
         options.addOption("t", "timer", false, "Print timing information");
+        options.addOption(Option.builder().longOpt("profile").hasArg(false).required(false)
+                .desc("Record timings of all phases and write a trace file").build());
         options.addOption("r", "resolver-report", false, "Print dependency tree");
         options.addOption("u", "update", false, "Update dependency resolution");
         options.addOption(Option.builder().longOpt("requires").argName("RUG_VERSION").hasArg(true)
@@ -4,6 +4,11 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.commons.cli.CommandLine;
@@ -13,15 +18,29 @@ import com.atomist.project.archive.Coordinate;
 import com.atomist.project.archive.Dependency;
 import com.atomist.project.archive.ResolvedDependency;
 import com.atomist.project.archive.RugResolver;
+import com.atomist.project.archive.Rugs;
+import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.Log;
+import com.atomist.rug.cli.command.fs.ArtifactSourceFileWatcherFactory.FileWatcher;
+import com.atomist.rug.cli.command.fs.ChangeTrackingArtifactSource;
+import com.atomist.rug.cli.command.utils.ArtifactSourceCache;
 import com.atomist.rug.cli.command.utils.ArtifactSourceUtils;
+import com.atomist.rug.cli.command.utils.CompilerCache;
+import com.atomist.rug.cli.command.utils.IncrementalTypeScriptCompiler;
+import com.atomist.rug.cli.command.utils.RugIndex;
 import com.atomist.rug.cli.output.ConsoleLogger;
+import com.atomist.rug.cli.output.ProgressReporter;
 import com.atomist.rug.cli.output.ProgressReporterUtils;
 import com.atomist.rug.cli.output.ProgressReportingOperationRunner;
 import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.settings.Settings;
 import com.atomist.rug.cli.settings.SettingsReader;
 import com.atomist.rug.cli.utils.ArtifactDescriptorUtils;
+import com.atomist.rug.cli.utils.BackgroundTasks;
 import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
+import com.atomist.rug.cli.utils.StringUtils;
 import com.atomist.rug.compiler.Compiler;
 import com.atomist.rug.compiler.CompilerListener;
 import com.atomist.rug.compiler.typescript.TypeScriptCompiler;
@@ -38,10 +57,19 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
 
     private static final String ENABLE_COMPILER_CACHE_KEY = "enable_compiler_cache";
     private static final boolean ENABLE_COMPILER_CACHE = true;
+    private static final String COMPILER_THREADS_KEY = "compiler_threads";
+    private static final String COMPILER_CACHE_DIR_KEY = "compiler_cache_dir";
+    private static final String COMPILER_CACHE_SHARED_DIR_KEY = "compiler_cache_shared_dir";
+    private static final String COMPILER_CACHE_SIZE_KEY = "compiler_cache_size";
+    private static final int COMPILER_CACHE_SIZE = 512;
+    private static final String DEPENDENCY_THREADS_KEY = "dependency_threads";
+    private static final String ENABLE_LAZY_LOADING_KEY = "enable_lazy_rug_loading";
+    private static final boolean ENABLE_LAZY_LOADING = true;
 
     protected Log log = new Log(getClass());
 
-    private ArtifactSource compile(ArtifactDescriptor artifact, ArtifactSource source) {
+    private ArtifactSource compile(ArtifactDescriptor artifact, ArtifactSource source,
+            Future<TypeScriptCompiler> warmCompiler) {
         // Only compile local archives
         if (artifact instanceof LocalArtifactDescriptor) {
 
@@ -49,11 +77,22 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
                     "Compiling source files of %s", ArtifactDescriptorUtils.coordinates(artifact)))
                             .run(indicator -> {
                                 // Get all registered and supported compilers
-                                Collection<Compiler> compilers = loadCompilers(artifact, source);
+                                Collection<Compiler> compilers = loadCompilers(artifact, source,
+                                        warmCompiler);
 
                                 ArtifactSource compiledSource = source;
                                 for (Compiler compiler : compilers) {
-                                    compiledSource = compiler.compile(compiledSource);
+                                    if (compiler instanceof TypeScriptCompiler
+                                            && isCompilerCacheEnabled()) {
+                                        compiledSource = incrementalCompiler(
+                                                (TypeScriptCompiler) compiler, artifact)
+                                                        .compile(compiledSource,
+                                                                artifact.uri().toString());
+                                        reportCompilerCache(indicator);
+                                    }
+                                    else {
+                                        compiledSource = compiler.compile(compiledSource);
+                                    }
                                 }
                                 return compiledSource;
                             });
@@ -61,34 +100,31 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
         return source;
     }
 
-    private RugResolver createRugResolver(ArtifactDescriptor artifact, ArtifactSource source) {
+    private RugResolver createRugResolver(ArtifactDescriptor artifact, ArtifactSource source,
+            Optional<String> operation) {
         return new ProgressReportingOperationRunner<RugResolver>(
                 String.format("Loading rugs of %s", ArtifactDescriptorUtils.coordinates(artifact)))
                         .run(indicator -> {
-                            Dependency root = processArtifact(artifact, source);
+                            ArtifactSourceCache.resetStatistics();
+                            Dependency root = BackgroundTasks.join(dependencyPool()
+                                    .submit(() -> processArtifact(artifact, source, operation)));
+                            reportArchiveCache(indicator);
                             return new ArchiveRugResolver(root, ConsoleLogger.consoleLogger(
                                     !CommandLineOptions.hasOption("disable-console-log")));
                         });
     }
 
-    private Collection<Compiler> loadCompilers(ArtifactDescriptor artifact, ArtifactSource source) {
-        File root = new File(new File(artifact.uri()),
-                ".atomist" + File.separator + "target" + File.separator + ".jscache");
+    private Collection<Compiler> loadCompilers(ArtifactDescriptor artifact, ArtifactSource source,
+            Future<TypeScriptCompiler> warmCompiler) {
+        File root = cacheRoot(artifact);
 
         TypeScriptCompiler compiler;
         if (CommandContext.contains(TypeScriptCompiler.class)) {
             compiler = CommandContext.restore(TypeScriptCompiler.class);
         }
         else {
-            if (SettingsReader.read().getConfigValue(ENABLE_COMPILER_CACHE_KEY,
-                    ENABLE_COMPILER_CACHE)) {
-                compiler = new TypeScriptCompiler(CompilerFactory
-                        .cachingCompiler(CompilerFactory.create(), root.getAbsolutePath()));
-            }
-            else {
-                compiler = new TypeScriptCompiler(CompilerFactory.create());
-            }
-            compiler.registerListener(new ReportingCompilerListener());
+            compiler = (warmCompiler != null ? BackgroundTasks.join(warmCompiler)
+                    : createCompiler(root));
             CommandContext.save(TypeScriptCompiler.class, compiler);
         }
 
@@ -104,16 +140,185 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
         }
     }
 
+    /**
+     * Starts the compiler engine in the background so that it is up once the sources got read.
+     */
+    private Future<TypeScriptCompiler> warmCompiler(ArtifactDescriptor artifact) {
+        if (artifact instanceof LocalArtifactDescriptor
+                && !CommandContext.contains(TypeScriptCompiler.class)) {
+            File root = cacheRoot(artifact);
+            return BackgroundTasks.submit("start compiler", () -> createCompiler(root));
+        }
+        return null;
+    }
+
+    private TypeScriptCompiler createCompiler(File root) {
+        TypeScriptCompiler compiler;
+        if (isCompilerCacheEnabled()) {
+            compiler = new TypeScriptCompiler(CompilerFactory
+                    .cachingCompiler(CompilerFactory.create(), root.getAbsolutePath()));
+        }
+        else {
+            compiler = new TypeScriptCompiler(CompilerFactory.create());
+        }
+        compiler.registerListener(new ReportingCompilerListener());
+        return compiler;
+    }
+
+    private IncrementalTypeScriptCompiler incrementalCompiler(TypeScriptCompiler compiler,
+            ArtifactDescriptor artifact) {
+        if (!CommandContext.contains(IncrementalTypeScriptCompiler.class)) {
+            File root = cacheRoot(artifact);
+            CommandContext.save(IncrementalTypeScriptCompiler.class,
+                    new IncrementalTypeScriptCompiler(compiler, () -> createCompiler(root),
+                            SettingsReader.read().getConfigValue(COMPILER_THREADS_KEY,
+                                    Runtime.getRuntime().availableProcessors()),
+                            compilerCache()));
+        }
+        return CommandContext.restore(IncrementalTypeScriptCompiler.class);
+    }
+
+    private CompilerCache compilerCache() {
+        Settings settings = SettingsReader.read();
+        int size = settings.getConfigValue(COMPILER_CACHE_SIZE_KEY, COMPILER_CACHE_SIZE);
+        if (size <= 0) {
+            return null;
+        }
+        String dir = settings.getConfigValue(COMPILER_CACHE_DIR_KEY,
+                "${user.home}" + File.separator + Constants.ATOMIST_ROOT + File.separator
+                        + "compiler-cache");
+        String sharedDir = settings.getConfigValue(COMPILER_CACHE_SHARED_DIR_KEY, (String) null);
+        CompilerCache cache = new CompilerCache(
+                new File(StringUtils.expandEnvironmentVarsAndHomeDir(dir)),
+                (sharedDir != null
+                        ? new File(StringUtils.expandEnvironmentVarsAndHomeDir(sharedDir))
+                        : null),
+                size * 1024L * 1024L);
+        CommandContext.save(CompilerCache.class, cache);
+        return cache;
+    }
+
+    private void reportCompilerCache(ProgressReporter indicator) {
+        CompilerCache cache = CommandContext.restore(CompilerCache.class);
+        if (cache != null && CommandLineOptions.hasOption("timer")) {
+            indicator.report(String.format("  Compiler cache: %s hits, %s misses", cache.hits(),
+                    cache.misses()));
+        }
+    }
+
+    private void reportArchiveCache(ProgressReporter indicator) {
+        if (CommandLineOptions.hasOption("timer")) {
+            indicator.report(String.format("  Archive cache: %s hits, %s misses",
+                    ArtifactSourceCache.hits(), ArtifactSourceCache.misses()));
+        }
+    }
+
+    private File cacheRoot(ArtifactDescriptor artifact) {
+        return new File(new File(artifact.uri()),
+                ".atomist" + File.separator + "target" + File.separator + ".jscache");
+    }
+
+    private boolean isCompilerCacheEnabled() {
+        return SettingsReader.read().getConfigValue(ENABLE_COMPILER_CACHE_KEY,
+                ENABLE_COMPILER_CACHE);
+    }
+
+    private Dependency processArtifact(ArtifactDescriptor root, ArtifactSource source,
+            Optional<String> operation) {
+        if (operation.isPresent() && isLazyLoadingEnabled()) {
+            RugIndex index = RugIndex.create(source);
+            if (index.declares(operation.get())) {
+                return processArtifact(root, source, index,
+                        Collections.singleton(operation.get()));
+            }
+        }
+        return processArtifact(root, source);
+    }
+
     private Dependency processArtifact(ArtifactDescriptor node, ArtifactSource source) {
-        List<Dependency> children = node.dependencies().stream()
+        List<Dependency> children = node.dependencies().parallelStream()
                 .filter(d -> d.extension() == Extension.ZIP)
-                .map(d -> processArtifact(d, ArtifactSourceUtils.createArtifactSource(d)))
+                .map(d -> processArtifact(d, ArtifactSourceCache.createArtifactSource(d)))
                 .collect(Collectors.toList());
         return new Dependency(source,
                 Option.apply(new Coordinate(node.group(), node.artifact(), node.version())),
                 JavaConverters.asScalaBufferConverter(children).asScala());
     }
 
+    /**
+     * Only keeps the given rugs and what they reference; dependencies none of them refer to are
+     * not read at all.
+     */
+    private Dependency processArtifact(ArtifactDescriptor node, ArtifactSource source,
+            RugIndex index, Set<String> names) {
+        Set<String> literals = index.literals(names);
+        List<Dependency> children = node.dependencies().parallelStream()
+                .filter(d -> d.extension() == Extension.ZIP).map(d -> {
+                    ArtifactSource dependencySource = ArtifactSourceCache.createArtifactSource(d);
+                    RugIndex dependencyIndex = RugIndex.create(dependencySource);
+                    Set<String> referenced = dependencyIndex.referenced(literals, d.group(),
+                            d.artifact());
+                    return (referenced.isEmpty() ? null
+                            : processArtifact(d, dependencySource, dependencyIndex, referenced));
+                }).filter(d -> d != null).collect(Collectors.toList());
+        return new Dependency(index.narrow(names),
+                Option.apply(new Coordinate(node.group(), node.artifact(), node.version())),
+                JavaConverters.asScalaBufferConverter(children).asScala());
+    }
+
+    /**
+     * Dependency archives get read and indexed by parallel streams; running these inside this pool
+     * keeps the rug classloader and bounds the number of threads. Ordering of dependencies is
+     * preserved by the streams.
+     */
+    static synchronized ForkJoinPool dependencyPool() {
+        ForkJoinPool pool = CommandContext.restore(ForkJoinPool.class);
+        if (pool == null) {
+            int threads = Math.max(1, SettingsReader.read().getConfigValue(DEPENDENCY_THREADS_KEY,
+                    Runtime.getRuntime().availableProcessors()));
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            pool = new ForkJoinPool(threads, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                        .newThread(p);
+                // Pool threads don't necessarily inherit the rug classloader
+                thread.setContextClassLoader(classLoader);
+                return thread;
+            }, null, false);
+            CommandContext.save(ForkJoinPool.class, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Shuts down the dependency pool of this classloader; called when the shell exits and when the
+     * classloader gets evicted.
+     */
+    public static synchronized void shutdownDependencyPool() {
+        ForkJoinPool pool = CommandContext.restore(ForkJoinPool.class);
+        if (pool != null) {
+            pool.shutdown();
+            CommandContext.delete(ForkJoinPool.class);
+        }
+    }
+
+    private boolean isLazyLoadingEnabled() {
+        return SettingsReader.read().getConfigValue(ENABLE_LAZY_LOADING_KEY, ENABLE_LAZY_LOADING);
+    }
+
+    private ArtifactSource load(ArtifactDescriptor artifact) {
+        // Only the shell watches for changes; everywhere else the sources need to be read again
+        ChangeTrackingArtifactSource trackingSource = CommandContext
+                .restore(ChangeTrackingArtifactSource.class);
+        if (CommandContext.contains(FileWatcher.class) && trackingSource != null
+                && trackingSource.isFor(artifact)) {
+            Optional<ArtifactSource> source = trackingSource.patch();
+            if (source.isPresent()) {
+                return source.get();
+            }
+        }
+        return create(artifact);
+    }
+
     protected ArtifactSource create(ArtifactDescriptor artifact) {
         if (artifact instanceof LocalArtifactDescriptor) {
             return ArtifactSourceUtils.createArtifactSource(artifact);
@@ -123,18 +328,39 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
                     String.format("Reading %s structure of %s",
                             (artifact instanceof LocalArtifactDescriptor ? "project" : "archive"),
                             ArtifactDescriptorUtils.coordinates(artifact))).run(indicator -> {
-                                return ArtifactSourceUtils.createArtifactSource(artifact);
+                                return ArtifactSourceCache.createArtifactSource(artifact);
                             });
         }
     }
 
     @Override
     protected final void run(ArtifactDescriptor artifact, CommandLine commandLine) {
+        awaitRebuild(artifact);
+        CommandContextRebuilder.lock();
+        try {
+            loadAndRun(artifact, commandLine);
+        }
+        finally {
+            CommandContextRebuilder.unlock();
+        }
+    }
+
+    private void loadAndRun(ArtifactDescriptor artifact, CommandLine commandLine) {
         if (artifact != null && artifact.extension() == Extension.ZIP
                 && registry.findCommand(getClass()).loadArtifactSource()) {
-            if (CommandContext.contains(ArtifactSource.class)
-                    && CommandContext.contains(ResolvedDependency.class)) {
+            if (CommandContext.contains(ResolvedDependency.class)) {
                 ArtifactSource source = CommandContext.restore(ArtifactSource.class);
+                if (source == null) {
+                    // Only project files outside of .atomist changed; the rugs are still valid
+                    ArtifactSource changedSource = load(artifact);
+                    CommandEventListenerRegistry
+                            .raiseEvent((c) -> c.artifactSourceLoaded(artifact, changedSource));
+
+                    ArtifactSource compiledSource = compile(artifact, changedSource, null);
+                    CommandEventListenerRegistry.raiseEvent(
+                            (c) -> c.artifactSourceCompiled(artifact, compiledSource));
+                    source = compiledSource;
+                }
                 RugResolver resolver = CommandContext.restore(RugResolver.class);
 
                 ResolvedDependency rugs = new ProgressReportingOperationRunner<ResolvedDependency>(
@@ -146,17 +372,34 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
                 run(rugs, artifact, source, resolver, commandLine);
             }
             else {
-                ArtifactSource source = create(artifact);
-                CommandEventListenerRegistry
-                        .raiseEvent((c) -> c.artifactSourceLoaded(artifact, source));
+                Future<TypeScriptCompiler> warmCompiler = warmCompiler(artifact);
+                ArtifactSource source;
+                try {
+                    source = load(artifact);
+                    CommandEventListenerRegistry
+                            .raiseEvent((c) -> c.artifactSourceLoaded(artifact, source));
+                }
+                catch (RuntimeException e) {
+                    // Nobody is going to join the compiler anymore
+                    if (warmCompiler != null) {
+                        warmCompiler.cancel(true);
+                    }
+                    throw e;
+                }
 
-                ArtifactSource compiledSource = compile(artifact, source);
+                ArtifactSource compiledSource = compile(artifact, source, warmCompiler);
                 CommandEventListenerRegistry
                         .raiseEvent((c) -> c.artifactSourceCompiled(artifact, compiledSource));
 
-                RugResolver resolver = createRugResolver(artifact, compiledSource);
-
-                ResolvedDependency rugs = resolver.resolvedDependencies();
+                RugResolver resolver;
+                ResolvedDependency rugs;
+                try (Span span = Profiler.span("load rugs")) {
+                    // The shell keeps the rugs around for later commands
+                    Optional<String> operation = (Constants.isShell() || Constants.isDaemon()
+                            ? Optional.empty() : operationName(commandLine));
+                    resolver = createRugResolver(artifact, compiledSource, operation);
+                    rugs = resolver.resolvedDependencies();
+                }
                 CommandEventListenerRegistry
                         .raiseEvent((c) -> c.operationsLoaded(artifact, rugs, resolver));
 
@@ -168,6 +411,65 @@ public abstract class AbstractCompilingAndOperationLoadingCommand extends Abstra
         }
     }
 
+    /**
+     * Reads, compiles and loads the rugs of the given archive again after the file watcher dropped
+     * them from the {@link CommandContext}. Used by the shell to get ahead of the next command.
+     */
+    protected void rebuild(ArtifactDescriptor artifact, int generation) {
+        boolean rugsLoaded = CommandContext.contains(ResolvedDependency.class);
+        if (rugsLoaded && CommandContext.contains(ArtifactSource.class)) {
+            // A command got to it first
+            return;
+        }
+
+        ArtifactSource source = load(artifact);
+        CommandEventListenerRegistry.raiseEvent((c) -> c.artifactSourceLoaded(artifact, source));
+        ArtifactSource compiledSource = compile(artifact, source, null);
+
+        RugResolver resolver = (rugsLoaded ? null : createRugResolver(artifact, compiledSource,
+                Optional.empty()));
+        ResolvedDependency rugs = (rugsLoaded ? null : resolver.resolvedDependencies());
+
+        CommandContextRebuilder.commit(generation, () -> {
+            CommandEventListenerRegistry
+                    .raiseEvent((c) -> c.artifactSourceCompiled(artifact, compiledSource));
+            if (rugs != null) {
+                CommandEventListenerRegistry
+                        .raiseEvent((c) -> c.operationsLoaded(artifact, rugs, resolver));
+            }
+        });
+    }
+
+    private void awaitRebuild(ArtifactDescriptor artifact) {
+        if (artifact != null && CommandContextRebuilder.isRebuilding()) {
+            new ProgressReportingOperationRunner<Void>(String.format("Waiting for rebuild of %s",
+                    ArtifactDescriptorUtils.coordinates(artifact))).run(indicator -> {
+                        CommandContextRebuilder.await();
+                        return null;
+                    });
+        }
+    }
+
+    /**
+     * Loads the rugs of the given archive again into new script engines. The returned rugs share
+     * no state with the ones handed to the command and can run concurrently to them.
+     */
+    protected Rugs loadRugs(ArtifactDescriptor artifact, ArtifactSource source) {
+        Dependency root = BackgroundTasks.join(dependencyPool()
+                .submit(() -> processArtifact(artifact, source, Optional.empty())));
+        return new ArchiveRugResolver(root,
+                ConsoleLogger.consoleLogger(!CommandLineOptions.hasOption("disable-console-log")))
+                        .resolvedDependencies().rugs();
+    }
+
+    /**
+     * Returns the name of the single rug the command is going to run, if known upfront. Only that
+     * rug and what it references get loaded then.
+     */
+    protected Optional<String> operationName(CommandLine commandLine) {
+        return Optional.empty();
+    }
+
     protected abstract void run(ResolvedDependency rugs, ArtifactDescriptor artifact,
             ArtifactSource source, RugResolver resolver, CommandLine commandLine);
 
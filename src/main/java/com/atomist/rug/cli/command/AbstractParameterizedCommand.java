@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import org.apache.commons.cli.CommandLine;
 import org.apache.commons.lang3.text.WordUtils;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.LineReader;
@@ -22,6 +23,7 @@ import com.atomist.param.SimpleParameterValue;
 import com.atomist.param.SimpleParameterValues;
 import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.command.shell.ShellUtils;
+import com.atomist.rug.cli.command.utils.OperationUtils;
 import com.atomist.rug.cli.output.Style;
 import com.atomist.rug.cli.utils.CommandLineOptions;
 import com.atomist.rug.cli.utils.StringUtils;
@@ -168,4 +170,14 @@ public abstract class AbstractParameterizedCommand extends AbstractAnnotationBas
         return new SimpleParameterValues(asScalaBuffer(pvs));
     }
 
+    @Override
+    protected Optional<String> operationName(CommandLine commandLine) {
+        // Editors and generators are both named by the first argument
+        List<String> args = commandLine.getArgList();
+        if (args.size() > 1) {
+            return Optional.ofNullable(OperationUtils.extractRugTypeName(args.get(1)));
+        }
+        return Optional.empty();
+    }
+
 }
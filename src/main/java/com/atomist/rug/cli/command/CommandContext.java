@@ -1,11 +1,13 @@
 package com.atomist.rug.cli.command;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public abstract class CommandContext {
 
-    private static Map<Class<?>, Object> context = new HashMap<>();
+    // Changed by the file watcher and background rebuilds while commands run
+    private static Map<Class<?>, Object> context = Collections.synchronizedMap(new HashMap<>());
 
     public static void save(Class<?> key, Object value) {
         context.put(key, value);
@@ -0,0 +1,152 @@
+package com.atomist.rug.cli.command;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.Log;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+
+/**
+ * Rebuilds the compiled source and rugs of the shell's archive on a background worker as soon as
+ * the file watcher dropped them from the {@link CommandContext}. Commands then only block on the
+ * remaining work.
+ * <p>
+ * Every change bumps a generation; results of a rebuild are only stored if no other change came
+ * in while it was running.
+ */
+public abstract class CommandContextRebuilder {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Shell Rebuild Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Keeps commands and rebuilds from compiling and loading rugs at the same time
+    private static final ReentrantLock lock = new ReentrantLock();
+
+    private static Rebuilder rebuilder;
+    private static Future<?> rebuild;
+    private static int generation = 0;
+
+    public static synchronized void register(Rebuilder rebuilder) {
+        CommandContextRebuilder.rebuilder = rebuilder;
+    }
+
+    /**
+     * Runs the given invalidation of the {@link CommandContext} and schedules a rebuild.
+     */
+    public static synchronized void invalidate(ArtifactDescriptor artifact,
+            Runnable invalidation) {
+        int current = ++generation;
+        invalidation.run();
+
+        // A change to the manifest needs the shell to reload anyway
+        if (rebuilder != null && !Constants.isReload()) {
+            Rebuilder currentRebuilder = rebuilder;
+            Constants.setRebuilding(true);
+            rebuild = executor.submit(() -> rebuild(currentRebuilder, artifact, current));
+        }
+    }
+
+    /**
+     * Runs the given update of the {@link CommandContext} unless the files changed again since the
+     * rebuild of the given generation started.
+     */
+    public static synchronized boolean commit(int generation, Runnable update) {
+        if (generation != CommandContextRebuilder.generation) {
+            return false;
+        }
+        update.run();
+        return true;
+    }
+
+    /**
+     * Waits for a scheduled rebuild to finish. Failures are ignored here; the command will run
+     * into them again and report them.
+     */
+    public static void await() {
+        // The rebuild would wait for this thread otherwise
+        if (lock.isHeldByCurrentThread()) {
+            return;
+        }
+        Future<?> future;
+        synchronized (CommandContextRebuilder.class) {
+            future = rebuild;
+        }
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // See above
+        }
+    }
+
+    public static boolean isRebuilding() {
+        Future<?> future;
+        synchronized (CommandContextRebuilder.class) {
+            future = rebuild;
+        }
+        return future != null && !future.isDone();
+    }
+
+    public static void lock() {
+        lock.lock();
+    }
+
+    public static void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Stops rebuilding when the shell exits; a rebuild that is still running gets dropped.
+     */
+    public static synchronized void reset() {
+        generation++;
+        rebuilder = null;
+        rebuild = null;
+        Constants.setRebuilding(false);
+    }
+
+    private static void rebuild(Rebuilder rebuilder, ArtifactDescriptor artifact, int generation) {
+        synchronized (CommandContextRebuilder.class) {
+            // Another change came in before this rebuild got started
+            if (generation != CommandContextRebuilder.generation) {
+                return;
+            }
+        }
+
+        lock.lock();
+        Log.setSilent(true);
+        try {
+            rebuilder.rebuild(artifact, generation);
+        }
+        catch (Exception e) {
+            // The next command rebuilds in the foreground and reports the problem
+        }
+        finally {
+            Log.setSilent(false);
+            lock.unlock();
+            synchronized (CommandContextRebuilder.class) {
+                if (generation == CommandContextRebuilder.generation) {
+                    Constants.setRebuilding(false);
+                }
+            }
+        }
+    }
+
+    public interface Rebuilder {
+
+        void rebuild(ArtifactDescriptor artifact, int generation);
+    }
+}
@@ -8,12 +8,14 @@ import java.util.function.Consumer;
 import com.atomist.project.archive.ResolvedDependency;
 import com.atomist.project.archive.RugResolver;
 import com.atomist.rug.cli.Log;
+import com.atomist.rug.cli.command.fs.ChangeTrackingArtifactSource;
 import com.atomist.rug.cli.tree.ArtifactSourceTreeCreator;
 import com.atomist.rug.cli.tree.LogVisitor;
 import com.atomist.rug.cli.utils.ArtifactDescriptorUtils;
 import com.atomist.rug.cli.utils.CommandLineOptions;
 import com.atomist.rug.cli.utils.FileUtils;
 import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
 import com.atomist.source.ArtifactSource;
 
 public abstract class CommandEventListenerRegistry {
@@ -57,6 +59,22 @@ public abstract class CommandEventListenerRegistry {
     private static class CommandContextManagingCommandEventListener
             extends CommandEventListenerAdapter {
 
+        @Override
+        public void artifactSourceLoaded(ArtifactDescriptor artifact, ArtifactSource source) {
+            if (artifact instanceof LocalArtifactDescriptor) {
+                ChangeTrackingArtifactSource trackingSource = CommandContext
+                        .restore(ChangeTrackingArtifactSource.class);
+                if (trackingSource != null && trackingSource.isFor(artifact)) {
+                    // Keep changes that came in while the source was patched
+                    trackingSource.update(source);
+                }
+                else {
+                    CommandContext.save(ChangeTrackingArtifactSource.class,
+                            new ChangeTrackingArtifactSource(artifact, source));
+                }
+            }
+        }
+
         @Override
         public void artifactSourceCompiled(ArtifactDescriptor artifact, ArtifactSource source) {
             CommandContext.save(ArtifactSource.class, source);
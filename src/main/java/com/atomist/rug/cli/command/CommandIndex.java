@@ -0,0 +1,149 @@
+package com.atomist.rug.cli.command;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+import org.apache.commons.cli.Options;
+
+/**
+ * Index of all {@link CommandInfo}s generated at build time into
+ * <code>META-INF/rug-cli/command.index</code>.
+ * <p>
+ * The index carries names, aliases and class names of all commands as well as the merged set of
+ * options so that the command line can be parsed and the invoked command found without loading and
+ * instantiating every {@link CommandInfo}.
+ */
+public class CommandIndex {
+
+    static final String RESOURCE = "META-INF/rug-cli/command.index";
+
+    private static final String COMMAND = "command";
+    private static final String OPTION = "option";
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Options options = new Options();
+
+    public static void main(String[] args) throws IOException {
+        File indexFile = new File(args[0]);
+        indexFile.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(indexFile.toPath(),
+                StandardCharsets.UTF_8))) {
+            write(writer);
+        }
+    }
+
+    static Optional<CommandIndex> load() {
+        InputStream is = CommandIndex.class.getClassLoader().getResourceAsStream(RESOURCE);
+        if (is == null) {
+            return Optional.empty();
+        }
+        return read(is);
+    }
+
+    static Optional<CommandIndex> read(InputStream is) {
+        CommandIndex index = new CommandIndex();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (COMMAND.equals(parts[0]) && parts.length == 5) {
+                    index.entries.add(new Entry(parts[1], parts[2], parts[3],
+                            (parts[4].isEmpty() ? Collections.emptyList()
+                                    : Arrays.asList(parts[4].split(",")))));
+                }
+                else if (OPTION.equals(parts[0]) && parts.length == 4) {
+                    index.options.addOption(nullIfEmpty(parts[1]), nullIfEmpty(parts[2]),
+                            Boolean.parseBoolean(parts[3]), null);
+                }
+            }
+            return Optional.of(index);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // Fall back to loading all commands
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the class name of the {@link CommandInfo} with the given name or alias.
+     */
+    Optional<String> infoClassName(String name) {
+        return entries.stream().filter(e -> e.name.equals(name) || e.aliases.contains(name))
+                .map(e -> e.infoClassName).findFirst();
+    }
+
+    /**
+     * Returns the class name of the {@link CommandInfo} describing the given {@link Command}.
+     */
+    Optional<String> infoClassNameForCommand(String commandClassName) {
+        return entries.stream().filter(e -> e.commandClassName.equals(commandClassName))
+                .map(e -> e.infoClassName).findFirst();
+    }
+
+    List<String> names() {
+        return entries.stream().map(e -> e.name).collect(Collectors.toList());
+    }
+
+    /**
+     * Merged options of all commands with none of them marked as required.
+     */
+    Options options() {
+        return options;
+    }
+
+    private static void write(PrintWriter writer) {
+        List<CommandInfo> commands = new ArrayList<>();
+        ServiceLoader.load(CommandInfo.class).forEach(commands::add);
+        commands.sort(Comparator.comparingInt(CommandInfo::order));
+
+        Options options = new Options();
+        commands.forEach(c -> {
+            writer.println(String.join("\t", COMMAND, c.getClass().getName(), c.className(),
+                    c.name(), String.join(",", c.aliases())));
+            c.options().getOptions().forEach(options::addOption);
+            c.globalOptions().getOptions().forEach(options::addOption);
+        });
+        options.getOptions().forEach(o -> writer.println(String.join("\t", OPTION,
+                emptyIfNull(o.getOpt()), emptyIfNull(o.getLongOpt()),
+                String.valueOf(o.hasArg()))));
+    }
+
+    private static String nullIfEmpty(String value) {
+        return (value.isEmpty() ? null : value);
+    }
+
+    private static String emptyIfNull(String value) {
+        return (value == null ? "" : value);
+    }
+
+    private static class Entry {
+
+        private final String infoClassName;
+        private final String commandClassName;
+        private final String name;
+        private final List<String> aliases;
+
+        public Entry(String infoClassName, String commandClassName, String name,
+                List<String> aliases) {
+            this.infoClassName = infoClassName;
+            this.commandClassName = commandClassName;
+            this.name = name;
+            this.aliases = aliases;
+        }
+    }
+}
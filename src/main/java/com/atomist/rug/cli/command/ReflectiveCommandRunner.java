@@ -17,9 +17,15 @@ import com.atomist.rug.cli.command.utils.CommandHelpFormatter;
 import com.atomist.rug.cli.command.utils.DependencyResolverExceptionProcessor;
 import com.atomist.rug.cli.output.ProgressReporter;
 import com.atomist.rug.cli.output.ProgressReportingOperationRunner;
+import com.atomist.rug.cli.resolver.ArchiveCatalog;
+import com.atomist.rug.cli.resolver.DependencyLockFile;
+import com.atomist.rug.cli.resolver.DependencyResolutionCache;
+import com.atomist.rug.cli.resolver.DependencyResolutionCache.Resolution;
 import com.atomist.rug.cli.resolver.DependencyResolverFactory;
 import com.atomist.rug.cli.utils.ArtifactDescriptorUtils;
 import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
 import com.atomist.rug.cli.utils.Timing;
 import com.atomist.rug.cli.version.VersionUtils;
 import com.atomist.rug.resolver.ArtifactDescriptor;
@@ -57,6 +63,8 @@ public class ReflectiveCommandRunner {
         ArtifactDescriptor artifact = loadArtifactAndinitializeEnvironment(commandLine,
                 dependencies, info);
         try {
+            commandStarting(info);
+
             int rc = invokeCommand(args, artifact, dependencies, timing, false);
 
             commandCompleted(rc, args, info, artifact, dependencies);
@@ -88,7 +96,7 @@ public class ReflectiveCommandRunner {
 
     private void invokeReflectiveCommand(String[] args, ArtifactDescriptor artifact,
             List<ArtifactDescriptor> dependencies, CommandInfo info) {
-        try {
+        try (Span span = Profiler.span("command " + info.name())) {
             // Invoke the run method on the command class
             new ReflectiveCommandRunMethodRunner().invokeCommand(artifact, info, args);
         }
@@ -113,13 +121,40 @@ public class ReflectiveCommandRunner {
             artifact = new ProgressReportingOperationRunner<ArtifactDescriptor>(
                     String.format("Resolving dependencies for %s",
                             ArtifactDescriptorUtils.coordinates(rootArtifact))).run(indicator -> {
+                                // A project lock pins the graph regardless of remote changes
+                                Optional<Resolution> resolution = DependencyLockFile
+                                        .read(rootArtifact, indicator);
+                                if (resolution.isPresent()) {
+                                    dependencies.addAll(resolution.get().dependencies());
+                                    return resolution.get().artifact();
+                                }
+
+                                // Short-circuit the resolution if nothing changed since last run
+                                resolution = DependencyResolutionCache.read(rootArtifact);
+                                if (resolution.isPresent()) {
+                                    dependencies.addAll(resolution.get().dependencies());
+                                    DependencyLockFile.write(rootArtifact,
+                                            resolution.get().artifact(), dependencies);
+                                    return resolution.get().artifact();
+                                }
+
                                 DependencyResolver resolver = DependencyResolverFactory
                                         .createDependencyResolver(rootArtifact, indicator);
                                 dependencies.addAll(
                                         resolveDependencies(resolver, rootArtifact, indicator));
-                                return resolveRugs(resolver, rootArtifact);
+                                ArtifactDescriptor resolvedArtifact = resolveRugs(resolver,
+                                        rootArtifact);
+                                // Only an actual resolution can add archives to the repository
+                                ArchiveCatalog.update(resolvedArtifact, dependencies);
+                                DependencyResolutionCache.write(rootArtifact, resolvedArtifact,
+                                        dependencies);
+                                DependencyLockFile.write(rootArtifact, resolvedArtifact,
+                                        dependencies);
+                                return resolvedArtifact;
                             });
 
+            dependenciesResolved(rootArtifact, dependencies);
+
             // Validate that this CLI version is compatible with declared version of Rug
             if (!CommandLineOptions.hasOption("disable-version-check")) {
                 VersionUtils.validateRugCompatibility(rootArtifact, dependencies);
@@ -131,12 +166,14 @@ public class ReflectiveCommandRunner {
             classLoader = Thread.currentThread().getContextClassLoader();
 
             // Setup the new classloader for the command to execute in
-            if (info instanceof ClasspathEntryProvider) {
-                ClassLoaderFactory.setupClassLoader(artifact, dependencies,
-                        (ClasspathEntryProvider) info);
-            }
-            else {
-                ClassLoaderFactory.setupClassLoader(rootArtifact, dependencies);
+            try (Span span = Profiler.span("classloader setup")) {
+                if (info instanceof ClasspathEntryProvider) {
+                    ClassLoaderFactory.setupClassLoader(artifact, dependencies,
+                            (ClasspathEntryProvider) info);
+                }
+                else {
+                    ClassLoaderFactory.setupClassLoader(rootArtifact, dependencies);
+                }
             }
 
             List<ArtifactDescriptor> artifactDependencies = artifact.dependencies();
@@ -178,12 +215,21 @@ public class ReflectiveCommandRunner {
 
     private void printTimer(Timing timing) {
         log.info("Command completed in " + String.format("%.2f", timing.duration()) + "s");
+        if (ClassLoaderFactory.cacheHits() + ClassLoaderFactory.cacheMisses() > 0) {
+            log.info("Classloader cache: %s hits, %s misses", ClassLoaderFactory.cacheHits(),
+                    ClassLoaderFactory.cacheMisses());
+        }
     }
 
     protected ArtifactDescriptor resolveRugs(DependencyResolver resolver,
             ArtifactDescriptor artifact) {
-        String version = resolver.resolveVersion(artifact);
-        return resolver.resolveRugs(ArtifactDescriptorFactory.copyFrom(artifact, version));
+        String version;
+        try (Span span = Profiler.span("resolve version")) {
+            version = resolver.resolveVersion(artifact);
+        }
+        try (Span span = Profiler.span("resolve rugs")) {
+            return resolver.resolveRugs(ArtifactDescriptorFactory.copyFrom(artifact, version));
+        }
     }
 
     protected List<ArtifactDescriptor> resolveDependencies(DependencyResolver resolver,
@@ -205,10 +251,15 @@ public class ReflectiveCommandRunner {
                         "com.atomist:rug");
             }
 
-            version = resolver.resolveVersion(artifact);
-            dependencies.addAll(resolver.resolveDependencies(
-                    ArtifactDescriptorFactory.copyFrom(artifact, version),
-                    DependencyResolverFactory.verifiers()));
+            try (Span span = Profiler.span("resolve version")) {
+                version = resolver.resolveVersion(artifact);
+            }
+            // Collecting, downloading and verifying all happen in here
+            try (Span span = Profiler.span("resolve dependencies")) {
+                dependencies.addAll(resolver.resolveDependencies(
+                        ArtifactDescriptorFactory.copyFrom(artifact, version),
+                        DependencyResolverFactory.verifiers()));
+            }
             return dependencies;
         }
         catch (DependencyResolverException e) {
@@ -217,6 +268,13 @@ public class ReflectiveCommandRunner {
         }
     }
 
+    protected void dependenciesResolved(ArtifactDescriptor artifact,
+            List<ArtifactDescriptor> dependencies) {
+    }
+
+    protected void commandStarting(CommandInfo info) {
+    }
+
     protected void commandEnabled(ArtifactDescriptor artifact, CommandInfo info) {
         if (!info.enabled(artifact)) {
             throw new CommandException(String.format(
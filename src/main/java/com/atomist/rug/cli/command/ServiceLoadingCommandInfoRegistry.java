@@ -5,43 +5,71 @@ import static java.util.stream.Collectors.toList;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.cli.Options;
 
 import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.RunnerException;
 import com.atomist.rug.cli.utils.StringUtils;
 
+/**
+ * {@link CommandInfoRegistry} that uses the build-time {@link CommandIndex} to find and instantiate
+ * only the {@link CommandInfo} of the invoked command. All commands are loaded via the
+ * {@link ServiceLoader} only when they are really needed, e.g. for printing help, or if there is no
+ * index on the classpath.
+ */
 public class ServiceLoadingCommandInfoRegistry implements CommandInfoRegistry {
 
-    private List<CommandInfo> commands = new ArrayList<>();
+    private static final Optional<CommandIndex> index = CommandIndex.load();
+    private static final Map<String, CommandInfo> infos = new ConcurrentHashMap<>();
+    private static final Map<String, Options> options = new ConcurrentHashMap<>();
+    private static Options allOptions;
 
-    public ServiceLoadingCommandInfoRegistry() {
-        init();
-    }
+    private List<CommandInfo> commands;
 
     @Override
     public Options allOptions() {
-        Options options = new Options();
-        commands.forEach(e -> {
-            e.options().getOptions().forEach(options::addOption);
-            e.globalOptions().getOptions().forEach(options::addOption);
-        });
-        return options;
+        synchronized (ServiceLoadingCommandInfoRegistry.class) {
+            if (allOptions == null) {
+                if (index.isPresent()) {
+                    allOptions = index.get().options();
+                }
+                else {
+                    Options merged = new Options();
+                    commands().forEach(e -> {
+                        e.options().getOptions().forEach(merged::addOption);
+                        e.globalOptions().getOptions().forEach(merged::addOption);
+                    });
+                    allOptions = merged;
+                }
+            }
+            return allOptions;
+        }
     }
 
     @Override
     public Options options(String name) {
-        Options options = new Options();
-        commands.stream().filter(c -> c.name().equals(name)).forEach(e -> {
-            e.options().getOptions().forEach(options::addOption);
-            e.globalOptions().getOptions().forEach(options::addOption);
+        return options.computeIfAbsent(name, n -> {
+            Options commandOptions = new Options();
+            findCommand(n).ifPresent(e -> {
+                e.options().getOptions().forEach(commandOptions::addOption);
+                e.globalOptions().getOptions().forEach(commandOptions::addOption);
+            });
+            return commandOptions;
         });
-        return options;
     }
 
-    public List<CommandInfo> commands() {
+    public synchronized List<CommandInfo> commands() {
+        if (commands == null) {
+            List<CommandInfo> loaded = new ArrayList<>();
+            ServiceLoader.load(CommandInfo.class).forEach(loaded::add);
+            commands = loaded.stream().sorted(Comparator.comparingInt(CommandInfo::order))
+                    .collect(toList());
+        }
         return commands;
     }
 
@@ -69,15 +97,27 @@ public class ServiceLoadingCommandInfoRegistry implements CommandInfoRegistry {
     }
 
     private Optional<CommandInfo> findCommand(String name) {
-        return commands.stream().filter(c -> c.name().equals(name) || c.aliases().contains(name))
+        if (index.isPresent()) {
+            Optional<String> infoClassName = index.get().infoClassName(name);
+            if (infoClassName.isPresent()) {
+                return Optional.of(info(infoClassName.get()));
+            }
+        }
+        return commands().stream().filter(c -> c.name().equals(name) || c.aliases().contains(name))
                 .findFirst();
     }
 
-    private void init() {
-        ServiceLoader<CommandInfo> loader = ServiceLoader.load(CommandInfo.class);
-        loader.forEach(c -> commands.add(c));
-        commands = commands.stream().sorted(Comparator.comparingInt(CommandInfo::order))
-                .collect(toList());
+    private static CommandInfo info(String infoClassName) {
+        return infos.computeIfAbsent(infoClassName, n -> {
+            try {
+                return (CommandInfo) Class
+                        .forName(n, true, ServiceLoadingCommandInfoRegistry.class.getClassLoader())
+                        .newInstance();
+            }
+            catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+                throw new RunnerException(e);
+            }
+        });
     }
 
     private String getAddtionalHelpMessage(String[] args) {
@@ -92,7 +132,8 @@ public class ServiceLoadingCommandInfoRegistry implements CommandInfoRegistry {
             }
 
             Optional<String> closestMatch = StringUtils.computeClosestMatch(name,
-                    commands.stream().map(CommandInfo::name).collect(toList()));
+                    (index.isPresent() ? index.get().names()
+                            : commands().stream().map(CommandInfo::name).collect(toList())));
             if (closestMatch.isPresent()) {
                 return closestMatch.map(s -> new StringBuilder().append("\n\nDid you mean?\n")
                         .append("  ").append(Constants.command()).append(s).append(" ").append("")
@@ -105,7 +146,13 @@ public class ServiceLoadingCommandInfoRegistry implements CommandInfoRegistry {
     @Override
     public CommandInfo findCommand(Class<? extends Command> cls) {
         String name = cls.getName();
-        Optional<CommandInfo> info = commands.stream().filter(c -> c.className().equals(name))
+        if (index.isPresent()) {
+            Optional<String> infoClassName = index.get().infoClassNameForCommand(name);
+            if (infoClassName.isPresent()) {
+                return info(infoClassName.get());
+            }
+        }
+        Optional<CommandInfo> info = commands().stream().filter(c -> c.className().equals(name))
                 .findAny();
         return info.orElse(null);
     }
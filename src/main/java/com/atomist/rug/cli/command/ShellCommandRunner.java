@@ -28,12 +28,11 @@ import com.atomist.rug.cli.command.shell.GestureCompleter;
 import com.atomist.rug.cli.command.shell.OperationCompleter;
 import com.atomist.rug.cli.command.shell.ShellUtils;
 import com.atomist.rug.cli.command.utils.CommandHelpFormatter;
-import com.atomist.rug.cli.output.ProgressReporter;
+import com.atomist.rug.cli.daemon.DaemonServer;
 import com.atomist.rug.cli.output.Style;
 import com.atomist.rug.cli.utils.FileUtils;
 import com.atomist.rug.cli.utils.StringUtils;
 import com.atomist.rug.resolver.ArtifactDescriptor;
-import com.atomist.rug.resolver.DependencyResolver;
 import com.atomist.rug.resolver.LocalArtifactDescriptor;
 
 public class ShellCommandRunner extends ReflectiveCommandRunner {
@@ -50,11 +49,8 @@ public class ShellCommandRunner extends ReflectiveCommandRunner {
     }
 
     @Override
-    protected List<ArtifactDescriptor> resolveDependencies(DependencyResolver resolver,
-            ArtifactDescriptor artifact, ProgressReporter indicator) {
-        List<ArtifactDescriptor> dependencies = super.resolveDependencies(resolver, artifact,
-                indicator);
-
+    protected void dependenciesResolved(ArtifactDescriptor artifact,
+            List<ArtifactDescriptor> dependencies) {
         Optional<ArtifactDescriptor> rug = dependencies.stream()
                 .filter(d -> d.group().equals(Constants.GROUP)
                         && d.artifact().equals(Constants.RUG_ARTIFACT))
@@ -62,8 +58,14 @@ public class ShellCommandRunner extends ReflectiveCommandRunner {
         if (rug.isPresent()) {
             this.rugVersion = rug.get().version();
         }
+    }
 
-        return dependencies;
+    @Override
+    protected void commandStarting(CommandInfo info) {
+        // Read gestures while the shell command loads the archive
+        if ("shell".equals(info.name()) && gestureRegistry == null) {
+            GestureRegistry.preload();
+        }
     }
 
     @Override
@@ -87,6 +89,12 @@ public class ShellCommandRunner extends ReflectiveCommandRunner {
             // Now start the loop
             commandLoop(artifact, dependencies);
         }
+        else if (rc == 0 && "daemon".equals(info.name())
+                && !CommandUtils.parseCommandline(info.name(), args, commandRegistry)
+                        .hasOption("stop")) {
+            // Headless variant of the loop above serving commands from thin clients
+            new DaemonServer(commandRegistry).serve();
+        }
     }
 
     private void commandLoop(ArtifactDescriptor artifact, List<ArtifactDescriptor> dependencies) {
@@ -278,10 +286,11 @@ public class ShellCommandRunner extends ReflectiveCommandRunner {
         if (artifact != null && !(artifact.group().equals(Constants.GROUP)
                 && artifact.artifact().equals(Constants.RUG_ARTIFACT))) {
             log.info(Style.yellow("%s:%s", artifact.group(), artifact.artifact())
-                    + Style.gray(" (%s%s%s%s%s)", artifact.version(), Constants.DOT,
+                    + Style.gray(" (%s%s%s%s%s", artifact.version(), Constants.DOT,
                             (artifact instanceof LocalArtifactDescriptor ? "local"
                                     : artifact.extension().toString().toLowerCase()),
-                            Constants.DOT, rugVersion));
+                            Constants.DOT, rugVersion)
+                    + state(artifact) + Style.gray(")"));
         }
         else {
             log.info(Style.yellow("%s", FileUtils.relativize(SystemUtils.getUserDir()))
@@ -292,6 +301,17 @@ public class ShellCommandRunner extends ReflectiveCommandRunner {
         return ShellUtils.DEFAULT_PROMPT;
     }
 
+    /**
+     * Shows whether rugs of a local archive are ready or still getting rebuilt after a change.
+     */
+    private String state(ArtifactDescriptor artifact) {
+        if (!(artifact instanceof LocalArtifactDescriptor)) {
+            return "";
+        }
+        return Style.gray(Constants.DOT) + (Constants.isRebuilding() ? Style.yellow("rebuilding")
+                : Style.gray("warm"));
+    }
+
     private void reload(String line, ArtifactDescriptor artifact,
             List<ArtifactDescriptor> dependencies) {
         // Exit the current shell
@@ -0,0 +1,29 @@
+package com.atomist.rug.cli.command.daemon;
+
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.command.AbstractAnnotationBasedCommand;
+import com.atomist.rug.cli.command.CommandException;
+import com.atomist.rug.cli.command.annotation.Command;
+import com.atomist.rug.cli.command.annotation.Option;
+import com.atomist.rug.cli.daemon.DaemonClient;
+import com.atomist.rug.cli.output.Style;
+
+public class DaemonCommand extends AbstractAnnotationBasedCommand {
+
+    @Command
+    public void run(@Option("stop") boolean stop) {
+        if (stop) {
+            if (!DaemonClient.stop()) {
+                throw new CommandException("No running rug daemon found.", "daemon");
+            }
+            log.newline();
+            log.info(Style.green("Successfully stopped rug daemon"));
+        }
+        else if (DaemonClient.isRunning()) {
+            throw new CommandException(String.format(
+                    "Rug daemon is already running.\n\nTo stop the daemon, run:\n  %sdaemon --stop",
+                    Constants.command()), "daemon");
+        }
+        // The runner takes over from here and starts serving requests
+    }
+}
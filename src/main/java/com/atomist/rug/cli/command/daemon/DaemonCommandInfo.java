@@ -0,0 +1,49 @@
+package com.atomist.rug.cli.command.daemon;
+
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import com.atomist.rug.cli.command.AbstractRugScopedCommandInfo;
+
+public class DaemonCommandInfo extends AbstractRugScopedCommandInfo {
+
+    public DaemonCommandInfo() {
+        super(DaemonCommand.class, "daemon");
+    }
+
+    @Override
+    public String description() {
+        return "Start a background daemon to run commands in";
+    }
+
+    @Override
+    public String detail() {
+        return "Starts a long-running process that keeps dependencies, classloaders and "
+                + "compiled Rugs warm. While the daemon is running, rug commands are "
+                + "forwarded to it instead of starting a new JVM. Set RUG_NO_DAEMON to run "
+                + "commands without the daemon.";
+    }
+
+    @Override
+    public Options options() {
+        Options options = super.options();
+        options.addOption(Option.builder().longOpt("stop").hasArg(false).required(false)
+                .desc("Stop the running daemon").build());
+        return options;
+    }
+
+    @Override
+    public int order() {
+        return Integer.MAX_VALUE - 15;
+    }
+
+    @Override
+    public String usage() {
+        return "daemon [OPTION]...";
+    }
+
+    @Override
+    public String group() {
+        return "5";
+    }
+}
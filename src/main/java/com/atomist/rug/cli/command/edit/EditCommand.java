@@ -3,7 +3,19 @@ package com.atomist.rug.cli.command.edit;
 import static scala.collection.JavaConversions.asJavaCollection;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.text.WordUtils;
 
@@ -18,6 +30,7 @@ import com.atomist.rug.cli.command.annotation.Argument;
 import com.atomist.rug.cli.command.annotation.Command;
 import com.atomist.rug.cli.command.annotation.Option;
 import com.atomist.rug.cli.command.annotation.Validator;
+import com.atomist.rug.cli.command.utils.GitTreeProject;
 import com.atomist.rug.cli.command.utils.GitUtils;
 import com.atomist.rug.cli.command.utils.LocalGitProjectManagement;
 import com.atomist.rug.cli.command.utils.OperationUtils;
@@ -25,16 +38,31 @@ import com.atomist.rug.cli.output.Style;
 import com.atomist.rug.cli.utils.FileUtils;
 import com.atomist.rug.cli.utils.StringUtils;
 import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.source.ArtifactSource;
 
 public class EditCommand extends AbstractParameterizedCommand {
 
     @Validator
     public void validate(@Argument(index = 1) String fqArtifactName,
-            @Option("change-dir") String projectName, @Option("repo") boolean repo) {
+            @Option("change-dir") String projectName, @Option("projects") String projects,
+            @Option("repo") boolean repo, @Option("branch") String branch) {
         String name = OperationUtils.extractRugTypeName(fqArtifactName);
         if (name == null) {
             throw new CommandException("No editor name provided.", "edit");
         }
+        if (branch != null && !GitTreeProject.isValidBranchName(branch)) {
+            throw new CommandException(String.format(
+                    "Invalid branch name %s.\nPlease fix the branch name provided to --branch.",
+                    branch), "edit");
+        }
+        if (projects != null) {
+            if (projectRoots(projectName, projects).isEmpty()) {
+                throw new CommandException(String.format(
+                        "No project directories found matching %s.\nPlease fix the directories provided to --projects.",
+                        projects), "edit");
+            }
+            return;
+        }
         File root = FileUtils.createProjectRoot(projectName);
         if (!root.exists()) {
             throw new CommandException(String.format(
@@ -46,16 +74,18 @@ public class EditCommand extends AbstractParameterizedCommand {
                     "Target path %s is not a directory.\nPlease fix the directory path provided to --change-dir.",
                     projectName), "edit");
         }
-        if (repo) {
+        if (repo && branch == null) {
             GitUtils.isClean(root, "edit");
         }
     }
 
     @Command
-    public void run(Rugs operations, ArtifactDescriptor artifact,
+    public void run(Rugs operations, ArtifactDescriptor artifact, ArtifactSource source,
             @Argument(index = 1) String fqArtifactName,
             @Argument(start = 2) ParameterValues arguments, @Option("change-dir") String root,
-            @Option("dry-run") boolean dryRun, @Option("repo") boolean repo, RugResolver resolver) {
+            @Option("projects") String projects, @Option("dry-run") boolean dryRun,
+            @Option("repo") boolean repo, @Option("branch") String branch,
+            RugResolver resolver) {
 
         String editorName = OperationUtils.extractRugTypeName(fqArtifactName);
         Optional<ProjectEditor> opt = asJavaCollection(operations.editors()).stream()
@@ -63,7 +93,17 @@ public class EditCommand extends AbstractParameterizedCommand {
 
         if (opt.isPresent()) {
             arguments = validate(artifact, opt.get(), arguments);
-            invoke(artifact, opt.get(), arguments, root, dryRun, repo, resolver);
+            if (projects != null) {
+                // Every further thread editing projects loads its own copy of the editor
+                Supplier<ProjectEditor> editors = () -> asJavaCollection(
+                        loadRugs(artifact, source).editors()).stream()
+                                .filter(g -> g.name().equals(editorName)).findFirst().get();
+                invokeAll(artifact, opt.get(), editors, arguments, projectRoots(root, projects),
+                        dryRun, repo, branch, resolver);
+            }
+            else {
+                invoke(artifact, opt.get(), arguments, root, dryRun, repo, branch, resolver);
+            }
         }
         else {
             if (!operations.editors().isEmpty()) {
@@ -86,10 +126,55 @@ public class EditCommand extends AbstractParameterizedCommand {
 
     private void invoke(ArtifactDescriptor artifact, ProjectEditor editor,
             ParameterValues arguments, String rootName, boolean dryRun, boolean commit,
-            RugResolver resolver) {
+            String branch, RugResolver resolver) {
 
         LocalGitProjectManagement management = new LocalGitProjectManagement(artifact, rootName,
-                false, false, commit, dryRun, resolver);
+                false, false, commit, dryRun, resolver, branch);
         management.edit(editor, arguments, rootName, scala.Option.apply(null));
     }
+
+    private void invokeAll(ArtifactDescriptor artifact, ProjectEditor editor,
+            Supplier<ProjectEditor> editors, ParameterValues arguments, List<File> roots,
+            boolean dryRun, boolean commit, String branch, RugResolver resolver) {
+
+        LocalGitProjectManagement management = new LocalGitProjectManagement(artifact, null,
+                false, false, commit, dryRun, resolver, branch);
+        management.editAll(editor, editors, arguments, roots);
+    }
+
+    /**
+     * Resolve the comma-separated list of directories or glob patterns relative to the working
+     * directory.
+     */
+    private List<File> projectRoots(String workingDir, String projects) {
+        Path base = FileUtils.createProjectRoot(workingDir).toPath();
+        Set<File> roots = new TreeSet<>();
+        for (String project : projects.split(",")) {
+            String pattern = project.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (!pattern.contains("*") && !pattern.contains("?") && !pattern.contains("{")
+                    && !pattern.contains("[")) {
+                File root = base.resolve(pattern).toFile();
+                if (root.isDirectory()) {
+                    roots.add(FileUtils.createProjectRoot(root.getAbsolutePath()));
+                }
+                continue;
+            }
+
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            int depth = (pattern.contains("**") ? Integer.MAX_VALUE
+                    : Paths.get(pattern).getNameCount());
+            try (Stream<Path> paths = Files.walk(base, depth)) {
+                paths.filter(Files::isDirectory).filter(p -> matcher.matches(base.relativize(p)))
+                        .forEach(p -> roots.add(p.toFile()));
+            }
+            catch (IOException e) {
+                throw new CommandException(String.format("Failed to resolve projects %s: %s",
+                        pattern, e.getMessage()), "edit");
+            }
+        }
+        return new ArrayList<>(roots);
+    }
 }
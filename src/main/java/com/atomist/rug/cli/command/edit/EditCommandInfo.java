@@ -31,8 +31,14 @@ public class EditCommandInfo extends AbstractVersionCommandInfo {
         Options options = super.options();
         options.addOption(Option.builder("C").longOpt("change-dir").argName("DIR").hasArg(true)
                 .desc("Run editor in directory DIR, default is '.'").required(false).build());
+        options.addOption(Option.builder("m").longOpt("projects").argName("DIRS").hasArg(true)
+                .desc("Run editor in all directories matching comma-separated DIRS, e.g. 'repos/*'")
+                .required(false).build());
         options.addOption("d", "dry-run", false, "Do not persist changes, print diffs");
         options.addOption("R", "repo", false, "Commit files to local git repository");
+        options.addOption(Option.builder("b").longOpt("branch").argName("BRANCH").hasArg(true)
+                .desc("Edit git repository without checkout; with -R commit changes to BRANCH")
+                .required(false).build());
         options.addOption("I", "interactive", false,
                 "Interactive mode for specifying parameter values");
         return options;
@@ -1,5 +1,8 @@
 package com.atomist.rug.cli.command.fs;
 
+import java.io.File;
+import java.util.Set;
+
 import org.springframework.util.ClassUtils;
 
 import com.atomist.rug.resolver.ArtifactDescriptor;
@@ -43,6 +46,18 @@ public abstract class ArtifactSourceFileWatcherFactory {
 
         void shutdown();
 
+        void addListener(FileChangeListener listener);
+
+    }
+
+    /**
+     * Gets notified with the coalesced set of changed files and directories once a burst of file
+     * system events is over.
+     */
+    public interface FileChangeListener {
+
+        void filesChanged(ArtifactDescriptor artifact, Set<File> changes);
+
     }
 
 }
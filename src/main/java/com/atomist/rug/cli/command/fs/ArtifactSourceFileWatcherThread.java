@@ -7,6 +7,7 @@ import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -19,26 +20,45 @@ import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
-import com.atomist.project.archive.Rugs;
-import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.command.CommandContext;
+import com.atomist.rug.cli.command.fs.ArtifactSourceFileWatcherFactory.FileChangeListener;
 import com.atomist.rug.cli.command.fs.ArtifactSourceFileWatcherFactory.FileWatcher;
+import com.atomist.rug.cli.settings.SettingsReader;
 import com.atomist.rug.resolver.ArtifactDescriptor;
 import com.atomist.source.ArtifactSource;
 
 /**
  * {@link Thread} implementation that watches the file system backing an {@link ArtifactSource}
- * instance for modifications. In case of modifications the internal {@link CommandContext} is
- * cleared.
+ * instance for modifications. Events are coalesced until no new event arrived within the debounce
+ * window and the resulting set of changed paths is passed to all registered
+ * {@link FileChangeListener}s. Per default the internal {@link CommandContext} gets invalidated.
  */
 class ArtifactSourceFileWatcherThread extends Thread implements FileWatcher {
 
+    private static final String DEBOUNCE_KEY = "file_watcher_debounce";
+    private static final int DEBOUNCE = 250;
+
+    // Don't let a constant stream of events hold back the change notification forever
+    private static final int MAX_DEBOUNCE_WINDOWS = 20;
+
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> registered = new HashSet<>();
+    private final List<FileChangeListener> listeners = new CopyOnWriteArrayList<>();
+
     private ArtifactDescriptor artifact;
+    private Path root;
+    private Path ignoredGitDir;
+    private Path ignoredTargetDir;
     private WatchService watcher;
     private Modifier[] modifiers;
+    private long debounce;
     private boolean interrupted = false;
 
     public ArtifactSourceFileWatcherThread(ArtifactDescriptor artifact) {
@@ -48,9 +68,16 @@ class ArtifactSourceFileWatcherThread extends Thread implements FileWatcher {
     public ArtifactSourceFileWatcherThread(ArtifactDescriptor artifact, Modifier... modifiers) {
         this.artifact = artifact;
         this.modifiers = modifiers;
+        this.root = Paths.get(artifact.uri());
+        this.ignoredGitDir = root.resolve(".git");
+        this.ignoredTargetDir = root.resolve(".atomist").resolve("target");
+        this.debounce = SettingsReader.read().getConfigValue(DEBOUNCE_KEY, DEBOUNCE);
         setDaemon(true);
         setName("FS File Watcher Thread");
         init();
+        // Register before returning so that no change made right after creation goes unnoticed
+        register(root);
+        addListener(new CommandContextInvalidatingFileChangeListener());
         start();
     }
 
@@ -64,95 +91,119 @@ class ArtifactSourceFileWatcherThread extends Thread implements FileWatcher {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void run() {
-
-        final Map<WatchKey, Path> keys = new HashMap<>();
-
-        Consumer<Path> register = register(keys);
-
-        register.accept(Paths.get(artifact.uri()));
-
         while (!interrupted) {
-            final WatchKey key;
+            Set<File> changes = new HashSet<>();
             try {
-                key = watcher.take(); // wait for a key to be available
+                // Wait for the first event and then collect until the burst is over
+                processEvents(watcher.take(), changes);
+                int windows = 0;
+                WatchKey key;
+                while (windows++ < MAX_DEBOUNCE_WINDOWS
+                        && (key = watcher.poll(debounce, TimeUnit.MILLISECONDS)) != null) {
+                    processEvents(key, changes);
+                }
             }
-            catch (InterruptedException ex) {
+            catch (InterruptedException | ClosedWatchServiceException ex) {
                 return;
             }
 
-            final Path dir = keys.get(key);
-            if (dir == null) {
-                continue;
+            if (!changes.isEmpty()) {
+                listeners.forEach(l -> l.filesChanged(artifact, changes));
             }
+        }
+    }
 
-            key.pollEvents().stream().filter(e -> (e.kind() != OVERFLOW)).forEach(e -> {
-                Path p = ((WatchEvent<Path>) e).context();
-                Path absPath = dir.resolve(p);
-                File f = absPath.toFile();
+    @SuppressWarnings("unchecked")
+    private void processEvents(WatchKey key, Set<File> changes) {
+        Path dir = keys.get(key);
+        if (dir != null) {
+            key.pollEvents().forEach(e -> {
+                if (e.kind() == OVERFLOW) {
+                    // We lost track; report the root so that everything gets invalidated
+                    changes.add(root.toFile());
+                    return;
+                }
 
-                if (f.isDirectory()) {
-                    register.accept(absPath);
+                Path path = dir.resolve(((WatchEvent<Path>) e).context());
+                if (isIgnored(path)) {
+                    return;
+                }
+                if (e.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                    register(path);
                 }
+                changes.add(path.toFile());
+            });
+        }
 
-                String path = f.getAbsolutePath();
-                if (!path.contains(".atomist/target") && !path.contains(".git")) {
+        boolean valid = key.reset(); // IMPORTANT: The key must be reset after processed
+        if (!valid) {
+            Path removed = keys.remove(key);
+            if (removed != null) {
+                registered.remove(removed);
+            }
+        }
+    }
 
-                    // There was a modification to the filesystem, trigger reload of ArtifactSource
-                    CommandContext.delete(ArtifactSource.class);
-                    CommandContext.delete(Rugs.class);
+    private boolean isIgnored(Path path) {
+        return path.startsWith(ignoredGitDir) || path.startsWith(ignoredTargetDir);
+    }
 
-                    // Special case for changes to manifest.yml
-                    if (f.getName().equals("manifest.yml") && f.getParentFile() != null
-                            && f.getParentFile().getName().equals(".atomist")) {
-                        Constants.setReload(true);
+    private boolean isInNodeModules(Path dir) {
+        Path relative = root.relativize(dir);
+        for (int i = 0; i < relative.getNameCount() - 1; i++) {
+            if (relative.getName(i).toString().equals("node_modules")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void register(Path path) {
+        if (!Files.isDirectory(path)) {
+            throw new RuntimeException("Folder " + path + " does not exist or is not a directory");
+        }
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                        throws IOException {
+                    if (isIgnored(dir) || isInNodeModules(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
                     }
-                    // Special case for changes to package.json
-                    if (f.getName().equals("package.json") && f.getParentFile() != null
-                            && f.getParentFile().getName().equals(".atomist")) {
-                        Constants.setReload(true);
+                    if (registered.add(dir)) {
+                        WatchKey watchKey = dir.register(watcher, new WatchEvent.Kind<?>[] {
+                                ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY }, modifiers);
+                        keys.put(watchKey, dir);
                     }
+                    // Watch node_modules for added or removed packages, but not their content
+                    if (dir.getFileName() != null
+                            && dir.getFileName().toString().equals("node_modules")) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
                 }
             });
-
-            boolean valid = key.reset(); // IMPORTANT: The key must be reset after processed
-            if (!valid) {
-                keys.remove(key);
-            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Error registering path " + path);
         }
     }
 
-    private Consumer<Path> register(final Map<WatchKey, Path> keys) {
-        Consumer<Path> register = p -> {
-            if (!p.toFile().exists() || !p.toFile().isDirectory()) {
-                throw new RuntimeException("Folder " + p + " does not exist or is not a directory");
-            }
-            try {
-                Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-                            throws IOException {
-
-                        if (!keys.values().stream().anyMatch(p -> p.equals(dir))) {
-                            WatchKey watchKey = dir.register(watcher, new WatchEvent.Kind<?>[] {
-                                    ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY }, modifiers);
-                            keys.put(watchKey, dir);
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
-            }
-            catch (IOException e) {
-                throw new RuntimeException("Error registering path " + p);
-            }
-        };
-        return register;
+    @Override
+    public void addListener(FileChangeListener listener) {
+        listeners.add(listener);
     }
 
     @Override
     public void shutdown() {
         this.interrupted = true;
         this.interrupt();
+        try {
+            watcher.close();
+        }
+        catch (IOException e) {
+            // Ignore as we are shutting down anyway
+        }
     }
 }
@@ -0,0 +1,146 @@
+package com.atomist.rug.cli.command.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.command.utils.ArtifactSourceUtils;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.source.ArtifactSource;
+import com.atomist.source.DirectoryArtifact;
+import com.atomist.source.FileArtifact;
+
+import scala.collection.JavaConverters;
+import scala.runtime.AbstractFunction1;
+
+/**
+ * Keeps the {@link ArtifactSource} last read from a local project together with the files that
+ * changed since. Instead of reading the complete tree again only the changed files get read and
+ * swapped into the previous source.
+ */
+public class ChangeTrackingArtifactSource {
+
+    private final ArtifactDescriptor artifact;
+    private final Path root;
+    private ArtifactSource source;
+    private Set<File> changes = new HashSet<>();
+
+    public ChangeTrackingArtifactSource(ArtifactDescriptor artifact, ArtifactSource source) {
+        this.artifact = artifact;
+        this.root = new File(artifact.uri()).toPath().toAbsolutePath();
+        this.source = source;
+    }
+
+    public boolean isFor(ArtifactDescriptor artifact) {
+        return this.artifact.uri().equals(artifact.uri());
+    }
+
+    public synchronized void update(ArtifactSource source) {
+        this.source = source;
+    }
+
+    synchronized void changed(Set<File> changes) {
+        this.changes.addAll(changes);
+    }
+
+    /**
+     * Returns the previous source patched with all changes since or an empty {@link Optional} if
+     * the project needs to be read again completely.
+     */
+    public Optional<ArtifactSource> patch() {
+        ArtifactSource current;
+        Set<File> pending;
+        synchronized (this) {
+            current = source;
+            pending = changes;
+            changes = new HashSet<>();
+        }
+
+        // Watcher lost track of events
+        if (pending.stream().anyMatch(f -> f.toPath().toAbsolutePath().equals(root))) {
+            return Optional.empty();
+        }
+        if (pending.isEmpty()) {
+            return Optional.of(current);
+        }
+
+        Set<String> removed = new HashSet<>();
+        Set<File> read = new HashSet<>();
+        pending.forEach(f -> {
+            if (f.isFile()) {
+                removed.add(path(f));
+                read.add(f);
+            }
+            else if (f.isDirectory()) {
+                // Files copied into a new directory before it got watched don't raise events
+                read.addAll(newFiles(f, current));
+            }
+            else {
+                removed.add(path(f));
+            }
+        });
+
+        ArtifactSource patched = current.filter(
+                new AbstractFunction1<DirectoryArtifact, Object>() {
+                    @Override
+                    public Object apply(DirectoryArtifact dir) {
+                        return !isRemoved(dir.path(), removed);
+                    }
+                }, new AbstractFunction1<FileArtifact, Object>() {
+                    @Override
+                    public Object apply(FileArtifact file) {
+                        return !isRemoved(file.path(), removed);
+                    }
+                });
+
+        if (!read.isEmpty()) {
+            ArtifactSource changedSource = ArtifactSourceUtils.createArtifactSource(artifact,
+                    read);
+            for (FileArtifact file : JavaConverters
+                    .seqAsJavaListConverter(changedSource.allFiles()).asJava()) {
+                patched = patched.plus(file);
+            }
+        }
+        return Optional.of(patched);
+    }
+
+    private List<File> newFiles(File dir, ArtifactSource current) {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            return files.filter(Files::isRegularFile).map(Path::toFile)
+                    .filter(f -> !current.findFile(path(f)).isDefined())
+                    .collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            throw new RunnerException(e);
+        }
+    }
+
+    private String path(File file) {
+        return root.relativize(file.toPath().toAbsolutePath()).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    private static boolean isRemoved(String path, Set<String> removed) {
+        if (removed.contains(path)) {
+            return true;
+        }
+        // Deleted directories take all their content with them
+        int ix = path.lastIndexOf('/');
+        while (ix > 0) {
+            path = path.substring(0, ix);
+            if (removed.contains(path)) {
+                return true;
+            }
+            ix = path.lastIndexOf('/');
+        }
+        return false;
+    }
+}
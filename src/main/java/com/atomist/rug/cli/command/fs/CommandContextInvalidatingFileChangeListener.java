@@ -0,0 +1,53 @@
+package com.atomist.rug.cli.command.fs;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import com.atomist.project.archive.ResolvedDependency;
+import com.atomist.project.archive.RugResolver;
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.command.CommandContext;
+import com.atomist.rug.cli.command.CommandContextRebuilder;
+import com.atomist.rug.cli.command.fs.ArtifactSourceFileWatcherFactory.FileChangeListener;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.source.ArtifactSource;
+
+/**
+ * {@link FileChangeListener} that only drops those entries from the {@link CommandContext} that
+ * are affected by the changes. Loaded rugs are kept as long as nothing under .atomist changed.
+ * Inside the shell the dropped entries get rebuilt in the background right away.
+ */
+class CommandContextInvalidatingFileChangeListener implements FileChangeListener {
+
+    @Override
+    public void filesChanged(ArtifactDescriptor artifact, Set<File> changes) {
+        Path root = Paths.get(artifact.uri());
+        Path atomist = root.resolve(".atomist");
+
+        boolean rugsChanged = changes.stream().map(File::toPath)
+                .anyMatch(p -> p.equals(root) || p.startsWith(atomist));
+
+        CommandContextRebuilder.invalidate(artifact, () -> {
+            // The project content changed; the source needs to be patched and compiled again
+            CommandContext.delete(ArtifactSource.class);
+            ChangeTrackingArtifactSource source = CommandContext
+                    .restore(ChangeTrackingArtifactSource.class);
+            if (source != null && source.isFor(artifact)) {
+                source.changed(changes);
+            }
+
+            if (rugsChanged) {
+                CommandContext.delete(ResolvedDependency.class);
+                CommandContext.delete(RugResolver.class);
+            }
+
+            // Special case for changes to manifest.yml and package.json
+            if (changes.contains(atomist.resolve("manifest.yml").toFile())
+                    || changes.contains(atomist.resolve("package.json").toFile())) {
+                Constants.setReload(true);
+            }
+        });
+    }
+}
@@ -5,26 +5,46 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.SystemUtils;
 
+import com.atomist.rug.cli.utils.BackgroundTasks;
+
 public class GestureRegistry {
 
+    private static Future<Map<String, Gesture>> loading;
     private static Map<String, Gesture> gestures;
 
     public GestureRegistry() {
         init();
     }
 
-    private void init() {
+    /**
+     * Starts reading the gestures in the background; the next {@link GestureRegistry} joins on
+     * it.
+     */
+    public static synchronized void preload() {
+        if (gestures == null && loading == null) {
+            loading = BackgroundTasks.submit("gestures read", GestureRegistry::readGestures);
+        }
+    }
+
+    private static synchronized void init() {
         if (gestures == null) {
-            gestures = new HashMap<>();
-            gestures.putAll(GestureReader.readFromClasspath());
-            gestures.putAll(GestureReader.readFromDirectory(
-                    new File(SystemUtils.getUserHome(), ".atomist" + File.separator + "gestures")));
+            gestures = (loading != null ? BackgroundTasks.join(loading) : readGestures());
+            loading = null;
         }
     }
 
+    private static Map<String, Gesture> readGestures() {
+        Map<String, Gesture> gestures = new HashMap<>();
+        gestures.putAll(GestureReader.readFromClasspath());
+        gestures.putAll(GestureReader.readFromDirectory(
+                new File(SystemUtils.getUserHome(), ".atomist" + File.separator + "gestures")));
+        return gestures;
+    }
+
     public Optional<Gesture> findGesture(String[] args) {
         String name = null;
         for (int i = 0; i < args.length; i++) {
@@ -2,6 +2,7 @@ package com.atomist.rug.cli.command.install;
 
 import java.io.File;
 import java.net.URI;
+import java.util.Collections;
 
 import org.apache.commons.cli.CommandLine;
 import org.eclipse.aether.AbstractRepositoryListener;
@@ -18,8 +19,14 @@ import com.atomist.rug.cli.command.AbstractRepositoryCommand;
 import com.atomist.rug.cli.output.ProgressReportingOperationRunner;
 import com.atomist.rug.cli.output.ProgressReportingTransferListener;
 import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.resolver.ArchiveCatalog;
+import com.atomist.rug.cli.resolver.LocalRepositoryLock;
+import com.atomist.rug.cli.resolver.LocalRepositoryLock.Lock;
 import com.atomist.rug.cli.utils.CommandLineOptions;
 import com.atomist.rug.cli.utils.FileUtils;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
 import com.atomist.rug.resolver.manifest.Manifest;
 import com.atomist.source.ArtifactSource;
 
@@ -38,8 +45,21 @@ public class InstallCommand extends AbstractRepositoryCommand {
                     ((DefaultRepositorySystemSession) session)
                             .setRepositoryListener(new AbstractRepositoryListener() {
 
+                                // Processes downloading the same file wait until it is
+                                // installed
+                                private Lock lock;
+
+                                @Override
+                                public void artifactInstalling(RepositoryEvent event) {
+                                    lock = LocalRepositoryLock.lock(event.getFile());
+                                }
+
                                 @Override
                                 public void artifactInstalled(RepositoryEvent event) {
+                                    if (lock != null) {
+                                        lock.close();
+                                        lock = null;
+                                    }
 
                                     if (CommandLineOptions.hasOption("V")) {
                                         URI repo = session.getLocalRepository().getBasedir()
@@ -63,7 +83,14 @@ public class InstallCommand extends AbstractRepositoryCommand {
                     InstallRequest installRequest = new InstallRequest();
                     installRequest.addArtifact(artifact).addArtifact(pom).addArtifact(metadata);
 
-                    return system.install(session, installRequest);
+                    InstallResult result = system.install(session, installRequest);
+
+                    File installed = new File(session.getLocalRepository().getBasedir(),
+                            session.getLocalRepositoryManager().getPathForLocalArtifact(artifact));
+                    ArchiveCatalog.update(Collections.singletonList(new DefaultArtifactDescriptor(
+                            artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+                            Extension.ZIP, Scope.COMPILE, null, installed.toURI())));
+                    return result;
                 });
 
         log.newline();
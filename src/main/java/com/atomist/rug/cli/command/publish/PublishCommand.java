@@ -2,12 +2,17 @@ package com.atomist.rug.cli.command.publish;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.commons.cli.CommandLine;
@@ -16,11 +21,13 @@ import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.deployment.DeployRequest;
+import org.eclipse.aether.deployment.DeploymentException;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.util.repository.AuthenticationBuilder;
 import org.eclipse.aether.version.Version;
 
 import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.RunnerException;
 import com.atomist.rug.cli.command.AbstractRepositoryCommand;
 import com.atomist.rug.cli.command.CommandException;
 import com.atomist.rug.cli.command.CommandUtils;
@@ -29,9 +36,11 @@ import com.atomist.rug.cli.command.search.SearchCommand;
 import com.atomist.rug.cli.command.search.SearchOperations.Archive;
 import com.atomist.rug.cli.command.search.SearchOperations.Operation;
 import com.atomist.rug.cli.command.utils.GitUtils;
+import com.atomist.rug.cli.output.ProgressReporter;
 import com.atomist.rug.cli.output.ProgressReportingOperationRunner;
 import com.atomist.rug.cli.output.ProgressReportingTransferListener;
 import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.output.SynchronizedProgressReporter;
 import com.atomist.rug.cli.settings.Settings;
 import com.atomist.rug.cli.settings.Settings.Authentication;
 import com.atomist.rug.cli.settings.Settings.RemoteRepository;
@@ -45,6 +54,9 @@ import com.atomist.source.ArtifactSource;
 
 public class PublishCommand extends AbstractRepositoryCommand {
 
+    private static final String PUBLISH_THREADS_KEY = "publish_threads";
+    private static final int PUBLISH_THREADS = 4;
+
     @Validator
     public void validate(CommandLine commandLine) {
         verifyWorkingTree(commandLine);
@@ -79,39 +91,8 @@ public class PublishCommand extends AbstractRepositoryCommand {
 
         List<org.eclipse.aether.repository.RemoteRepository> deployRepositorys = getDeployRepositories(
                 ids);
-        deployRepositorys.forEach(
-                r -> publishToRepository(system, session, source, manifest, zip, pom, metadata, r));
-    }
-
-    private void publishToRepository(RepositorySystem system, RepositorySystemSession session,
-            ArtifactSource source, Manifest manifest, Artifact zip, Artifact pom, Artifact metadata,
-            org.eclipse.aether.repository.RemoteRepository deployRepository) {
-        String artifactUrl = new ProgressReportingOperationRunner<String>(
-                String.format("Publishing archive into repository %s", deployRepository.getId()))
-                        .run(indicator -> {
-                            String[] url = new String[1];
-                            ((DefaultRepositorySystemSession) session).setTransferListener(
-                                    new ProgressReportingTransferListener(indicator, false) {
-
-                                        @Override
-                                        public void transferSucceeded(TransferEvent event) {
-                                            super.transferSucceeded(event);
-                                            if (event.getResource().getResourceName()
-                                                    .endsWith(".zip")) {
-                                                url[0] = event.getResource().getRepositoryUrl()
-                                                        + event.getResource().getResourceName();
-                                            }
-                                        }
-                                    });
-
-                            DeployRequest deployRequest = new DeployRequest();
-                            deployRequest.addArtifact(zip).addArtifact(pom).addArtifact(metadata);
-                            deployRequest.setRepository(deployRepository);
-
-                            system.deploy(session, deployRequest);
-
-                            return url[0];
-                        });
+        Map<String, String> artifactUrls = publishToRepositories(system, session, zip, pom,
+                metadata, deployRepositorys);
 
         log.newline();
         log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("Archive"));
@@ -120,15 +101,126 @@ public class PublishCommand extends AbstractRepositoryCommand {
 
         printTree(source);
 
-        log.newline();
-        log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("URL"));
-        log.info("  %s", Style.underline(artifactUrl));
+        printUrls(artifactUrls);
 
         log.newline();
         log.info(Style.green("Successfully published archive for %s:%s (%s)", manifest.group(),
                 manifest.artifact(), manifest.version()));
     }
 
+    private Map<String, String> publishToRepositories(RepositorySystem system,
+            RepositorySystemSession session, Artifact zip, Artifact pom, Artifact metadata,
+            List<org.eclipse.aether.repository.RemoteRepository> deployRepositories) {
+        if (deployRepositories.size() == 1) {
+            org.eclipse.aether.repository.RemoteRepository deployRepository = deployRepositories
+                    .get(0);
+            String artifactUrl = new ProgressReportingOperationRunner<String>(String.format(
+                    "Publishing archive into repository %s", deployRepository.getId()))
+                            .run(indicator -> publishToRepository(system, session, zip, pom,
+                                    metadata, deployRepository, indicator));
+            return Collections.singletonMap(deployRepository.getId(), artifactUrl);
+        }
+
+        Map<String, String> artifactUrls = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        try {
+            new ProgressReportingOperationRunner<Void>(String.format(
+                    "Publishing archive into %s repositories", deployRepositories.size()))
+                            .run(indicator -> {
+                                publishConcurrently(system, session, zip, pom, metadata,
+                                        deployRepositories,
+                                        new SynchronizedProgressReporter(indicator),
+                                        artifactUrls, failures);
+                                if (!failures.isEmpty()) {
+                                    throw new CommandException(String.format(
+                                            "Publishing failed for %s of %s repositories:\n  %s",
+                                            failures.size(), deployRepositories.size(),
+                                            failures.entrySet().stream()
+                                                    .map(e -> e.getKey() + ": "
+                                                            + e.getValue().getMessage())
+                                                    .collect(Collectors.joining("\n  "))),
+                                            "publish");
+                                }
+                                return null;
+                            });
+        }
+        catch (RunnerException e) {
+            // Archives that made it into a repository are there to stay; tell where they are
+            if (!artifactUrls.isEmpty()) {
+                printUrls(artifactUrls);
+                log.newline();
+            }
+            throw e;
+        }
+        return artifactUrls;
+    }
+
+    private void publishConcurrently(RepositorySystem system, RepositorySystemSession session,
+            Artifact zip, Artifact pom, Artifact metadata,
+            List<org.eclipse.aether.repository.RemoteRepository> deployRepositories,
+            ProgressReporter indicator, Map<String, String> artifactUrls,
+            Map<String, Throwable> failures) throws InterruptedException {
+        int threads = Math.min(deployRepositories.size(),
+                SettingsReader.read().getConfigValue(PUBLISH_THREADS_KEY, PUBLISH_THREADS));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, Future<String>> results = new LinkedHashMap<>();
+            deployRepositories.forEach(r -> results.put(r.getId(), executor.submit(
+                    () -> publishToRepository(system, session, zip, pom, metadata, r, indicator))));
+
+            for (Entry<String, Future<String>> result : results.entrySet()) {
+                try {
+                    String artifactUrl = result.getValue().get();
+                    artifactUrls.put(result.getKey(), artifactUrl);
+                    indicator.report(String.format("  Published to %s %s %s", result.getKey(),
+                            Style.green("succeeded"), artifactUrl));
+                }
+                catch (ExecutionException e) {
+                    failures.put(result.getKey(), e.getCause());
+                    indicator.report(String.format("  Published to %s %s: %s", result.getKey(),
+                            Style.red("failed"), e.getCause().getMessage()));
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void printUrls(Map<String, String> artifactUrls) {
+        log.newline();
+        log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("URL"));
+        artifactUrls.values().forEach(u -> log.info("  %s", Style.underline(u)));
+    }
+
+    private String publishToRepository(RepositorySystem system, RepositorySystemSession session,
+            Artifact zip, Artifact pom, Artifact metadata,
+            org.eclipse.aether.repository.RemoteRepository deployRepository,
+            ProgressReporter indicator) throws DeploymentException {
+        String[] url = new String[1];
+        // Every deployment needs its own listener to pick up the url of its archive
+        DefaultRepositorySystemSession deploySession = new DefaultRepositorySystemSession(session);
+        deploySession.setTransferListener(new ProgressReportingTransferListener(indicator, false) {
+
+            @Override
+            public void transferSucceeded(TransferEvent event) {
+                super.transferSucceeded(event);
+                if (event.getResource().getResourceName().endsWith(".zip")) {
+                    url[0] = event.getResource().getRepositoryUrl()
+                            + event.getResource().getResourceName();
+                }
+            }
+        });
+
+        DeployRequest deployRequest = new DeployRequest();
+        deployRequest.addArtifact(zip).addArtifact(pom).addArtifact(metadata);
+        deployRequest.setRepository(deployRepository);
+
+        system.deploy(deploySession, deployRequest);
+
+        return url[0];
+    }
+
     private void verifyWorkingTree(CommandLine commandLine) {
         boolean force = commandLine.hasOption("force");
         File projectRoot = CommandUtils.getRequiredWorkingDirectory();
@@ -3,9 +3,10 @@ package com.atomist.rug.cli.command.shell;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
@@ -14,6 +15,8 @@ import org.jline.reader.Completer;
 import org.jline.reader.LineReader;
 import org.jline.reader.ParsedLine;
 
+import com.atomist.rug.cli.resolver.ArchiveCatalog;
+
 /**
  * {@link Completer} for Rug archive coordinates
  */
@@ -21,6 +24,9 @@ public class ArchiveNameCompleter implements Completer {
 
     private static final List<String> COMMANDS = Arrays.asList("load", "shell", "repl");
 
+    private Set<String> installed;
+    private long catalogLastModified = -1;
+
     @Override
     public void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
         if (line.words().size() == 2) {
@@ -45,8 +51,9 @@ public class ArchiveNameCompleter implements Completer {
         }
     }
 
-    private List<String> archivesFromCache() {
-        List<String> archives = new ArrayList<>();
+    private Set<String> archivesFromCache() {
+        // Locally installed archives plus what searches turned up so far
+        Set<String> archives = new HashSet<>(installed());
         if (ShellUtils.SHELL_ARCHIVES.exists()) {
             try {
                 IOUtils.lineIterator(new FileInputStream(ShellUtils.SHELL_ARCHIVES),
@@ -57,4 +64,17 @@ public class ArchiveNameCompleter implements Completer {
         }
         return archives;
     }
+
+    /**
+     * Only reads the catalog again after it changed; completion runs on every TAB.
+     */
+    private synchronized Set<String> installed() {
+        long lastModified = ArchiveCatalog.lastModified();
+        if (installed == null || lastModified == 0 || lastModified != catalogLastModified) {
+            installed = ArchiveCatalog.archives().stream()
+                    .map(a -> a.group() + ":" + a.artifact()).collect(Collectors.toSet());
+            catalogLastModified = ArchiveCatalog.lastModified();
+        }
+        return installed;
+    }
 }
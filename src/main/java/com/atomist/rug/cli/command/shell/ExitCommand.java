@@ -5,8 +5,11 @@ import org.apache.commons.cli.CommandLine;
 import com.atomist.project.archive.ResolvedDependency;
 import com.atomist.project.archive.RugResolver;
 import com.atomist.rug.cli.command.AbstractCommand;
+import com.atomist.rug.cli.command.AbstractCompilingAndOperationLoadingCommand;
 import com.atomist.rug.cli.command.CommandContext;
+import com.atomist.rug.cli.command.CommandContextRebuilder;
 import com.atomist.rug.cli.command.fs.ArtifactSourceFileWatcherFactory.FileWatcher;
+import com.atomist.rug.cli.command.fs.ChangeTrackingArtifactSource;
 import com.atomist.rug.resolver.ArtifactDescriptor;
 import com.atomist.source.ArtifactSource;
 
@@ -14,13 +17,16 @@ public class ExitCommand extends AbstractCommand {
 
     @Override
     protected void run(ArtifactDescriptor artifact, CommandLine commandLine) {
-        // Shutdown file system watcher
+        // Shutdown file system watcher and drop pending rebuilds
+        CommandContextRebuilder.reset();
         if (CommandContext.contains(FileWatcher.class)) {
             CommandContext.restore(FileWatcher.class).shutdown();
         }
+        AbstractCompilingAndOperationLoadingCommand.shutdownDependencyPool();
         // Clear out context
         CommandContext.delete(FileWatcher.class);
         CommandContext.delete(ArtifactSource.class);
+        CommandContext.delete(ChangeTrackingArtifactSource.class);
         CommandContext.delete(ResolvedDependency.class);
         CommandContext.delete(RugResolver.class);
     }
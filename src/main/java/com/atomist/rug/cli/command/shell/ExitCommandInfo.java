@@ -62,7 +62,7 @@ public class ExitCommandInfo extends AbstractRugScopedCommandInfo {
 
     @Override
     public boolean enabled(ArtifactDescriptor artifact) {
-        return Constants.isShell();
+        return Constants.isShell() || Constants.isDaemon();
     }
     
     @Override
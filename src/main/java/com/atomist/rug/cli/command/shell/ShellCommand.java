@@ -11,6 +11,7 @@ import com.atomist.project.archive.RugResolver;
 import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.command.AbstractAnnotationBasedCommand;
 import com.atomist.rug.cli.command.CommandContext;
+import com.atomist.rug.cli.command.CommandContextRebuilder;
 import com.atomist.rug.cli.command.CommandEventListener;
 import com.atomist.rug.cli.command.CommandEventListenerAdapter;
 import com.atomist.rug.cli.command.CommandEventListenerRegistry;
@@ -60,6 +61,8 @@ public class ShellCommand extends AbstractAnnotationBasedCommand {
         if (artifact instanceof LocalArtifactDescriptor && operations != null) {
             CommandContext.save(FileWatcher.class,
                     ArtifactSourceFileWatcherFactory.create(artifact));
+            // Get compiled sources and rugs back in shape as soon as files change
+            CommandContextRebuilder.register(this::rebuild);
         }
     }
 
@@ -2,10 +2,21 @@ package com.atomist.rug.cli.command.test;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.script.SimpleBindings;
 
@@ -23,6 +34,7 @@ import com.atomist.rug.cli.output.ConsoleLogger;
 import com.atomist.rug.cli.output.ProgressReporter;
 import com.atomist.rug.cli.output.ProgressReportingOperationRunner;
 import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.output.SynchronizedProgressReporter;
 import com.atomist.rug.cli.settings.Settings;
 import com.atomist.rug.cli.tree.LogVisitor;
 import com.atomist.rug.cli.tree.Node;
@@ -44,7 +56,9 @@ import com.atomist.rug.test.gherkin.PathExpressionEvaluation;
 import com.atomist.rug.test.gherkin.ScenarioResult;
 import com.atomist.rug.test.gherkin.TestReport;
 import com.atomist.source.ArtifactSource;
+import com.atomist.source.FileArtifact;
 
+import gherkin.ast.Feature;
 import gherkin.ast.ScenarioDefinition;
 import gherkin.ast.Step;
 import scala.Option;
@@ -58,37 +72,22 @@ public class TestCommand extends AbstractAnnotationBasedCommand {
     @Command
     public void run(Rugs operations, ArtifactDescriptor artifact, ArtifactSource source,
             Settings settings, @Argument(index = 1) String testToRun,
-            @com.atomist.rug.cli.command.annotation.Option("disable-console-log") boolean disableConsoleLog) {
+            @com.atomist.rug.cli.command.annotation.Option("disable-console-log") boolean disableConsoleLog,
+            @com.atomist.rug.cli.command.annotation.Option(value = "parallel", defaultValue = "1") int parallel) {
         Optional<String> token = settings.getConfigValue(Settings.GIHUB_TOKEN_KEY, String.class);
 
         ArchiveTestResult result = new ProgressReportingOperationRunner<ArchiveTestResult>(
                 String.format("Running tests in %s", ArtifactDescriptorUtils.coordinates(artifact)))
                         .run((indicator) -> {
-                            List<GherkinExecutionListener> listeners = Collections
-                                    .singletonList(new LoggingGherkinExecutionListener(indicator));
-                            GherkinRunner runner = new GherkinRunner(
-                                    new JavaScriptContext(source, DefaultAtomistConfig$.MODULE$,
-                                            new SimpleBindings(),
-                                            ConsoleLogger.consoleLogger(!disableConsoleLog)),
-                                    Option.apply(operations),
-                                    JavaConverters.asScalaBufferConverter(listeners).asScala(),
-                                    new GherkinRunnerConfig(Option.apply(token.orElse(null))));
-
-                            return runner
-                                    .execute(new AbstractFunction1<FeatureDefinition, Object>() {
-                                        @Override
-                                        public Object apply(FeatureDefinition fd) {
-                                            if (testToRun == null) {
-                                                return true;
-                                            }
-                                            else {
-                                                return (testToRun + ".feature")
-                                                        .equals(fd.definition().name())
-                                                        || testToRun.equals(fd.feature().getName())
-                                                        || testToRun.equals(fd.definition().name());
-                                            }
-                                        }
-                                    });
+                            // A single test can't be spread over several workers
+                            if (parallel <= 1 || testToRun != null) {
+                                return createRunner(operations, source, token, disableConsoleLog,
+                                        indicator).execute(new FeatureFilter(testToRun,
+                                                Collections.emptyList(), new HashMap<>(), 0, 1));
+                            }
+                            return execute(operations, artifact, source, token,
+                                    disableConsoleLog, new SynchronizedProgressReporter(indicator),
+                                    parallel);
                         });
         TestReport report = new TestReport(result);
         log.newline();
@@ -118,6 +117,85 @@ public class TestCommand extends AbstractAnnotationBasedCommand {
         }
     }
 
+    /**
+     * Partition the feature files round-robin over several runners and merge their results back
+     * into the order of a sequential run. Each runner gets its own {@link JavaScriptContext} and,
+     * apart from the first one, its own copy of the rugs as script engines can't be shared between
+     * threads.
+     */
+    private ArchiveTestResult execute(Rugs operations, ArtifactDescriptor artifact,
+            ArtifactSource source, Optional<String> token, boolean disableConsoleLog,
+            ProgressReporter indicator, int workers) throws Exception {
+        List<String> features = JavaConverters.seqAsJavaListConverter(source.allFiles()).asJava()
+                .stream().filter(f -> f.name().endsWith(".feature")).map(FileArtifact::path)
+                .distinct().collect(Collectors.toList());
+        int runners = Math.max(1, Math.min(workers, features.size()));
+        Map<Feature, String> paths = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(runners);
+        try {
+            List<Future<ArchiveTestResult>> results = new ArrayList<>();
+            for (int i = 0; i < runners; i++) {
+                int worker = i;
+                results.add(executor.submit(() -> {
+                    Thread.currentThread().setContextClassLoader(classLoader);
+                    Rugs rugs = (worker == 0 ? operations : loadRugs(artifact, source));
+                    return createRunner(rugs, source, token, disableConsoleLog, indicator)
+                            .execute(new FeatureFilter(null, features, paths, worker, runners));
+                }));
+            }
+
+            List<FeatureResult> featureResults = new ArrayList<>();
+            for (Future<ArchiveTestResult> result : results) {
+                featureResults.addAll(JavaConverters
+                        .asJavaCollectionConverter(result.get().featureResults())
+                        .asJavaCollection());
+            }
+            sortInFeatureOrder(featureResults, fr -> paths.get(fr.feature()), features);
+            return new ArchiveTestResult(
+                    JavaConverters.asScalaBufferConverter(featureResults).asScala());
+        }
+        catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The worker running the feature file at the given path; files not known upfront go to the
+     * first worker.
+     */
+    static int worker(String path, List<String> features, int workers) {
+        return Math.max(features.indexOf(path), 0) % workers;
+    }
+
+    /**
+     * Sorts results by the position of their feature file in <code>features</code>, keeping
+     * results of unknown files at the end in the order they came in.
+     */
+    static <T> void sortInFeatureOrder(List<T> results, Function<T, String> path,
+            List<String> features) {
+        results.sort(Comparator.comparingInt(r -> {
+            int ix = features.indexOf(path.apply(r));
+            return (ix < 0 ? Integer.MAX_VALUE : ix);
+        }));
+    }
+
+    private GherkinRunner createRunner(Rugs operations, ArtifactSource source,
+            Optional<String> token, boolean disableConsoleLog, ProgressReporter indicator) {
+        List<GherkinExecutionListener> listeners = Collections
+                .singletonList(new LoggingGherkinExecutionListener(indicator));
+        return new GherkinRunner(
+                new JavaScriptContext(source, DefaultAtomistConfig$.MODULE$, new SimpleBindings(),
+                        ConsoleLogger.consoleLogger(!disableConsoleLog)),
+                Option.apply(operations),
+                JavaConverters.asScalaBufferConverter(listeners).asScala(),
+                new GherkinRunnerConfig(Option.apply(token.orElse(null))));
+    }
+
     private String resultName(AssertionResult result) {
         String name = ClassUtils.getShortName(result.result().getClass());
         if (name.endsWith(".")) {
@@ -166,6 +244,44 @@ public class TestCommand extends AbstractAnnotationBasedCommand {
         });
     }
 
+    /**
+     * Selects the features matching the requested test and, when running in parallel, the share
+     * of the feature files assigned to one worker. Records the file of every selected feature so
+     * that results can be put back in order.
+     */
+    private static class FeatureFilter extends AbstractFunction1<FeatureDefinition, Object> {
+
+        private final String testToRun;
+        private final List<String> features;
+        private final Map<Feature, String> paths;
+        private final int worker;
+        private final int workers;
+
+        public FeatureFilter(String testToRun, List<String> features, Map<Feature, String> paths,
+                int worker, int workers) {
+            this.testToRun = testToRun;
+            this.features = features;
+            this.paths = paths;
+            this.worker = worker;
+            this.workers = workers;
+        }
+
+        @Override
+        public Object apply(FeatureDefinition fd) {
+            if (workers > 1 && worker(fd.definition().path(), features, workers) != worker) {
+                return false;
+            }
+            boolean selected = testToRun == null
+                    || (testToRun + ".feature").equals(fd.definition().name())
+                    || testToRun.equals(fd.feature().getName())
+                    || testToRun.equals(fd.definition().name());
+            if (selected) {
+                paths.put(fd.feature(), fd.definition().path());
+            }
+            return selected;
+        }
+    }
+
     private static class LoggingGherkinExecutionListener implements GherkinExecutionListener {
 
         private final ProgressReporter reporter;
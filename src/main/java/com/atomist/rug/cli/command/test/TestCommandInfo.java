@@ -34,6 +34,9 @@ public class TestCommandInfo extends AbstractLocalArtifactDescriptorProvider {
         Options options = super.options();
         options.addOption(Option.builder().hasArg(false).desc("Disable console logging")
                 .longOpt("disable-console-log").optionalArg(true).build());
+        options.addOption(Option.builder().hasArg(true).argName("N")
+                .desc("Run test features in N parallel JavaScript contexts").longOpt("parallel")
+                .required(false).build());
         return options;
     }
 
@@ -0,0 +1,88 @@
+package com.atomist.rug.cli.command.utils;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+import com.atomist.source.ArtifactSource;
+
+/**
+ * Keeps the {@link ArtifactSource}s of archives from the local repository around for the
+ * lifetime of the class loader, ie. across all commands of a shell or daemon session. Archives
+ * are keyed by path, size and modification time so that a re-installed snapshot is read again.
+ * <p>
+ * The cache holds at most <code>archive_cache_size</code> archives, evicting the least recently
+ * used one; entries are only softly referenced and may be dropped earlier under memory pressure.
+ */
+public abstract class ArtifactSourceCache {
+
+    private static final String ARCHIVE_CACHE_SIZE_KEY = "archive_cache_size";
+    private static final int ARCHIVE_CACHE_SIZE = 64;
+
+    private static final int maxSize = SettingsReader.read()
+            .getConfigValue(ARCHIVE_CACHE_SIZE_KEY, ARCHIVE_CACHE_SIZE);
+
+    private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f,
+            true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static final AtomicInteger misses = new AtomicInteger();
+
+    public static ArtifactSource createArtifactSource(ArtifactDescriptor artifact) {
+        File archive = new File(artifact.uri());
+        if (artifact instanceof LocalArtifactDescriptor || !archive.isFile() || maxSize <= 0) {
+            return ArtifactSourceUtils.createArtifactSource(artifact);
+        }
+
+        String key = archive.getAbsolutePath() + ":" + archive.length() + ":"
+                + archive.lastModified();
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.computeIfAbsent(key, k -> new Entry());
+        }
+
+        // Concurrent requests for the same archive wait for the first one to read it
+        synchronized (entry) {
+            ArtifactSource source = (entry.source != null ? entry.source.get() : null);
+            if (source != null) {
+                hits.incrementAndGet();
+                return source;
+            }
+            misses.incrementAndGet();
+            source = ArtifactSourceUtils.createArtifactSource(artifact);
+            entry.source = new SoftReference<>(source);
+            return source;
+        }
+    }
+
+    public static int hits() {
+        return hits.get();
+    }
+
+    public static int misses() {
+        return misses.get();
+    }
+
+    public static void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private static class Entry {
+
+        private SoftReference<ArtifactSource> source;
+    }
+}
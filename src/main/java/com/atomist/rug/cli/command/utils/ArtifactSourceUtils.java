@@ -6,13 +6,31 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.IOUtils;
 
+import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.RunnerException;
 import com.atomist.rug.cli.command.CommandException;
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.utils.ChecksumUtils;
 import com.atomist.rug.resolver.ArtifactDescriptor;
 import com.atomist.source.Artifact;
 import com.atomist.source.ArtifactSource;
@@ -34,6 +52,9 @@ import scala.runtime.AbstractFunction1;
 
 public abstract class ArtifactSourceUtils {
 
+    private static final String ENABLE_ARCHIVE_EXTRACTION_KEY = "enable_archive_extraction";
+    private static final boolean ENABLE_ARCHIVE_EXTRACTION = true;
+
     public static ArtifactSource filterMetaInf(ArtifactSource source) {
         return source.filter(new AbstractFunction1<DirectoryArtifact, Object>() {
             @Override
@@ -97,15 +118,19 @@ public abstract class ArtifactSourceUtils {
         try {
             File archiveRoot = new File(artifact.uri());
             if (archiveRoot.isFile()) {
+                if (isArchiveExtractionEnabled()) {
+                    Optional<File> extractedRoot = extract(archiveRoot);
+                    if (extractedRoot.isPresent()) {
+                        return createArtifactSource(extractedRoot.get());
+                    }
+                }
                 return ZipFileArtifactSourceReader
                         .fromZipSource(new ZipFileInput(new FileInputStream(archiveRoot)));
             }
             else {
                 return new FileSystemArtifactSource(
                         new SimpleFileSystemArtifactSourceIdentifier(archiveRoot),
-                        Arrays.asList(new GitDirFilter(archiveRoot.getPath()),
-                                new AtomistIgnoreFileFilter(archiveRoot.getPath()),
-                                new TargetDirFilter(archiveRoot)));
+                        filters(archiveRoot));
             }
         }
         catch (FileNotFoundException e) {
@@ -116,6 +141,145 @@ public abstract class ArtifactSourceUtils {
         }
     }
 
+    /**
+     * Create an {@link ArtifactSource} of a local artifact that only contains the given files. All
+     * files are subject to the same filters as {@link #createArtifactSource(ArtifactDescriptor)}.
+     */
+    public static ArtifactSource createArtifactSource(ArtifactDescriptor artifact,
+            Collection<File> files) {
+        File archiveRoot = new File(artifact.uri());
+        List<ArtifactFilter> filters = new ArrayList<>(filters(archiveRoot));
+        filters.add(new IncludedFilesFilter(files));
+        try {
+            return new FileSystemArtifactSource(
+                    new SimpleFileSystemArtifactSourceIdentifier(archiveRoot), filters);
+        }
+        catch (ArtifactSourceException e) {
+            throw new RunnerException(e);
+        }
+    }
+
+    /**
+     * Fingerprint of the paths, sizes and modification times of all files of the given project
+     * that {@link #createArtifactSource(ArtifactDescriptor)} would read. It tells whether anything
+     * changed without reading a single file.
+     */
+    public static String fingerprint(File root) {
+        Path rootPath = root.getAbsoluteFile().toPath();
+        List<ArtifactFilter> filters = filters(rootPath.toFile());
+        List<String> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return (dir.equals(rootPath) || accept(filters, dir)
+                            ? FileVisitResult.CONTINUE
+                            : FileVisitResult.SKIP_SUBTREE);
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (accept(filters, file)) {
+                        files.add(rootPath.relativize(file) + ":" + attrs.size() + ":"
+                                + attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            // Changes will be picked up the next time the project can be read
+        }
+        Collections.sort(files);
+        return ChecksumUtils.sha256(String.join("\n", files));
+    }
+
+    private static boolean accept(List<ArtifactFilter> filters, Path path) {
+        return filters.stream().allMatch(f -> f.apply(path.toString()));
+    }
+
+    /**
+     * Extract the archive once into <code>~/.atomist/cache/archives</code>, keyed by the checksum
+     * of its content. Reading the extracted files through a {@link FileSystemArtifactSource} only
+     * loads the content of files that actually get looked at, instead of inflating every entry
+     * into memory on each run.
+     */
+    static Optional<File> extract(File archive) {
+        File cacheRoot = archiveCacheRoot();
+        File extractedRoot = new File(cacheRoot, ChecksumUtils.sha256(archive));
+        if (extractedRoot.isDirectory()) {
+            return Optional.of(extractedRoot);
+        }
+
+        File tempRoot = null;
+        try {
+            cacheRoot.mkdirs();
+            // Extractions become visible with a single rename once they are complete
+            tempRoot = Files.createTempDirectory(cacheRoot.toPath(), ".tmp-").toFile();
+            Path tempPath = tempRoot.toPath().toAbsolutePath().normalize();
+            try (ZipFile zip = new ZipFile(archive)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    Path target = tempPath.resolve(entry.getName()).normalize();
+                    if (!target.startsWith(tempPath)) {
+                        throw new IOException("Invalid entry " + entry.getName());
+                    }
+                    if (entry.isDirectory()) {
+                        Files.createDirectories(target);
+                    }
+                    else {
+                        Files.createDirectories(target.getParent());
+                        try (InputStream is = zip.getInputStream(entry)) {
+                            Files.copy(is, target);
+                        }
+                    }
+                }
+            }
+
+            // Another process might have been quicker; in that case just use its result
+            try {
+                Files.move(tempRoot.toPath(), extractedRoot.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                if (!extractedRoot.isDirectory()) {
+                    throw e;
+                }
+            }
+            return Optional.of(extractedRoot);
+        }
+        catch (IOException e) {
+            // Fall back to reading the archive into memory
+            return Optional.empty();
+        }
+        finally {
+            org.apache.commons.io.FileUtils.deleteQuietly(tempRoot);
+        }
+    }
+
+    static File archiveCacheRoot() {
+        return new File(org.apache.commons.io.FileUtils.getUserDirectory(), Constants.ATOMIST_ROOT
+                + File.separator + "cache" + File.separator + "archives");
+    }
+
+    private static boolean isArchiveExtractionEnabled() {
+        return SettingsReader.read().getConfigValue(ENABLE_ARCHIVE_EXTRACTION_KEY,
+                ENABLE_ARCHIVE_EXTRACTION);
+    }
+
+    private static List<ArtifactFilter> filters(File archiveRoot) {
+        return Arrays.asList(new GitDirFilter(archiveRoot.getPath()),
+                new AtomistIgnoreFileFilter(archiveRoot.getPath()),
+                new TargetDirFilter(archiveRoot));
+    }
+
     private static class TargetDirFilter implements ArtifactFilter {
 
         private String prefix;
@@ -130,4 +294,25 @@ public abstract class ArtifactSourceUtils {
         }
 
     }
+
+    private static class IncludedFilesFilter implements ArtifactFilter {
+
+        private Set<String> paths = new HashSet<>();
+
+        public IncludedFilesFilter(Collection<File> files) {
+            files.forEach(f -> {
+                paths.add(f.getAbsolutePath());
+                // Parent directories need to pass as well for the files to be visited
+                File parent = f.getParentFile();
+                while (parent != null && paths.add(parent.getAbsolutePath())) {
+                    parent = parent.getParentFile();
+                }
+            });
+        }
+
+        @Override
+        public boolean apply(String path) {
+            return paths.contains(path);
+        }
+    }
 }
@@ -0,0 +1,171 @@
+package com.atomist.rug.cli.command.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.atomist.rug.cli.utils.CacheUtils;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+import com.atomist.rug.compiler.typescript.TypeScriptCompiler;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * User-level store of TypeScript compilation output addressed by a hash of the source, its
+ * imports, the type declarations and the compiler version. Entries are shared between all
+ * projects and survive <code>clean</code> and <code>install</code>.
+ * <p>
+ * The cache is kept below its size limit by evicting the least recently used entries. An
+ * optional shared directory, eg. populated by a CI agent, is consulted read-only on a miss.
+ */
+public class CompilerCache {
+
+    // Bump when the layout of entries changes
+    private static final String FORMAT_VERSION = "1";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final File root;
+    private final File sharedRoot;
+    private final long maxSize;
+    private final String compilerVersion;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicBoolean written = new AtomicBoolean();
+
+    public CompilerCache(File root, File sharedRoot, long maxSize) {
+        this.root = root;
+        this.sharedRoot = sharedRoot;
+        this.maxSize = maxSize;
+        this.compilerVersion = compilerVersion();
+    }
+
+    public String key(String... parts) {
+        return ChecksumUtils.sha256(FORMAT_VERSION + ":" + compilerVersion + ":"
+                + String.join(":", parts));
+    }
+
+    public Optional<Map<String, String>> get(String key) {
+        File entry = entry(root, key);
+        Optional<Map<String, String>> outputs = read(entry);
+        if (outputs.isPresent()) {
+            // Last modification time is what the eviction orders by
+            entry.setLastModified(System.currentTimeMillis());
+        }
+        else if (sharedRoot != null) {
+            outputs = read(entry(sharedRoot, key));
+            if (outputs.isPresent()) {
+                put(key, outputs.get());
+            }
+        }
+
+        if (outputs.isPresent()) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+        return outputs;
+    }
+
+    public void put(String key, Map<String, String> outputs) {
+        if (outputs.isEmpty()) {
+            return;
+        }
+        File entry = entry(root, key);
+        try {
+            CacheUtils.writeJson(entry, outputs, mapper);
+            written.set(true);
+        }
+        catch (IOException e) {
+            // Next compilation will have to compile this file again
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is back to 90% of its limit. Only does
+     * work if something got added since the last call.
+     */
+    public void evict() {
+        if (!written.getAndSet(false) || maxSize <= 0 || !root.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            List<File> entries = paths.map(Path::toFile)
+                    .filter(f -> f.isFile() && f.getName().endsWith(".json"))
+                    .sorted(Comparator.comparingLong(File::lastModified))
+                    .collect(Collectors.toList());
+            long size = entries.stream().mapToLong(File::length).sum();
+            if (size <= maxSize) {
+                return;
+            }
+            long target = maxSize / 10 * 9;
+            for (File entry : entries) {
+                if (size <= target) {
+                    break;
+                }
+                long length = entry.length();
+                if (entry.delete()) {
+                    size -= length;
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // Try again after the next write
+        }
+    }
+
+    public int hits() {
+        return hits.get();
+    }
+
+    public int misses() {
+        return misses.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private Optional<Map<String, String>> read(File entry) {
+        if (!entry.exists()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional
+                    .of(mapper.readValue(entry, new TypeReference<Map<String, String>>() {
+                    }));
+        }
+        catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    static File entry(File root, String key) {
+        return new File(new File(root, key.substring(0, 2)), key + ".json");
+    }
+
+    private static String compilerVersion() {
+        try {
+            URL location = TypeScriptCompiler.class.getProtectionDomain().getCodeSource()
+                    .getLocation();
+            File file = new File(location.toURI());
+            return location + ":" + file.lastModified() + ":" + file.length();
+        }
+        catch (Exception e) {
+            return TypeScriptCompiler.class.getName();
+        }
+    }
+}
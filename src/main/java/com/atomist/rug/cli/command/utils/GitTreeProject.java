@@ -0,0 +1,263 @@
+package com.atomist.rug.cli.command.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ObjectStream;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.FS;
+
+import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.command.CommandException;
+import com.atomist.source.Artifact;
+import com.atomist.source.ArtifactSource;
+import com.atomist.source.ByteArrayFileArtifact;
+import com.atomist.source.Delta;
+import com.atomist.source.EmptyArtifactSource;
+import com.atomist.source.FileAdditionDelta;
+import com.atomist.source.FileArtifact;
+import com.atomist.source.FileDeletionDelta;
+import com.atomist.source.FileUpdateDelta;
+import com.atomist.source.StringFileArtifact;
+
+import scala.collection.JavaConverters;
+
+/**
+ * A project read from a commit of a local git repository straight out of its object database.
+ * Changes are committed by writing only the changed blobs and trees and moving a branch; neither
+ * the working tree nor the index are touched, so this works with bare repositories as well.
+ */
+public class GitTreeProject implements AutoCloseable {
+
+    private final Repository repository;
+    private final String branch;
+    private final RevCommit base;
+    private final Map<String, FileMode> modes = new HashMap<>();
+
+    private GitTreeProject(Repository repository, String branch, RevCommit base) {
+        this.repository = repository;
+        this.branch = branch;
+        this.base = base;
+    }
+
+    /**
+     * Opens the repository at the given root; root needs to be a bare repository or contain a
+     * <code>.git</code> directory. The branch is read if it exists already; otherwise the project is
+     * read from <code>HEAD</code> and the branch created on commit.
+     */
+    public static GitTreeProject open(File root, String branch) {
+        // Don't search upwards; that would commit to an enclosing repository
+        File gitDir = RepositoryCache.FileKey.resolve(root, FS.DETECTED);
+        if (gitDir == null) {
+            throw new CommandException(String.format(
+                    "No git repository found at %s.\nPlease point --change-dir to the root of a git repository.",
+                    root.getAbsolutePath()), "edit");
+        }
+        Repository repository = null;
+        try {
+            repository = new FileRepositoryBuilder().setGitDir(gitDir).setMustExist(true)
+                    .build();
+            if (!repository.isBare() && ref(branch).equals(repository.getFullBranch())) {
+                throw new CommandException(String.format(
+                        "Branch %s is checked out at %s.\nPlease provide a branch to --branch that is not checked out.",
+                        branch, root.getAbsolutePath()), "edit");
+            }
+            ObjectId head = repository.resolve(ref(branch));
+            if (head == null) {
+                head = repository.resolve(org.eclipse.jgit.lib.Constants.HEAD);
+            }
+            if (head == null) {
+                throw new CommandException(String.format(
+                        "Git repository at %s has no commits.\nPlease commit to the repository before running this command.",
+                        root.getAbsolutePath()), "edit");
+            }
+            try (RevWalk walk = new RevWalk(repository)) {
+                GitTreeProject project = new GitTreeProject(repository, branch,
+                        walk.parseCommit(head));
+                repository = null;
+                return project;
+            }
+        }
+        catch (IOException e) {
+            throw new CommandException(String.format("No git repository found at %s: %s",
+                    root.getAbsolutePath(), e.getMessage()), "edit");
+        }
+        finally {
+            // Only stays open when handed to the project
+            if (repository != null) {
+                repository.close();
+            }
+        }
+    }
+
+    public static boolean isValidBranchName(String branch) {
+        return Repository.isValidRefName(ref(branch));
+    }
+
+    public ArtifactSource source() {
+        List<Artifact> files = new ArrayList<>();
+        try (ObjectReader reader = repository.newObjectReader();
+                TreeWalk walk = new TreeWalk(reader)) {
+            walk.addTree(base.getTree());
+            walk.setRecursive(true);
+            while (walk.next()) {
+                FileMode mode = walk.getFileMode(0);
+                modes.put(walk.getPathString(), mode);
+                if (mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE) {
+                    continue;
+                }
+                ObjectLoader loader = reader.open(walk.getObjectId(0),
+                        org.eclipse.jgit.lib.Constants.OBJ_BLOB);
+                byte[] bytes = bytes(loader);
+                String path = walk.getPathString();
+                int ix = path.lastIndexOf('/');
+                String name = path.substring(ix + 1);
+                String parent = (ix < 0 ? "" : path.substring(0, ix));
+                if (RawText.isBinary(bytes)) {
+                    files.add(new ByteArrayFileArtifact(name, parent, bytes));
+                }
+                else {
+                    files.add(StringFileArtifact.apply(name, parent,
+                            new String(bytes, StandardCharsets.UTF_8)));
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RunnerException(e);
+        }
+        return new EmptyArtifactSource(repository.getDirectory().getName())
+                .plus(JavaConverters.asScalaBufferConverter(files).asScala());
+    }
+
+    /**
+     * Writes the given changes on top of the commit the project was read from and moves the branch
+     * to the new commit. Like {@link GitUtils#commitFiles}, the commit is authored by Atomist and
+     * committed by the user configured for the repository.
+     */
+    public ObjectId commit(Collection<Delta> deltas, String message) {
+        Set<String> removed = new HashSet<>();
+        Map<String, FileArtifact> written = new HashMap<>();
+        deltas.forEach(d -> {
+            if (d instanceof FileAdditionDelta) {
+                FileArtifact file = ((FileAdditionDelta) d).newFile();
+                written.put(file.path(), file);
+            }
+            else if (d instanceof FileUpdateDelta) {
+                FileUpdateDelta delta = (FileUpdateDelta) d;
+                removed.add(delta.oldFile().path());
+                removed.remove(delta.updatedFile().path());
+                written.put(delta.updatedFile().path(), delta.updatedFile());
+            }
+            else if (d instanceof FileDeletionDelta) {
+                removed.add(d.path());
+                written.remove(d.path());
+            }
+        });
+
+        try (ObjectInserter inserter = repository.newObjectInserter();
+                TreeWalk walk = new TreeWalk(repository)) {
+            DirCache index = DirCache.newInCore();
+            DirCacheBuilder builder = index.builder();
+
+            // Unchanged entries keep pointing to the existing blobs
+            walk.addTree(base.getTree());
+            walk.setRecursive(true);
+            while (walk.next()) {
+                String path = walk.getPathString();
+                if (!removed.contains(path) && !written.containsKey(path)) {
+                    DirCacheEntry entry = new DirCacheEntry(path);
+                    entry.setFileMode(walk.getFileMode(0));
+                    entry.setObjectId(walk.getObjectId(0));
+                    builder.add(entry);
+                }
+            }
+            for (FileArtifact file : written.values()) {
+                DirCacheEntry entry = new DirCacheEntry(file.path());
+                entry.setFileMode(modes.getOrDefault(file.path(), FileMode.REGULAR_FILE));
+                entry.setObjectId(inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB,
+                        bytes(file)));
+                builder.add(entry);
+            }
+            builder.finish();
+
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(index.writeTree(inserter));
+            commit.setParentId(base);
+            commit.setAuthor(new PersonIdent(GitUtils.AUTHOR_NAME, GitUtils.AUTHOR_EMAIL));
+            commit.setCommitter(new PersonIdent(repository));
+            commit.setMessage(message);
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            RefUpdate update = repository.updateRef(ref(branch));
+            update.setNewObjectId(commitId);
+            update.setExpectedOldObjectId(
+                    repository.resolve(ref(branch)) != null ? base : ObjectId.zeroId());
+            update.setRefLogMessage("commit: " + message.split("\n")[0], false);
+            RefUpdate.Result result = update.update();
+            if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+                throw new CommandException(
+                        String.format("Failed to update branch %s: %s", branch, result), "edit");
+            }
+            return commitId;
+        }
+        catch (IOException e) {
+            throw new RunnerException(e);
+        }
+    }
+
+    public String branch() {
+        return branch;
+    }
+
+    @Override
+    public void close() {
+        repository.close();
+    }
+
+    private static byte[] bytes(ObjectLoader loader) throws IOException {
+        if (!loader.isLarge()) {
+            return loader.getCachedBytes();
+        }
+        try (ObjectStream stream = loader.openStream()) {
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    private static byte[] bytes(FileArtifact file) {
+        if (file instanceof ByteArrayFileArtifact) {
+            return ((ByteArrayFileArtifact) file).bytes();
+        }
+        return file.content().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String ref(String branch) {
+        return org.eclipse.jgit.lib.Constants.R_HEADS + branch;
+    }
+}
@@ -24,6 +24,9 @@ import com.atomist.rug.resolver.project.ProvenanceInfoWriter;
 
 public abstract class GitUtils {
 
+    static final String AUTHOR_NAME = "Atomist";
+    static final String AUTHOR_EMAIL = "cli@atomist.com";
+
     private static Log log = new Log(GitUtils.class);
 
     public static void initializeRepoAndCommitFiles(ProjectGenerator generator,
@@ -34,7 +37,7 @@ public abstract class GitUtils {
             RevCommit commit = git.commit().setAll(true).setMessage(String.format("%s\n\n```%s```",
                     StringUtils.capitalize(generator.description()), new ProvenanceInfoWriter()
                             .write(generator, arguments, Constants.cliClient(), resolver)))
-                    .setAuthor("Atomist", "cli@atomist.com").call();
+                    .setAuthor(AUTHOR_NAME, AUTHOR_EMAIL).call();
             log.info("Committed initial set of files to git repository (%s)",
                     commit.abbreviate(7).name());
         }
@@ -52,11 +55,8 @@ public abstract class GitUtils {
                 log.info("Committing to git repository at " + git.getRepository().getDirectory());
                 git.add().addFilepattern(".").call();
                 RevCommit commit = git.commit().setAll(true)
-                        .setMessage(String.format("%s\n\n```\n%s```",
-                                StringUtils.capitalize(operation.description()),
-                                new ProvenanceInfoWriter().write(operation, arguments,
-                                        Constants.cliClient(), resolver)))
-                        .setAuthor("Atomist", "cli@atomist.com").call();
+                        .setMessage(commitMessage(operation, arguments, resolver))
+                        .setAuthor(AUTHOR_NAME, AUTHOR_EMAIL).call();
                 log.info("Committed changes to git repository (%s)", commit.abbreviate(7).name());
             }
         }
@@ -65,6 +65,13 @@ public abstract class GitUtils {
         }
     }
 
+    static String commitMessage(ProjectOperation operation, ParameterValues arguments,
+            RugResolver resolver) {
+        return String.format("%s\n\n```\n%s```", StringUtils.capitalize(operation.description()),
+                new ProvenanceInfoWriter().write(operation, arguments, Constants.cliClient(),
+                        resolver));
+    }
+
     public static void isClean(File root, String command) {
         FileRepositoryBuilder builder = new FileRepositoryBuilder();
         builder.findGitDir(root).readEnvironment();
@@ -0,0 +1,419 @@
+package com.atomist.rug.cli.command.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+import com.atomist.rug.compiler.typescript.TypeScriptCompiler;
+import com.atomist.source.Artifact;
+import com.atomist.source.ArtifactSource;
+import com.atomist.source.DirectoryArtifact;
+import com.atomist.source.FileArtifact;
+import com.atomist.source.StringFileArtifact;
+
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.runtime.AbstractFunction1;
+
+/**
+ * Compiles only those TypeScript files whose content or the content of one of their (transitive)
+ * relative imports changed since the last compilation and reuses the previous output for all
+ * other files. Output of the last compilation of a project is kept in memory, so this pays off
+ * most in the shell and daemon; across processes the {@link CompilerCache} takes over.
+ * <p>
+ * Changed files are fanned out over a pool of {@link TypeScriptCompiler}s each running in their
+ * own script engine. Every engine gets a source that only contains its files and their imports.
+ * Files that are new to this project are looked up in the user-level {@link CompilerCache} before
+ * they get compiled.
+ */
+public class IncrementalTypeScriptCompiler {
+
+    // Relative module specifiers of import/export ... from, side-effect imports as well as
+    // require and dynamic import calls
+    private static final String SPECIFIER = "['\"](\\.{1,2}(?:/[^'\"]*)?)['\"]";
+    private static final Pattern IMPORT_PATTERN = Pattern.compile(
+            "\\b(?:import|export)\\b[^'\";]*?\\bfrom\\s*" + SPECIFIER
+                    + "|\\bimport\\s*" + SPECIFIER
+                    + "|\\b(?:require|import)\\s*\\(\\s*" + SPECIFIER + "\\s*\\)");
+
+    // Spinning up another script engine only pays off for a decent amount of work
+    private static final int FILES_PER_ENGINE = 10;
+
+    private final List<TypeScriptCompiler> engines = new ArrayList<>();
+    private final Supplier<TypeScriptCompiler> engineFactory;
+    private final int threads;
+    private final CompilerCache cache;
+    private final Map<String, CompilationState> states = new HashMap<>();
+
+    public IncrementalTypeScriptCompiler(TypeScriptCompiler compiler,
+            Supplier<TypeScriptCompiler> engineFactory, int threads, CompilerCache cache) {
+        this.engines.add(compiler);
+        this.engineFactory = engineFactory;
+        this.threads = Math.max(1, threads);
+        this.cache = cache;
+    }
+
+    /**
+     * Compiles the given source of a project; <code>project</code> identifies the project between
+     * compilations.
+     */
+    public ArtifactSource compile(ArtifactSource source, String project) {
+        Map<String, FileArtifact> files = sourceFiles(source);
+        Map<String, Set<String>> imports = files.values().stream().collect(Collectors
+                .toMap(Artifact::path, f -> imports(f.path(), f.content(), files.keySet())));
+
+        String global = globalHash(source);
+        Map<String, String> hashes = hashes(files.values().stream().collect(
+                Collectors.toMap(Artifact::path, f -> ChecksumUtils.sha256(f.content()))),
+                imports);
+
+        CompilationState previous = states.getOrDefault(project, new CompilationState());
+        CompilationState next = new CompilationState();
+        next.global = global;
+
+        String shared = (cache != null ? sharedHash(source) : null);
+        if (cache != null) {
+            cache.resetStatistics();
+        }
+
+        List<String> dirty = new ArrayList<>();
+        files.keySet().forEach(p -> {
+            CompiledFile compiled = previous.files.get(p);
+            if (global.equals(previous.global) && compiled != null
+                    && compiled.hash.equals(hashes.get(p))) {
+                next.files.put(p, compiled);
+                return;
+            }
+
+            Optional<Map<String, String>> outputs = (cache != null
+                    ? cache.get(cache.key(shared, p, hashes.get(p)))
+                    : Optional.empty());
+            if (outputs.isPresent()) {
+                CompiledFile cached = new CompiledFile();
+                cached.hash = hashes.get(p);
+                cached.outputs.putAll(outputs.get());
+                next.files.put(p, cached);
+            }
+            else {
+                dirty.add(p);
+            }
+        });
+
+        if (!dirty.isEmpty()) {
+            Map<String, CompiledFile> compiled = compileDirty(source, dirty, files, imports,
+                    hashes);
+            next.files.putAll(compiled);
+            if (cache != null) {
+                compiled.forEach((p, c) -> cache.put(cache.key(shared, p, c.hash), c.outputs));
+                cache.evict();
+            }
+        }
+
+        ArtifactSource compiledSource = source;
+        for (CompiledFile compiled : next.files.values()) {
+            for (Map.Entry<String, String> output : compiled.outputs.entrySet()) {
+                compiledSource = compiledSource
+                        .plus(StringFileArtifact.apply(output.getKey(), output.getValue()));
+            }
+        }
+
+        // Don't remember files that didn't produce any output so that they get another chance
+        next.files.values().removeIf(c -> c.outputs.isEmpty());
+        states.put(project, next);
+        return compiledSource;
+    }
+
+    private Map<String, CompiledFile> compileDirty(ArtifactSource source, List<String> dirty,
+            Map<String, FileArtifact> files, Map<String, Set<String>> imports,
+            Map<String, String> hashes) {
+        // Biggest import closures first so that the buckets end up roughly balanced
+        Map<String, Set<String>> closures = dirty.stream()
+                .collect(Collectors.toMap(p -> p, p -> closure(p, imports)));
+        List<String> sorted = new ArrayList<>(dirty);
+        sorted.sort(Comparator.comparing((String p) -> closures.get(p).size()).reversed()
+                .thenComparing(p -> p));
+
+        int buckets = Math.min(threads, (dirty.size() + FILES_PER_ENGINE - 1) / FILES_PER_ENGINE);
+        List<List<String>> work = new ArrayList<>();
+        for (int i = 0; i < buckets; i++) {
+            work.add(new ArrayList<>());
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            work.get(i % buckets).add(sorted.get(i));
+        }
+
+        while (engines.size() < buckets) {
+            engines.add(engineFactory.get());
+        }
+
+        Map<String, CompiledFile> compiled = new HashMap<>();
+        if (buckets == 1) {
+            compiled.putAll(compileBucket(engines.get(0), source, work.get(0), closures, hashes));
+            return compiled;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(buckets);
+        try {
+            List<Future<Map<String, CompiledFile>>> results = new ArrayList<>();
+            for (int i = 0; i < buckets; i++) {
+                TypeScriptCompiler engine = engines.get(i);
+                List<String> bucket = work.get(i);
+                results.add(executor
+                        .submit(() -> compileBucket(engine, source, bucket, closures, hashes)));
+            }
+            for (Future<Map<String, CompiledFile>> result : results) {
+                compiled.putAll(result.get());
+            }
+            return compiled;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RunnerException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RunnerException(e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, CompiledFile> compileBucket(TypeScriptCompiler engine,
+            ArtifactSource source, List<String> bucket, Map<String, Set<String>> closures,
+            Map<String, String> hashes) {
+        Set<String> include = new HashSet<>();
+        bucket.forEach(p -> include.addAll(closures.get(p)));
+
+        ArtifactSource compiledSource = engine.compile(source.filter(
+                new AbstractFunction1<DirectoryArtifact, Object>() {
+                    @Override
+                    public Object apply(DirectoryArtifact d) {
+                        return true;
+                    }
+                }, new AbstractFunction1<FileArtifact, Object>() {
+                    @Override
+                    public Object apply(FileArtifact f) {
+                        return !isSourceFile(f.path()) || include.contains(f.path());
+                    }
+                }));
+
+        Map<String, CompiledFile> compiled = new HashMap<>();
+        bucket.forEach(p -> {
+            CompiledFile file = new CompiledFile();
+            file.hash = hashes.get(p);
+            String js = p.substring(0, p.length() - 3) + ".js";
+            for (String output : new String[] { js, js + ".map" }) {
+                Option<FileArtifact> artifact = compiledSource.findFile(output);
+                if (artifact.isDefined()) {
+                    file.outputs.put(output, artifact.get().content());
+                }
+            }
+            compiled.put(p, file);
+        });
+        return compiled;
+    }
+
+    private static Map<String, FileArtifact> sourceFiles(ArtifactSource source) {
+        return JavaConverters.seqAsJavaListConverter(source.allFiles()).asJava().stream()
+                .filter(f -> isSourceFile(f.path()))
+                .collect(Collectors.toMap(Artifact::path, f -> f));
+    }
+
+    private static boolean isSourceFile(String path) {
+        return path.endsWith(".ts") && !path.endsWith(".d.ts") && !path.contains("node_modules/");
+    }
+
+    /**
+     * Hash of everything that isn't a source file but influences compilation output: compiler and
+     * package configuration as well as type declarations.
+     */
+    private static String globalHash(ArtifactSource source) {
+        StringBuilder global = new StringBuilder();
+        JavaConverters.seqAsJavaListConverter(source.allFiles()).asJava().stream()
+                .filter(f -> f.path().endsWith(".d.ts") || f.name().equals("package.json")
+                        || f.name().equals("tsconfig.json"))
+                .sorted(Comparator.comparing(Artifact::path)).forEach(f -> global.append(f.path())
+                        .append(":").append(ChecksumUtils.sha256(f.content())).append("\n"));
+        return ChecksumUtils.sha256(global.toString());
+    }
+
+    /**
+     * Like {@link #globalHash(ArtifactSource)} but without the project's own package.json so
+     * that projects with the same dependencies share compilation output.
+     */
+    private static String sharedHash(ArtifactSource source) {
+        StringBuilder shared = new StringBuilder();
+        JavaConverters.seqAsJavaListConverter(source.allFiles()).asJava().stream()
+                .filter(f -> f.path().endsWith(".d.ts") || f.name().equals("tsconfig.json")
+                        || (f.name().equals("package.json") && f.path().contains("node_modules/")))
+                .sorted(Comparator.comparing(Artifact::path)).forEach(f -> shared.append(f.path())
+                        .append(":").append(ChecksumUtils.sha256(f.content())).append("\n"));
+        return ChecksumUtils.sha256(shared.toString());
+    }
+
+    /**
+     * The files among <code>paths</code> the file at <code>path</code> imports relatively.
+     */
+    static Set<String> imports(String path, String content, Set<String> paths) {
+        Set<String> imports = new HashSet<>();
+        String dir = FilenameUtils.getPath(path);
+        Matcher matcher = IMPORT_PATTERN.matcher(content);
+        while (matcher.find()) {
+            String spec = matcher.group(1);
+            for (int i = 2; spec == null; i++) {
+                spec = matcher.group(i);
+            }
+            String module = FilenameUtils.normalizeNoEndSeparator(dir + spec, true);
+            if (module == null) {
+                continue;
+            }
+            // import "./a.js" refers to a.ts
+            String stripped = (module.endsWith(".js") ? module.substring(0, module.length() - 3)
+                    : module);
+            for (String candidate : new String[] { module, module + ".ts", stripped + ".ts",
+                    module + "/index.ts" }) {
+                if (paths.contains(candidate)) {
+                    imports.add(candidate);
+                    break;
+                }
+            }
+        }
+        return imports;
+    }
+
+    /**
+     * Hashes every file together with everything it imports, directly or transitively. Files
+     * importing each other form a cycle in which every file depends on all others; so each
+     * strongly connected component of the import graph is hashed as a unit and all of its files
+     * get the hash of the component.
+     */
+    static Map<String, String> hashes(Map<String, String> contentHashes,
+            Map<String, Set<String>> imports) {
+        return new ImportGraph(contentHashes, imports).hashes();
+    }
+
+    private static Set<String> closure(String path, Map<String, Set<String>> imports) {
+        Set<String> closure = new HashSet<>();
+        LinkedList<String> queue = new LinkedList<>();
+        queue.add(path);
+        while (!queue.isEmpty()) {
+            String next = queue.removeFirst();
+            if (closure.add(next)) {
+                queue.addAll(imports.get(next));
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Finds the strongly connected components of the import graph with Tarjan's algorithm, which
+     * completes a component only after all components it imports; their hashes are known by
+     * then.
+     */
+    private static class ImportGraph {
+
+        private final Map<String, String> contentHashes;
+        private final Map<String, Set<String>> imports;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Map<String, Integer> lowLink = new HashMap<>();
+        private final Deque<String> stack = new ArrayDeque<>();
+        private final Set<String> onStack = new HashSet<>();
+        private final Map<String, String> hashes = new HashMap<>();
+
+        public ImportGraph(Map<String, String> contentHashes, Map<String, Set<String>> imports) {
+            this.contentHashes = contentHashes;
+            this.imports = imports;
+        }
+
+        public Map<String, String> hashes() {
+            contentHashes.keySet().stream().sorted().filter(p -> !index.containsKey(p))
+                    .forEach(this::visit);
+            return hashes;
+        }
+
+        private void visit(String path) {
+            int ix = index.size();
+            index.put(path, ix);
+            lowLink.put(path, ix);
+            stack.push(path);
+            onStack.add(path);
+
+            for (String i : imports(path)) {
+                if (!index.containsKey(i)) {
+                    visit(i);
+                    lowLink.put(path, Math.min(lowLink.get(path), lowLink.get(i)));
+                }
+                else if (onStack.contains(i)) {
+                    lowLink.put(path, Math.min(lowLink.get(path), index.get(i)));
+                }
+            }
+
+            if (lowLink.get(path) == ix) {
+                Set<String> component = new TreeSet<>();
+                String member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                }
+                while (!member.equals(path));
+                hash(component);
+            }
+        }
+
+        private void hash(Set<String> component) {
+            StringBuilder hash = new StringBuilder();
+            Set<String> external = new TreeSet<>();
+            component.forEach(p -> {
+                hash.append(p).append(":").append(contentHashes.get(p)).append("\n");
+                imports(p).stream().filter(i -> !component.contains(i)).forEach(external::add);
+            });
+            external.forEach(i -> hash.append(i).append(":").append(hashes.get(i)).append("\n"));
+            String result = ChecksumUtils.sha256(hash.toString());
+            component.forEach(p -> hashes.put(p, result));
+        }
+
+        private Set<String> imports(String path) {
+            return imports.getOrDefault(path, Collections.emptySet());
+        }
+    }
+
+    private static class CompilationState {
+
+        private String global;
+
+        private Map<String, CompiledFile> files = new HashMap<>();
+    }
+
+    private static class CompiledFile {
+
+        private String hash;
+
+        private Map<String, String> outputs = new HashMap<>();
+    }
+}
@@ -9,6 +9,7 @@ import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.Log;
 import com.atomist.rug.cli.command.CommandException;
 import com.atomist.rug.cli.output.ProgressReporter;
+import com.atomist.rug.cli.output.ProgressReporterUtils;
 import com.atomist.rug.cli.output.ProgressReportingOperationRunner;
 import com.atomist.rug.cli.output.Style;
 import com.atomist.rug.cli.settings.Settings;
@@ -18,6 +19,7 @@ import com.atomist.rug.cli.tree.LogVisitor;
 import com.atomist.rug.cli.utils.ArtifactDescriptorUtils;
 import com.atomist.rug.cli.utils.FileUtils;
 import com.atomist.rug.cli.utils.StringUtils;
+import com.atomist.rug.cli.utils.Timing;
 import com.atomist.rug.kind.DefaultTypeRegistry$;
 import com.atomist.rug.kind.core.ChangeLogEntry;
 import com.atomist.rug.kind.core.ProjectContext;
@@ -38,14 +40,22 @@ import com.atomist.tree.IdentityTreeMaterializer$;
 import com.atomist.tree.TreeMaterializer;
 import com.atomist.tree.pathexpression.PathExpressionEngine;
 import difflib.DiffUtils;
+import org.eclipse.jgit.lib.ObjectId;
 import scala.Option;
 import scala.collection.JavaConverters;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static scala.collection.JavaConversions.asJavaCollection;
@@ -57,6 +67,9 @@ public class LocalGitProjectManagement implements ProjectManagement {
 
     private static final Log log = new Log(LocalGitProjectManagement.class);
 
+    private static final String EDIT_THREADS_KEY = "edit_threads";
+    private static final int EDIT_THREADS = 1;
+
     private final String rootPath;
     private final boolean createRepo;
     private final boolean overwrite;
@@ -64,10 +77,22 @@ public class LocalGitProjectManagement implements ProjectManagement {
     private final boolean commit;
     private final boolean dryRun;
     private final RugResolver resolver;
+    private final String branch;
 
     public LocalGitProjectManagement(ArtifactDescriptor artifact, String rootPath,
                                      boolean createRepo, boolean overwrite, boolean commit, boolean dryRun,
                                      RugResolver resolver) {
+        this(artifact, rootPath, createRepo, overwrite, commit, dryRun, resolver, null);
+    }
+
+    /**
+     * With a branch given, projects are edited straight in their git object database and the
+     * changes committed to that branch; see {@link GitTreeProject}.
+     */
+    public LocalGitProjectManagement(ArtifactDescriptor artifact, String rootPath,
+                                     boolean createRepo, boolean overwrite, boolean commit, boolean dryRun,
+                                     RugResolver resolver, String branch) {
+        this.branch = branch;
         this.artifact = artifact;
         this.rootPath = rootPath;
         this.createRepo = createRepo;
@@ -139,6 +164,10 @@ public class LocalGitProjectManagement implements ProjectManagement {
                                     String projectName, Option<Handlers.EditorTarget> target) {
         File root = FileUtils.createProjectRoot(projectName);
 
+        if (branch != null) {
+            return editBranch(editor, arguments, root);
+        }
+
         if (commit) {
             GitUtils.isClean(root, "edit");
         }
@@ -200,6 +229,262 @@ public class LocalGitProjectManagement implements ProjectManagement {
         return result;
     }
 
+    /**
+     * Run the editor against all given project roots and print a summary of the outcome per
+     * project. With <code>edit_threads</code> above 1 projects get edited concurrently; as script
+     * engines are not thread-safe, every thread beyond the first runs its own copy of the editor
+     * obtained from <code>editors</code>.
+     */
+    public void editAll(ProjectEditor editor, Supplier<ProjectEditor> editors,
+                        ParameterValues arguments, List<File> roots) {
+        int threads = Math.max(1, SettingsReader.read().getConfigValue(EDIT_THREADS_KEY,
+                EDIT_THREADS));
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        Queue<ProjectEditor> idle = new ConcurrentLinkedQueue<>();
+        idle.add(editor);
+
+        List<EditResult> results = new ProgressReportingOperationRunner<List<EditResult>>(
+                String.format("Running editor %s of %s on %s projects",
+                        StringUtils.stripName(editor.name(), artifact),
+                        ArtifactDescriptorUtils.coordinates(artifact), roots.size()))
+                .run(indicator -> {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads,
+                    roots.size()));
+            try {
+                List<Future<EditResult>> futures = roots.stream()
+                        .map(r -> executor.submit(() -> {
+                            // Pool threads don't necessarily inherit the rug classloader
+                            Thread.currentThread().setContextClassLoader(classLoader);
+                            EditResult result = editProject(idle, editors, arguments, r);
+                            ProgressReporterUtils.detail(r.getName());
+                            return result;
+                        })).collect(Collectors.toList());
+                List<EditResult> rs = new ArrayList<>();
+                for (Future<EditResult> future : futures) {
+                    rs.add(future.get());
+                }
+                return rs;
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+
+        results.stream().filter(r -> r.deltas != null).forEach(r -> {
+            log.newline();
+            log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("Changes") + " ("
+                    + FileUtils.relativize(r.root) + ")");
+            if (dryRun) {
+                iterateDeltas(r.deltas, r.source, r.resultSource, r.root, true);
+            } else {
+                Delta lastDelta = r.deltas.stream().reduce((d1, d2) -> d2).orElse(null);
+                r.deltas.forEach(d -> logOperation(operation(d), oldPath(d), newPath(d),
+                        (d instanceof FileDeletionDelta ? null : r.root), d.equals(lastDelta)));
+            }
+        });
+
+        log.newline();
+        log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("Projects"));
+        int width = results.stream().mapToInt(r -> FileUtils.relativize(r.root).length()).max()
+                .orElse(0);
+        results.forEach(r -> {
+            String name = org.apache.commons.lang3.StringUtils
+                    .rightPad(FileUtils.relativize(r.root), width);
+            String duration = String.format("%.2fs", r.duration);
+            switch (r.status) {
+                case CHANGED:
+                    log.info("  %s  %s  %s  %s files", Style.underline(name),
+                            Style.green("changed  "), duration, r.deltas.size());
+                    break;
+                case UNCHANGED:
+                    log.info("  %s  %s  %s", Style.underline(name), Style.yellow("unchanged"),
+                            duration);
+                    break;
+                default:
+                    log.info("  %s  %s  %s  %s", Style.underline(name), Style.red("failed   "),
+                            duration, r.message);
+            }
+        });
+
+        long changed = results.stream().filter(r -> r.status == EditStatus.CHANGED).count();
+        long unchanged = results.stream().filter(r -> r.status == EditStatus.UNCHANGED).count();
+        long failed = results.stream().filter(r -> r.status == EditStatus.FAILED).count();
+        log.newline();
+        if (failed > 0) {
+            throw new CommandException(String.format(
+                    "Editor failed on %s of %s projects (%s changed, %s unchanged)", failed,
+                    results.size(), changed, unchanged), "edit");
+        }
+        log.info(Style.green("Successfully edited %s projects (%s changed, %s unchanged)",
+                results.size(), changed, unchanged));
+    }
+
+    /**
+     * Run the editor against the tree of the branch, or <code>HEAD</code>, of the repository at
+     * root without checking anything out. Changes are committed to the branch when requested;
+     * otherwise they are only listed.
+     */
+    private ModificationAttempt editBranch(ProjectEditor editor, ParameterValues arguments,
+                                           File root) {
+        try (GitTreeProject project = GitTreeProject.open(root, branch)) {
+            ArtifactSource source = project.source();
+
+            ModificationAttempt result = new ProgressReportingOperationRunner<ModificationAttempt>(
+                    String.format("Running editor %s of %s",
+                            StringUtils.stripName(editor.name(), artifact),
+                            ArtifactDescriptorUtils.coordinates(artifact))).run(indicator -> {
+                ModificationAttempt r = editor.modify(source, arguments);
+
+                printLogEntries(indicator, r);
+
+                return r;
+            });
+
+            log.newline();
+            log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("Project"));
+            log.info("  %s (branch %s)", Style.underline(FileUtils.relativize(root)), branch);
+
+            if (result instanceof SuccessfulModification) {
+                ArtifactSource resultSource = new ProvenanceInfoWriter().write(
+                        ((SuccessfulModification) result).result(), editor, arguments,
+                        Constants.cliClient(), resolver);
+                List<Delta> deltas = asJavaCollection(resultSource.cachedDeltas()).stream()
+                        .collect(Collectors.toList());
+
+                log.newline();
+                log.info(Style.cyan(Constants.DIVIDER) + " " + Style.bold("Changes"));
+                if (dryRun) {
+                    iterateDeltas(deltas, source, resultSource, root, true);
+                } else {
+                    Delta lastDelta = deltas.stream().reduce((d1, d2) -> d2).orElse(null);
+                    deltas.forEach(d -> logOperation(operation(d), oldPath(d), newPath(d), null,
+                            d.equals(lastDelta)));
+                    log.newline();
+                    if (commit) {
+                        ObjectId commitId = project.commit(deltas,
+                                GitUtils.commitMessage(editor, arguments, resolver));
+                        log.info("Committed changes to branch %s (%s)", branch,
+                                commitId.abbreviate(7).name());
+                    } else {
+                        log.info(Style.yellow(
+                                "Changes not committed; use --repo to commit them to branch %s",
+                                branch));
+                    }
+                }
+
+                log.newline();
+                log.info(Style.green("Successfully edited project %s", root.getName()));
+            } else if (result instanceof NoModificationNeeded) {
+                log.newline();
+                log.info(Style.yellow("Editor made no changes to project %s", root.getName()));
+            } else if (result instanceof FailedModificationAttempt) {
+                log.newline();
+                throw new CommandException(String.format(
+                        "Editor failed to make changes to project %s:\n  %s", root.getName(),
+                        ((FailedModificationAttempt) result).failureExplanation()));
+            }
+            return result;
+        }
+    }
+
+    private static String operation(Delta delta) {
+        if (delta instanceof FileAdditionDelta) {
+            return "created";
+        } else if (delta instanceof FileUpdateDelta) {
+            return "updated";
+        }
+        return "deleted";
+    }
+
+    private static String oldPath(Delta delta) {
+        if (delta instanceof FileUpdateDelta) {
+            return ((FileUpdateDelta) delta).oldFile().path();
+        } else if (delta instanceof FileDeletionDelta) {
+            return delta.path();
+        }
+        return null;
+    }
+
+    private static String newPath(Delta delta) {
+        if (delta instanceof FileAdditionDelta) {
+            return ((FileAdditionDelta) delta).newFile().path();
+        } else if (delta instanceof FileUpdateDelta) {
+            return ((FileUpdateDelta) delta).updatedFile().path();
+        }
+        return null;
+    }
+
+    /**
+     * Edit the project at root with an idle editor, or a new one if all are in use by other
+     * threads. The editor is returned to the idle ones afterwards.
+     */
+    private EditResult editProject(Queue<ProjectEditor> idle, Supplier<ProjectEditor> editors,
+                                   ParameterValues arguments, File root) {
+        Timing timing = new Timing();
+        EditResult result = new EditResult(root);
+        ProjectEditor editor = idle.poll();
+        try (GitTreeProject project = (branch != null ? GitTreeProject.open(root, branch) : null)) {
+            if (commit && project == null) {
+                GitUtils.isClean(root, "edit");
+            }
+            result.source = (project != null ? project.source()
+                    : ArtifactSourceUtils.createArtifactSource(root));
+            if (editor == null) {
+                editor = editors.get();
+            }
+            ModificationAttempt attempt = editor.modify(result.source, arguments);
+
+            if (attempt instanceof SuccessfulModification) {
+                result.resultSource = new ProvenanceInfoWriter().write(
+                        ((SuccessfulModification) attempt).result(), editor, arguments,
+                        Constants.cliClient(), resolver);
+                result.deltas = asJavaCollection(result.resultSource.cachedDeltas()).stream()
+                        .collect(Collectors.toList());
+                if (!dryRun && project != null) {
+                    // Without a checkout there is nowhere to write changes to but the branch
+                    if (commit) {
+                        project.commit(result.deltas,
+                                GitUtils.commitMessage(editor, arguments, resolver));
+                    }
+                } else if (!dryRun) {
+                    // Changes are listed in the summary instead
+                    writeDeltas(result.deltas, root);
+                    if (commit) {
+                        GitUtils.commitFiles(editor, arguments, root, resolver);
+                    }
+                }
+                result.status = EditStatus.CHANGED;
+            } else if (attempt instanceof NoModificationNeeded) {
+                result.status = EditStatus.UNCHANGED;
+            } else if (attempt instanceof FailedModificationAttempt) {
+                result.message = ((FailedModificationAttempt) attempt).failureExplanation();
+            }
+        } catch (Exception e) {
+            result.message = (e.getMessage() != null ? e.getMessage().split("\n")[0]
+                    : e.getClass().getName());
+        } finally {
+            if (editor != null) {
+                idle.add(editor);
+            }
+        }
+        result.duration = timing.duration();
+        return result;
+    }
+
+    private void writeDeltas(Collection<Delta> deltas, File root) {
+        FileSystemArtifactSourceWriter writer = new FileSystemArtifactSourceWriter();
+        deltas.forEach(d -> {
+            if (d instanceof FileAdditionDelta) {
+                writer.write(((FileAdditionDelta) d).newFile(), root);
+            } else if (d instanceof FileUpdateDelta) {
+                FileUpdateDelta delta = (FileUpdateDelta) d;
+                new File(root, delta.oldFile().path()).delete();
+                writer.write(delta.updatedFile(), root);
+            } else if (d instanceof FileDeletionDelta) {
+                new File(root, d.path()).delete();
+            }
+        });
+    }
+
     private void printLogEntries(ProgressReporter indicator, ModificationAttempt r) {
         if (r instanceof SuccessfulModification) {
             Collection<ChangeLogEntry<ArtifactSource>> logEntries = JavaConverters
@@ -313,6 +598,25 @@ public class LocalGitProjectManagement implements ProjectManagement {
         });
     }
 
+    private enum EditStatus {
+        CHANGED, UNCHANGED, FAILED
+    }
+
+    private static class EditResult {
+
+        private final File root;
+        private EditStatus status = EditStatus.FAILED;
+        private String message;
+        private float duration;
+        private ArtifactSource source;
+        private ArtifactSource resultSource;
+        private List<Delta> deltas;
+
+        public EditResult(File root) {
+            this.root = root;
+        }
+    }
+
     private static class LocalRugContext implements RugContext {
 
         @Override
@@ -0,0 +1,173 @@
+package com.atomist.rug.cli.command.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.atomist.source.ArtifactSource;
+import com.atomist.source.DirectoryArtifact;
+import com.atomist.source.FileArtifact;
+
+import scala.collection.JavaConverters;
+import scala.runtime.AbstractFunction1;
+
+/**
+ * Index of the rugs an archive declares by name and the compiled JavaScript files declaring
+ * them.
+ * <p>
+ * Allows to narrow an archive down to the files needed to evaluate a few rugs: their declaring
+ * files, everything those require relatively and the declaring files of all rugs that are
+ * referenced by name in any of them. Files declaring other rugs, and files requiring those, are
+ * left out.
+ */
+public class RugIndex {
+
+    private static final Pattern RUG_PATTERN = Pattern.compile(
+            "\\b(?:Editor|Generator|CommandHandler|EventHandler|ResponseHandler)\\s*\\(\\s*"
+                    + "['\"]([^'\"]+)['\"]");
+    private static final Pattern REQUIRE_PATTERN = Pattern
+            .compile("require\\s*\\(\\s*['\"](\\.{1,2}/[^'\"]+)['\"]\\s*\\)");
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("['\"]([^'\"\\r\\n]+)['\"]");
+
+    private final ArtifactSource source;
+    private final Map<String, FileArtifact> files = new HashMap<>();
+    private final Map<String, Set<String>> requires = new HashMap<>();
+    private final Map<String, String> declarations = new HashMap<>();
+    private final Set<String> declaringFiles = new HashSet<>();
+
+    private RugIndex(ArtifactSource source) {
+        this.source = source;
+    }
+
+    public static RugIndex create(ArtifactSource source) {
+        RugIndex index = new RugIndex(source);
+        JavaConverters.seqAsJavaListConverter(source.allFiles()).asJava().stream()
+                .filter(f -> isScript(f.path())).forEach(f -> index.files.put(f.path(), f));
+        index.files.values().forEach(f -> {
+            Matcher matcher = RUG_PATTERN.matcher(f.content());
+            while (matcher.find()) {
+                index.declarations.putIfAbsent(matcher.group(1), f.path());
+                index.declaringFiles.add(f.path());
+            }
+            index.requires.put(f.path(), index.requires(f));
+        });
+        return index;
+    }
+
+    public boolean declares(String name) {
+        return declarations.containsKey(name);
+    }
+
+    /**
+     * Returns those rugs of this archive that are referenced in the given string literals, either
+     * by plain name or fully qualified with the coordinates of the archive.
+     */
+    public Set<String> referenced(Set<String> literals, String group, String artifact) {
+        return declarations.keySet().stream()
+                .filter(n -> literals.contains(n)
+                        || literals.contains(group + ":" + artifact + ":" + n))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the archive with only those rug declaring files that are needed for the given rugs.
+     */
+    public ArtifactSource narrow(Collection<String> names) {
+        Set<String> needed = closure(names);
+        Set<String> excluded = declaringFiles.stream().filter(p -> !needed.contains(p))
+                .collect(Collectors.toSet());
+
+        // Drop files that would pull in dropped files, eg. an index.js requiring all editors
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> entry : requires.entrySet()) {
+                if (!needed.contains(entry.getKey()) && !excluded.contains(entry.getKey())
+                        && entry.getValue().stream().anyMatch(excluded::contains)) {
+                    excluded.add(entry.getKey());
+                    changed = true;
+                }
+            }
+        }
+
+        return source.filter(new AbstractFunction1<DirectoryArtifact, Object>() {
+            @Override
+            public Object apply(DirectoryArtifact d) {
+                return true;
+            }
+        }, new AbstractFunction1<FileArtifact, Object>() {
+            @Override
+            public Object apply(FileArtifact f) {
+                String path = f.path();
+                return !excluded.contains(path.endsWith(".js.map")
+                        ? path.substring(0, path.length() - 4) : path);
+            }
+        });
+    }
+
+    /**
+     * Returns all string literals of the files needed for the given rugs; rugs of dependencies
+     * are referenced by these.
+     */
+    public Set<String> literals(Collection<String> names) {
+        Set<String> literals = new HashSet<>();
+        closure(names).forEach(p -> literals.addAll(literals(files.get(p))));
+        return literals;
+    }
+
+    private Set<String> closure(Collection<String> names) {
+        Set<String> closure = new HashSet<>();
+        LinkedList<String> queue = names.stream().map(declarations::get).filter(p -> p != null)
+                .collect(Collectors.toCollection(LinkedList::new));
+        while (!queue.isEmpty()) {
+            String path = queue.removeFirst();
+            if (closure.add(path)) {
+                queue.addAll(requires.get(path));
+                literals(files.get(path)).stream().map(declarations::get)
+                        .filter(p -> p != null).forEach(queue::add);
+            }
+        }
+        return closure;
+    }
+
+    private Set<String> requires(FileArtifact file) {
+        Set<String> requires = new HashSet<>();
+        String dir = FilenameUtils.getPath(file.path());
+        Matcher matcher = REQUIRE_PATTERN.matcher(file.content());
+        while (matcher.find()) {
+            String path = FilenameUtils.normalize(dir + matcher.group(1), true);
+            if (path == null) {
+                continue;
+            }
+            for (String candidate : new String[] { path, path + ".js", path + "/index.js" }) {
+                if (files.containsKey(candidate)) {
+                    requires.add(candidate);
+                    break;
+                }
+            }
+        }
+        return requires;
+    }
+
+    private static Set<String> literals(FileArtifact file) {
+        Set<String> literals = new HashSet<>();
+        Matcher matcher = LITERAL_PATTERN.matcher(file.content());
+        while (matcher.find()) {
+            literals.add(matcher.group(1));
+        }
+        return literals;
+    }
+
+    private static boolean isScript(String path) {
+        return path.startsWith(".atomist/") && path.endsWith(".js")
+                && !path.contains("node_modules/");
+    }
+}
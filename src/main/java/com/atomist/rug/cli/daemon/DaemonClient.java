@@ -0,0 +1,163 @@
+package com.atomist.rug.cli.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Optional;
+
+import com.atomist.rug.cli.Log;
+import com.atomist.rug.cli.command.CommandException;
+import com.atomist.rug.cli.daemon.DaemonProtocol.State;
+import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.version.VersionUtils;
+
+/**
+ * Thin client that forwards a command invocation to a running {@link DaemonServer} and streams
+ * its output back.
+ */
+public abstract class DaemonClient {
+
+    private static final Log log = new Log(DaemonClient.class);
+
+    private static final String DISABLE_DAEMON_ENV = "RUG_NO_DAEMON";
+    private static final int CONNECT_TIMEOUT = 500;
+
+    public static boolean isRunning() {
+        Optional<State> state = DaemonProtocol.readState();
+        if (state.isPresent()) {
+            try (Socket socket = connect(state.get())) {
+                return true;
+            }
+            catch (IOException e) {
+                // Stale state file left behind by a daemon that got killed
+                DaemonProtocol.deleteState();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the given command in the daemon. Returns the exit code of the command or an empty
+     * {@link Optional} if the command should be executed in this process.
+     */
+    public static Optional<Integer> run(String[] args) {
+        if (System.getenv(DISABLE_DAEMON_ENV) != null
+                || (args.length > 0 && "daemon".equals(args[0]))) {
+            return Optional.empty();
+        }
+
+        Optional<State> state = DaemonProtocol.readState();
+        if (!state.isPresent() || !version().equals(state.get().version())) {
+            return Optional.empty();
+        }
+
+        boolean started = false;
+        try (Socket socket = connect(state.get())) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(DaemonProtocol.REQUEST_RUN);
+            DaemonProtocol.writeString(out, state.get().token());
+            DaemonProtocol.writeString(out, version());
+            DaemonProtocol.writeString(out, System.getProperty("user.dir"));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                DaemonProtocol.writeString(out, arg);
+            }
+            Map<String, String> env = System.getenv();
+            out.writeInt(env.size());
+            for (Map.Entry<String, String> entry : env.entrySet()) {
+                DaemonProtocol.writeString(out, entry.getKey());
+                DaemonProtocol.writeString(out, entry.getValue());
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                byte type = in.readByte();
+                started = true;
+                if (type == DaemonProtocol.FRAME_OUT) {
+                    copy(in, System.out);
+                }
+                else if (type == DaemonProtocol.FRAME_ERR) {
+                    copy(in, System.err);
+                }
+                else if (type == DaemonProtocol.FRAME_EXIT) {
+                    return Optional.of(in.readInt());
+                }
+                else if (type == DaemonProtocol.FRAME_BUSY) {
+                    log.info(Style.yellow("Rug daemon is busy; running command without it"));
+                    return Optional.empty();
+                }
+                else {
+                    // The daemon refused to run this command; fall back to running it locally
+                    return Optional.empty();
+                }
+            }
+        }
+        catch (IOException e) {
+            if (!started) {
+                DaemonProtocol.deleteState();
+                return Optional.empty();
+            }
+            log.error("Lost connection to rug daemon: %s", e.getMessage());
+            return Optional.of(1);
+        }
+    }
+
+    public static boolean stop() {
+        Optional<State> state = DaemonProtocol.readState();
+        if (!state.isPresent()) {
+            return false;
+        }
+        try (Socket socket = connect(state.get())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(DaemonProtocol.REQUEST_STOP);
+            DaemonProtocol.writeString(out, state.get().token());
+            DaemonProtocol.writeString(out, version());
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte type = in.readByte();
+            if (type == DaemonProtocol.FRAME_BUSY) {
+                throw new CommandException("Rug daemon is busy with another command.\n"
+                        + "Please try again once it completed.", "daemon");
+            }
+            return type == DaemonProtocol.FRAME_EXIT && in.readInt() == 0;
+        }
+        catch (IOException e) {
+            DaemonProtocol.deleteState();
+            return false;
+        }
+    }
+
+    private static Socket connect(State state) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), state.port()),
+                    CONNECT_TIMEOUT);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private static void copy(DataInputStream in, PrintStream out) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        out.write(bytes, 0, bytes.length);
+        out.flush();
+    }
+
+    private static String version() {
+        return VersionUtils.readVersion().orElse("0.0.0");
+    }
+}
@@ -0,0 +1,44 @@
+package com.atomist.rug.cli.daemon;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import com.atomist.rug.cli.command.CommandInfoRegistry;
+import com.atomist.rug.cli.command.ReflectiveCommandRunner;
+import com.atomist.rug.cli.command.utils.ArtifactSourceUtils;
+import com.atomist.rug.cli.utils.Timing;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+
+/**
+ * {@link ReflectiveCommandRunner} used for commands served by the {@link DaemonServer}.
+ * <p>
+ * Rugs loaded from a local project stay in the warm classloader until the fingerprint of the
+ * project's files changes; archives are immutable and never need to be reloaded.
+ */
+public class DaemonCommandRunner extends ReflectiveCommandRunner {
+
+    private final Map<URI, String> fingerprints;
+
+    public DaemonCommandRunner(CommandInfoRegistry registry, Map<URI, String> fingerprints) {
+        super(registry);
+        this.fingerprints = fingerprints;
+    }
+
+    @Override
+    protected int invokeCommand(String[] args, ArtifactDescriptor artifact,
+            List<ArtifactDescriptor> dependencies, Timing timing, boolean checkArtifact) {
+        if (artifact instanceof LocalArtifactDescriptor && args.length > 0
+                && !"exit".equals(args[0])) {
+            String fingerprint = ArtifactSourceUtils.fingerprint(new File(artifact.uri()));
+            String previous = fingerprints.put(artifact.uri(), fingerprint);
+            if (previous != null && !previous.equals(fingerprint)) {
+                super.invokeCommand(new String[] { "exit" }, artifact, dependencies, new Timing(),
+                        false);
+            }
+        }
+        return super.invokeCommand(args, artifact, dependencies, timing, checkArtifact);
+    }
+}
@@ -0,0 +1,117 @@
+package com.atomist.rug.cli.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Wire format and state file shared between {@link DaemonServer} and {@link DaemonClient}.
+ * <p>
+ * A request starts with a type byte followed by the token and CLI version. Run requests then carry
+ * working directory, arguments and environment. The response is a sequence of frames each starting
+ * with a type byte; it is terminated by either an exit, a reject or a busy frame. A busy frame is
+ * sent without reading the request while the daemon is running another command.
+ */
+abstract class DaemonProtocol {
+
+    static final byte REQUEST_RUN = 1;
+    static final byte REQUEST_STOP = 2;
+
+    static final byte FRAME_OUT = 1;
+    static final byte FRAME_ERR = 2;
+    static final byte FRAME_EXIT = 3;
+    static final byte FRAME_REJECT = 4;
+    static final byte FRAME_BUSY = 5;
+
+    private static final String PORT_KEY = "port";
+    private static final String TOKEN_KEY = "token";
+    private static final String VERSION_KEY = "version";
+
+    static File stateFile() {
+        return new File(FileUtils.getUserDirectory(),
+                ".atomist" + File.separator + ".rug-daemon");
+    }
+
+    static Optional<State> readState() {
+        File stateFile = stateFile();
+        if (!stateFile.exists()) {
+            return Optional.empty();
+        }
+        try (InputStream is = new FileInputStream(stateFile)) {
+            Properties properties = new Properties();
+            properties.load(is);
+            return Optional.of(new State(Integer.parseInt(properties.getProperty(PORT_KEY)),
+                    properties.getProperty(TOKEN_KEY), properties.getProperty(VERSION_KEY)));
+        }
+        catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    static void writeState(State state) throws IOException {
+        File stateFile = stateFile();
+        stateFile.getParentFile().mkdirs();
+        stateFile.createNewFile();
+        // The token grants command execution so nobody else should be able to read it
+        com.atomist.rug.cli.utils.FileUtils.setPermissionsToOwnerOnly(stateFile);
+
+        Properties properties = new Properties();
+        properties.setProperty(PORT_KEY, String.valueOf(state.port()));
+        properties.setProperty(TOKEN_KEY, state.token());
+        properties.setProperty(VERSION_KEY, state.version());
+        try (OutputStream os = new FileOutputStream(stateFile)) {
+            properties.store(os, null);
+        }
+    }
+
+    static void deleteState() {
+        FileUtils.deleteQuietly(stateFile());
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static class State {
+
+        private final int port;
+        private final String token;
+        private final String version;
+
+        State(int port, String token, String version) {
+            this.port = port;
+            this.token = token;
+            this.version = version;
+        }
+
+        int port() {
+            return port;
+        }
+
+        String token() {
+            return token;
+        }
+
+        String version() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.atomist.rug.cli.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.Log;
+import com.atomist.rug.cli.Runner;
+import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.command.CommandInfo;
+import com.atomist.rug.cli.command.CommandInfoRegistry;
+import com.atomist.rug.cli.command.ReflectiveCommandRunner;
+import com.atomist.rug.cli.daemon.DaemonProtocol.State;
+import com.atomist.rug.cli.output.ProgressReportingPrintStream;
+import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.utils.Environment;
+import com.atomist.rug.cli.version.VersionUtils;
+
+/**
+ * Headless counterpart to the shell loop: keeps this JVM running and serves commands sent by
+ * {@link DaemonClient}s.
+ * <p>
+ * Commands redirect the standard streams and change the working directory of this JVM, so only
+ * one command runs at a time. A client that connects while another command is running gets told
+ * that the daemon is busy and runs its command in its own process instead of waiting.
+ * <p>
+ * Java 8 has no support for Unix domain sockets so we listen on a loopback port instead and
+ * protect it with a random token that is only readable by the current user.
+ */
+public class DaemonServer {
+
+    // Commands that need a terminal or would take over the daemon are executed by the client
+    private static final List<String> LOCAL_COMMANDS = Arrays
+            .asList(new String[] { "shell", "daemon", "login", "exit" });
+
+    private static final int BACKLOG = 50;
+
+    private final Log log = new Log(getClass());
+    private final CommandInfoRegistry registry;
+    private final Map<URI, String> fingerprints = new ConcurrentHashMap<>();
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private volatile boolean stopped = false;
+    private ServerSocket serverSocket;
+
+    public DaemonServer(CommandInfoRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void serve() {
+        String token = UUID.randomUUID().toString();
+        Constants.setDaemon(true);
+
+        // Commands get their own classloaders; don't stack them on top of the one for this command
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader daemonClassLoader = getClass().getClassLoader();
+        Thread.currentThread().setContextClassLoader(daemonClassLoader);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Rug Daemon Command");
+            thread.setContextClassLoader(daemonClassLoader);
+            return thread;
+        });
+
+        try (ServerSocket serverSocket = new ServerSocket(0, BACKLOG,
+                InetAddress.getLoopbackAddress())) {
+            this.serverSocket = serverSocket;
+            DaemonProtocol.writeState(new State(serverSocket.getLocalPort(), token, version()));
+
+            log.newline();
+            log.info(Style.green("Rug daemon listening on port %s", serverSocket.getLocalPort()));
+            log.info("To stop the daemon, run:\n  %sdaemon --stop", Constants.command());
+
+            while (!stopped) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                }
+                catch (IOException e) {
+                    if (serverSocket.isClosed()) {
+                        // Closed by a stop request
+                        break;
+                    }
+                    continue;
+                }
+                if (busy.compareAndSet(false, true)) {
+                    executor.execute(() -> {
+                        try (Socket s = socket) {
+                            handle(s, token);
+                        }
+                        catch (IOException e) {
+                            // Client went away; nothing to do but wait for the next one
+                        }
+                        finally {
+                            busy.set(false);
+                        }
+                    });
+                }
+                else {
+                    busy(socket);
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RunnerException("Failed to start rug daemon", e);
+        }
+        finally {
+            executor.shutdown();
+            DaemonProtocol.deleteState();
+            Constants.setDaemon(false);
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+    }
+
+    private void handle(Socket socket, String token) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+
+        byte type = in.readByte();
+        String requestToken = DaemonProtocol.readString(in);
+        String requestVersion = DaemonProtocol.readString(in);
+        if (!token.equals(requestToken)) {
+            reject(out);
+            return;
+        }
+        if (type == DaemonProtocol.REQUEST_STOP) {
+            stopped = true;
+            exit(out, 0);
+            // Wake up the accept loop
+            serverSocket.close();
+            return;
+        }
+
+        String workingDir = DaemonProtocol.readString(in);
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = DaemonProtocol.readString(in);
+        }
+        Map<String, String> env = new HashMap<>();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            env.put(DaemonProtocol.readString(in), DaemonProtocol.readString(in));
+        }
+
+        if (!version().equals(requestVersion) || !isSupported(args)) {
+            reject(out);
+        }
+        else {
+            exit(out, execute(out, workingDir, args, env));
+        }
+    }
+
+    private int execute(DataOutputStream out, String workingDir, String[] args,
+            Map<String, String> env) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        String userDir = System.getProperty("user.dir");
+        try {
+            System.setOut(new ProgressReportingPrintStream(
+                    new FrameOutputStream(out, DaemonProtocol.FRAME_OUT)));
+            System.setErr(new ProgressReportingPrintStream(
+                    new FrameOutputStream(out, DaemonProtocol.FRAME_ERR)));
+            System.setProperty("user.dir", workingDir);
+            // Placeholders in settings resolve against the client's environment, not ours
+            Environment.set(env);
+
+            return new DaemonRunner(registry, fingerprints).execute(args);
+        }
+        finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+            System.setProperty("user.dir", userDir);
+            Environment.set(null);
+        }
+    }
+
+    private boolean isSupported(String[] args) {
+        if (Arrays.stream(args).anyMatch(a -> "-I".equals(a) || "--interactive".equals(a))) {
+            return false;
+        }
+        try {
+            CommandInfo info = registry.findCommand(args);
+            return !LOCAL_COMMANDS.contains(info.name());
+        }
+        catch (RuntimeException e) {
+            // Let the daemon report the error as usual
+            return true;
+        }
+    }
+
+    private void exit(DataOutputStream out, int rc) throws IOException {
+        out.writeByte(DaemonProtocol.FRAME_EXIT);
+        out.writeInt(rc);
+        out.flush();
+    }
+
+    /**
+     * Tells the client that another command is running; it then runs its command itself.
+     */
+    private void busy(Socket socket) {
+        try (Socket s = socket) {
+            s.getOutputStream().write(DaemonProtocol.FRAME_BUSY);
+            s.getOutputStream().flush();
+        }
+        catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    private void reject(DataOutputStream out) throws IOException {
+        out.writeByte(DaemonProtocol.FRAME_REJECT);
+        out.flush();
+    }
+
+    private String version() {
+        return VersionUtils.readVersion().orElse("0.0.0");
+    }
+
+    /**
+     * {@link Runner} that doesn't exit the JVM and keeps classloaders around between requests.
+     */
+    private static class DaemonRunner extends Runner {
+
+        private final Map<URI, String> fingerprints;
+
+        public DaemonRunner(CommandInfoRegistry registry, Map<URI, String> fingerprints) {
+            super(registry);
+            this.fingerprints = fingerprints;
+        }
+
+        @Override
+        protected ReflectiveCommandRunner commandRunner(CommandInfoRegistry registry) {
+            return new DaemonCommandRunner(registry, fingerprints);
+        }
+    }
+
+    /**
+     * Wraps everything written to it into frames of the given type.
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte type;
+        private boolean broken = false;
+
+        public FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (broken || len == 0) {
+                return;
+            }
+            synchronized (out) {
+                try {
+                    out.writeByte(type);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                    out.flush();
+                }
+                catch (IOException e) {
+                    // Client disconnected; let the command finish without output
+                    broken = true;
+                }
+            }
+        }
+    }
+}
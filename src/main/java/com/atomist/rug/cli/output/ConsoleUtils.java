@@ -1,9 +1,11 @@
 package com.atomist.rug.cli.output;
 
+import com.atomist.rug.cli.utils.Environment;
+
 public abstract class ConsoleUtils {
 
     public static int width() {
-        String columns = System.getenv("COLUMNS");
+        String columns = Environment.get("COLUMNS");
         int width = 80;
         if (columns != null) {
             width = Integer.valueOf(columns);
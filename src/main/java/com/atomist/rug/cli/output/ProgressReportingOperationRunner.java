@@ -2,8 +2,11 @@ package com.atomist.rug.cli.output;
 
 import java.io.PrintStream;
 
+import com.atomist.rug.cli.Log;
 import com.atomist.rug.cli.RunnerException;
 import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
 import com.atomist.rug.cli.utils.Timing;
 
 public class ProgressReportingOperationRunner<T> {
@@ -18,7 +21,7 @@ public class ProgressReportingOperationRunner<T> {
         Timing timing = new Timing();
         boolean success = true;
         ProgressReporter indicator = createProgressReporter();
-        try {
+        try (Span span = Profiler.span(msg)) {
             return operation.run(indicator);
         }
         catch (Throwable e) {
@@ -42,7 +45,10 @@ public class ProgressReportingOperationRunner<T> {
     private ProgressReporter createProgressReporter() {
         ProgressReporter indicator = null;
         PrintStream stream = (CommandLineOptions.hasOption("output") ? System.err : System.out);
-        if (CommandLineOptions.hasOption("output") || CommandLineOptions.hasOption("quiet")
+        if (Log.isSilent()) {
+            indicator = new SilentProgressReporter();
+        }
+        else if (CommandLineOptions.hasOption("output") || CommandLineOptions.hasOption("quiet")
                 || (msg.length()) >= ConsoleUtils.width()) {
             indicator = new PassThroughProgressReporter(msg, stream);
         }
@@ -53,6 +59,21 @@ public class ProgressReportingOperationRunner<T> {
         return indicator;
     }
 
+    private static class SilentProgressReporter implements ProgressReporter {
+
+        @Override
+        public void finish(boolean success, float duration) {
+        }
+
+        @Override
+        public void report(String message) {
+        }
+
+        @Override
+        public void detail(String detail) {
+        }
+    }
+
     public interface ProgressReportingOperation<T> {
         T run(ProgressReporter indicator) throws Exception;
     }
@@ -2,6 +2,7 @@ package com.atomist.rug.cli.output;
 
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -9,11 +10,14 @@ import org.eclipse.aether.transfer.AbstractTransferListener;
 import org.eclipse.aether.transfer.TransferCancelledException;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.transfer.TransferEvent.RequestType;
+import org.eclipse.aether.transfer.TransferResource;
 
 import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.settings.Settings.RemoteRepository;
 import com.atomist.rug.cli.settings.SettingsReader;
 import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
 import com.atomist.rug.cli.utils.StringUtils;
 
 public class ProgressReportingTransferListener extends AbstractTransferListener {
@@ -22,6 +26,7 @@ public class ProgressReportingTransferListener extends AbstractTransferListener
     private ProgressReporter indicator;
 
     private Map<String, String> repositories;
+    private final Map<TransferResource, Span> transfers = new ConcurrentHashMap<>();
 
     public ProgressReportingTransferListener(ProgressReporter indicator, boolean reportTitle) {
         this(SettingsReader.read().getRemoteRepositories(), indicator);
@@ -40,6 +45,13 @@ public class ProgressReportingTransferListener extends AbstractTransferListener
 
     }
 
+    @Override
+    public void transferInitiated(TransferEvent event) throws TransferCancelledException {
+        if (Profiler.isEnabled()) {
+            transfers.put(event.getResource(), Profiler.span("download"));
+        }
+    }
+
     @Override
     public void transferCorrupted(TransferEvent event) throws TransferCancelledException {
         if (CommandLineOptions.hasOption("noisy")) {
@@ -49,6 +61,7 @@ public class ProgressReportingTransferListener extends AbstractTransferListener
 
     @Override
     public void transferFailed(TransferEvent event) {
+        completed(event);
         if (CommandLineOptions.hasOption("noisy")) {
             report(event);
         }
@@ -56,6 +69,7 @@ public class ProgressReportingTransferListener extends AbstractTransferListener
 
     @Override
     public void transferSucceeded(TransferEvent event) {
+        completed(event);
         if (CommandLineOptions.hasOption("noisy") || CommandLineOptions.hasOption("quiet")) {
             report(event);
         }
@@ -64,6 +78,13 @@ public class ProgressReportingTransferListener extends AbstractTransferListener
         }
     }
 
+    private void completed(TransferEvent event) {
+        Span span = transfers.remove(event.getResource());
+        if (span != null) {
+            span.close();
+        }
+    }
+
     private void reportDetail(TransferEvent event) {
         String[] parts = event.getResource().getResourceName().split("/");
         String repo = repositories.getOrDefault(
@@ -0,0 +1,28 @@
+package com.atomist.rug.cli.output;
+
+/**
+ * {@link ProgressReporter} that can be shared by several threads reporting on the same operation.
+ */
+public class SynchronizedProgressReporter implements ProgressReporter {
+
+    private final ProgressReporter delegate;
+
+    public SynchronizedProgressReporter(ProgressReporter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void finish(boolean success, float duration) {
+        delegate.finish(success, duration);
+    }
+
+    @Override
+    public synchronized void report(String message) {
+        delegate.report(message);
+    }
+
+    @Override
+    public synchronized void detail(String detail) {
+        delegate.detail(detail);
+    }
+}
@@ -0,0 +1,205 @@
+package com.atomist.rug.cli.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.utils.CacheUtils;
+import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Index of the Rug archives in the local repository stored in <code>.rug-cli/catalog.json</code>.
+ * <p>
+ * The index is built by scanning the repository once and from then on kept up to date by install
+ * and dependency resolution, whenever those add archives. <code>--update</code> forces another
+ * scan to pick up archives that got into the repository by other means.
+ */
+public abstract class ArchiveCatalog {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Returns all archives in the local repository. Archives that got deleted since they were
+     * indexed are left out.
+     */
+    public static List<ArtifactDescriptor> archives() {
+        File repo = repository();
+        if (!repo.exists()) {
+            return new ArrayList<>();
+        }
+        List<CatalogEntry> entries = LocalRepositoryLock.withLock(".rug-cli", "catalog", () -> {
+            File catalogFile = catalogFile();
+            if (!catalogFile.exists() || CommandLineOptions.hasOption("update")) {
+                List<CatalogEntry> scanned = scan(repo);
+                write(catalogFile, scanned);
+                return scanned;
+            }
+            return read(catalogFile);
+        });
+        return entries.stream().filter(e -> new File(repo, e.archive).exists())
+                .map(e -> new DefaultArtifactDescriptor(e.group, e.artifact, e.version,
+                        Extension.ZIP, Scope.COMPILE, null, new File(repo, e.archive).toURI()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Adds all Rug archives out of the given artifacts and their dependencies that live in the
+     * local repository. The catalog is only written if it didn't know any of them yet.
+     */
+    public static void update(Collection<ArtifactDescriptor> artifacts) {
+        Path repo = repository().toPath().toAbsolutePath().normalize();
+        List<CatalogEntry> candidates = new ArrayList<>();
+        collect(artifacts, repo, candidates, new HashSet<>());
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        LocalRepositoryLock.withLock(".rug-cli", "catalog", () -> {
+            File catalogFile = catalogFile();
+            // Archives that got here before the catalog existed get picked up by the first scan
+            if (!catalogFile.exists()) {
+                return null;
+            }
+            List<CatalogEntry> entries = read(catalogFile);
+            Set<String> known = entries.stream().map(e -> e.archive).collect(Collectors.toSet());
+            List<CatalogEntry> added = candidates.stream().filter(c -> known.add(c.archive))
+                    .collect(Collectors.toList());
+            if (!added.isEmpty()) {
+                entries.addAll(added);
+                write(catalogFile, entries);
+            }
+            return null;
+        });
+    }
+
+    public static void update(ArtifactDescriptor artifact, List<ArtifactDescriptor> dependencies) {
+        List<ArtifactDescriptor> artifacts = new ArrayList<>(dependencies);
+        artifacts.add(artifact);
+        update(artifacts);
+    }
+
+    /**
+     * Modification time of the catalog; 0 if there is none yet.
+     */
+    public static long lastModified() {
+        return catalogFile().lastModified();
+    }
+
+    private static void collect(Collection<ArtifactDescriptor> artifacts, Path repo,
+            List<CatalogEntry> entries, Set<ArtifactDescriptor> seen) {
+        artifacts.stream().filter(seen::add).forEach(a -> {
+            if (a.extension() == Extension.ZIP && a.uri() != null
+                    && "file".equals(a.uri().getScheme())) {
+                File archive = new File(a.uri());
+                Path path = archive.toPath().toAbsolutePath().normalize();
+                if (path.startsWith(repo) && metadata(archive).exists()) {
+                    entries.add(entry(a.group(), a.artifact(), a.version(), repo, path));
+                }
+            }
+            collect(a.dependencies(), repo, entries, seen);
+        });
+    }
+
+    private static List<CatalogEntry> scan(File repo) {
+        Path repoPath = repo.toPath().toAbsolutePath().normalize();
+        URI repoHome = repo.toURI();
+        return FileUtils.listFiles(repo, new String[] { "zip" }, true).stream()
+                .filter(f -> metadata(f).exists())
+                .sorted(Comparator.comparing(File::getAbsolutePath)).map(f -> {
+                    // group/as/path/artifact/version/artifact-version.zip
+                    String[] segments = repoHome.relativize(f.toURI()).toString().split("/");
+                    if (segments.length < 4) {
+                        return null;
+                    }
+                    String version = segments[segments.length - 2];
+                    String artifact = segments[segments.length - 3];
+                    StringBuilder group = new StringBuilder();
+                    for (int i = 0; i < segments.length - 3; i++) {
+                        group.append(i > 0 ? "." : "").append(segments[i]);
+                    }
+                    return entry(group.toString(), artifact, version, repoPath,
+                            f.toPath().toAbsolutePath().normalize());
+                }).filter(e -> e != null).collect(Collectors.toList());
+    }
+
+    private static CatalogEntry entry(String group, String artifact, String version, Path repo,
+            Path archive) {
+        CatalogEntry entry = new CatalogEntry();
+        entry.group = group;
+        entry.artifact = artifact;
+        entry.version = version;
+        entry.archive = repo.relativize(archive).toString().replace(File.separatorChar, '/');
+        return entry;
+    }
+
+    private static File metadata(File archive) {
+        return new File(archive.getParentFile(),
+                archive.getName().replaceAll(".zip$", "-metadata.json"));
+    }
+
+    private static List<CatalogEntry> read(File catalogFile) {
+        try {
+            return mapper.readValue(catalogFile, new TypeReference<List<CatalogEntry>>() {
+            });
+        }
+        catch (IOException e) {
+            // Rebuild a corrupt catalog from scratch
+            List<CatalogEntry> scanned = scan(repository());
+            write(catalogFile, scanned);
+            return scanned;
+        }
+    }
+
+    private static void write(File catalogFile, List<CatalogEntry> entries) {
+        try {
+            CacheUtils.writeJson(catalogFile, entries, mapper);
+        }
+        catch (IOException e) {
+            // Next listing will scan the repository again
+            FileUtils.deleteQuietly(catalogFile);
+        }
+    }
+
+    private static File catalogFile() {
+        return new File(DependencyResolutionCache.cacheRoot().getParentFile(), "catalog.json");
+    }
+
+    private static File repository() {
+        return new File(SettingsReader.read().getLocalRepository().path());
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class CatalogEntry {
+
+        @JsonProperty
+        private String group;
+
+        @JsonProperty
+        private String artifact;
+
+        @JsonProperty
+        private String version;
+
+        @JsonProperty
+        private String archive;
+    }
+}
@@ -0,0 +1,450 @@
+package com.atomist.rug.cli.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.command.CommandException;
+import com.atomist.rug.cli.output.ProgressReporter;
+import com.atomist.rug.cli.resolver.DependencyResolutionCache.Resolution;
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.utils.CacheUtils;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Reads and writes <code>.atomist/rug.lock</code> of local projects. The lock file pins the
+ * resolved dependency graph with exact versions, checksums and repository of origin so that the
+ * graph can be mapped straight onto the local repository without running the resolver.
+ * <p>
+ * A lock is used as long as manifest.yml, package.json, the remote repositories and the CLI
+ * version are unchanged and <code>--update</code> isn't given. Pinned files missing from the local
+ * repository are downloaded by their exact coordinates; files whose checksum doesn't match the
+ * lock are an error. An existing lock is only rewritten once it got out of date or with
+ * <code>--update</code>; a new one gets written if <code>enable_lockfile</code> is set.
+ */
+public abstract class DependencyLockFile {
+
+    private static final String ENABLE_LOCKFILE_KEY = "enable_lockfile";
+    private static final boolean ENABLE_LOCKFILE = false;
+
+    private static final String LOCKFILE_NAME = "rug.lock";
+    private static final int LOCKFILE_VERSION = 1;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static Optional<Resolution> read(ArtifactDescriptor artifact,
+            ProgressReporter indicator) {
+        if (!(artifact instanceof LocalArtifactDescriptor) || CommandLineOptions.hasOption("update")
+                || CommandLineOptions.hasOption("requires")
+                || CommandLineOptions.hasOption("resolver-report")) {
+            return Optional.empty();
+        }
+
+        File lockFile = lockFile(artifact);
+        if (!lockFile.exists()) {
+            return Optional.empty();
+        }
+
+        Lock lock = readLock(lockFile);
+        if (lock.lockfileVersion != LOCKFILE_VERSION
+                || !fingerprint(artifact).equals(lock.fingerprint)) {
+            // Dependencies, repositories or CLI version changed; resolve and lock again
+            return Optional.empty();
+        }
+
+        Checksums checksums = Checksums.read();
+        List<LockedArtifact> missing = new ArrayList<>();
+        List<LockedArtifact> changed = new ArrayList<>();
+        collectMissingAndChanged(lock, missing, changed, checksums);
+        boolean downloaded = false;
+        if (!missing.isEmpty() && changed.isEmpty()) {
+            if (CommandLineOptions.hasOption("offline")) {
+                throw new CommandException(String.format(
+                        "Dependencies pinned in %s are missing from the local repository:\n  %s\n"
+                                + "Please run again without --offline to download them.",
+                        lockFile.getPath(), coordinates(missing)));
+            }
+            download(missing, indicator);
+            downloaded = true;
+            missing.clear();
+            collectMissingAndChanged(lock, missing, changed, checksums);
+        }
+        checksums.write();
+        if (!changed.isEmpty() || !missing.isEmpty()) {
+            changed.addAll(missing);
+            throw new CommandException(String.format(
+                    "Dependencies in the local repository don't match the checksums pinned in "
+                            + "%s:\n  %s\nPlease remove them from the local repository or run "
+                            + "again with --update to resolve and lock the dependencies again.",
+                    lockFile.getPath(), coordinates(changed)));
+        }
+
+        Resolution resolution = new Resolution(toArtifactDescriptor(lock.artifact, artifact),
+                lock.dependencies.stream().map(d -> toArtifactDescriptor(d, artifact))
+                        .collect(Collectors.toList()));
+        if (downloaded) {
+            ArchiveCatalog.update(resolution.artifact(), resolution.dependencies());
+        }
+        return Optional.of(resolution);
+    }
+
+    public static void write(ArtifactDescriptor artifact, ArtifactDescriptor resolved,
+            List<ArtifactDescriptor> dependencies) {
+        if (!(artifact instanceof LocalArtifactDescriptor)
+                || CommandLineOptions.hasOption("requires")) {
+            return;
+        }
+        File lockFile = lockFile(artifact);
+        String fingerprint = fingerprint(artifact);
+        if (lockFile.exists()) {
+            // Never re-pin an up-to-date lock with whatever the version ranges resolve to today
+            if (!CommandLineOptions.hasOption("update")
+                    && fingerprint.equals(fingerprintOf(lockFile))) {
+                return;
+            }
+        }
+        else if (!SettingsReader.read().getConfigValue(ENABLE_LOCKFILE_KEY, ENABLE_LOCKFILE)) {
+            return;
+        }
+
+        Checksums checksums = Checksums.read();
+        Lock lock = new Lock();
+        lock.lockfileVersion = LOCKFILE_VERSION;
+        lock.fingerprint = fingerprint;
+        lock.artifact = toLockedArtifact(resolved, artifact, checksums);
+        lock.dependencies = dependencies.stream()
+                .map(d -> toLockedArtifact(d, artifact, checksums)).collect(Collectors.toList());
+        checksums.write();
+
+        try {
+            // Don't touch the file if nothing changed; it is likely under version control
+            byte[] content = mapper.writeValueAsBytes(lock);
+            if (lockFile.exists() && ChecksumUtils.sha256(content)
+                    .equals(ChecksumUtils.sha256(Files.readAllBytes(lockFile.toPath())))) {
+                return;
+            }
+            CacheUtils.write(lockFile, content);
+        }
+        catch (IOException e) {
+            // Without a lock the next run simply resolves again
+        }
+    }
+
+    private static Lock readLock(File lockFile) {
+        try {
+            Lock lock = mapper.readValue(lockFile, Lock.class);
+            if (lock.artifact != null && lock.dependencies != null) {
+                return lock;
+            }
+        }
+        catch (IOException e) {
+            // Fall through and report the broken lock
+        }
+        throw new CommandException(String.format(
+                "%s can't be read.\nPlease restore it from version control or run again with "
+                        + "--update to resolve and lock the dependencies again.",
+                lockFile.getPath()));
+    }
+
+    private static String fingerprintOf(File lockFile) {
+        try {
+            return mapper.readValue(lockFile, Lock.class).fingerprint;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static File lockFile(ArtifactDescriptor artifact) {
+        return new File(new File(artifact.uri()),
+                Constants.ATOMIST_ROOT + File.separator + LOCKFILE_NAME);
+    }
+
+    private static String fingerprint(ArtifactDescriptor artifact) {
+        return CacheUtils.fingerprint(artifact);
+    }
+
+    private static void collectMissingAndChanged(Lock lock, List<LockedArtifact> missing,
+            List<LockedArtifact> changed, Checksums checksums) {
+        collectMissingAndChanged(lock.artifact, missing, changed, checksums);
+        lock.dependencies.forEach(d -> collectMissingAndChanged(d, missing, changed, checksums));
+    }
+
+    private static void collectMissingAndChanged(LockedArtifact locked,
+            List<LockedArtifact> missing, List<LockedArtifact> changed, Checksums checksums) {
+        if (locked.path != null) {
+            File file = localRepository().resolve(locked.path).toFile();
+            if (!file.isFile()) {
+                missing.add(locked);
+            }
+            else if (locked.checksum != null
+                    && !checksums.sha256(locked.path, file).equals(locked.checksum)) {
+                changed.add(locked);
+            }
+        }
+        locked.dependencies
+                .forEach(d -> collectMissingAndChanged(d, missing, changed, checksums));
+    }
+
+    /**
+     * Downloads the pinned files by their exact coordinates; nothing gets resolved again.
+     */
+    private static void download(List<LockedArtifact> missing, ProgressReporter indicator) {
+        Map<String, ArtifactDescriptor> artifacts = new LinkedHashMap<>();
+        missing.forEach(l -> artifacts.putIfAbsent(l.path,
+                new DefaultArtifactDescriptor(l.group, l.artifact, l.version,
+                        Extension.valueOf(l.extension), Scope.COMPILE, l.classifier, null)));
+        try {
+            DependencyResolverFactory.downloadArtifacts(new ArrayList<>(artifacts.values()),
+                    indicator);
+        }
+        catch (ArtifactResolutionException e) {
+            throw new CommandException(String.format(
+                    "Dependencies pinned in .atomist/%s could not be downloaded:\n  %s",
+                    LOCKFILE_NAME, e.getMessage()));
+        }
+    }
+
+    private static ArtifactDescriptor toArtifactDescriptor(LockedArtifact locked,
+            ArtifactDescriptor root) {
+        URI uri = null;
+        if (locked.project) {
+            uri = root.uri();
+        }
+        else if (locked.path != null) {
+            uri = localRepository().resolve(locked.path).toUri();
+        }
+        else if (locked.uri != null) {
+            uri = URI.create(locked.uri);
+        }
+        DefaultArtifactDescriptor artifact = new DefaultArtifactDescriptor(locked.group,
+                locked.artifact, locked.version, Extension.valueOf(locked.extension),
+                (locked.scope != null ? Scope.valueOf(locked.scope) : Scope.COMPILE),
+                locked.classifier, uri);
+        locked.dependencies
+                .forEach(d -> artifact.dependencies().add(toArtifactDescriptor(d, root)));
+        return artifact;
+    }
+
+    private static LockedArtifact toLockedArtifact(ArtifactDescriptor artifact,
+            ArtifactDescriptor root, Checksums checksums) {
+        LockedArtifact locked = new LockedArtifact();
+        locked.group = artifact.group();
+        locked.artifact = artifact.artifact();
+        locked.version = artifact.version();
+        locked.extension = artifact.extension().name();
+        locked.scope = (artifact.scope() != null ? artifact.scope().name() : null);
+        locked.classifier = artifact.classifier();
+        if (artifact.uri() != null) {
+            Path path = new File(artifact.uri()).toPath().toAbsolutePath().normalize();
+            Path repository = localRepository();
+            if (path.equals(new File(root.uri()).toPath().toAbsolutePath().normalize())) {
+                locked.project = true;
+            }
+            else if (path.startsWith(repository)) {
+                // Relative to the local repository so that the lock works on every machine
+                locked.path = repository.relativize(path).toString().replace(File.separatorChar,
+                        '/');
+                locked.repository = repositoryOf(path.toFile());
+            }
+            else {
+                locked.uri = artifact.uri().toString();
+            }
+            if (!locked.project && path.toFile().isFile()) {
+                locked.checksum = (locked.path != null
+                        ? checksums.sha256(locked.path, path.toFile())
+                        : ChecksumUtils.sha256(path.toFile()));
+            }
+        }
+        locked.dependencies = artifact.dependencies().stream()
+                .map(d -> toLockedArtifact(d, root, checksums)).collect(Collectors.toList());
+        return locked;
+    }
+
+    /**
+     * Id of the remote repository a file got downloaded from as recorded by Aether in
+     * _remote.repositories next to the file.
+     */
+    private static String repositoryOf(File file) {
+        File remotes = new File(file.getParentFile(), "_remote.repositories");
+        if (remotes.exists()) {
+            try {
+                String prefix = file.getName() + ">";
+                for (String line : Files.readAllLines(remotes.toPath(), StandardCharsets.UTF_8)) {
+                    if (line.startsWith(prefix)) {
+                        String id = line.substring(prefix.length()).replace("=", "").trim();
+                        return (id.isEmpty() ? null : id);
+                    }
+                }
+            }
+            catch (IOException e) {
+                // Origin is informational only
+            }
+        }
+        return null;
+    }
+
+    private static Path localRepository() {
+        return new File(SettingsReader.read().getLocalRepository().path()).toPath()
+                .toAbsolutePath().normalize();
+    }
+
+    private static String coordinates(List<LockedArtifact> locked) {
+        return locked.stream().map(l -> l.group + ":" + l.artifact + ":" + l.version).distinct()
+                .collect(Collectors.joining("\n  "));
+    }
+
+    /**
+     * Checksums of local repository files recorded with their size and modification time; files
+     * are only hashed again once either changed. Unlike the lock this is specific to the machine,
+     * so it lives next to the resolution cache.
+     */
+    private static class Checksums {
+
+        private final File file;
+        private final Map<String, Checksum> entries;
+        private boolean changed = false;
+
+        private Checksums(File file, Map<String, Checksum> entries) {
+            this.file = file;
+            this.entries = entries;
+        }
+
+        private static Checksums read() {
+            File file = new File(DependencyResolutionCache.cacheRoot().getParentFile(),
+                    "checksums.json");
+            if (file.exists()) {
+                try {
+                    return new Checksums(file, mapper.readValue(file,
+                            new TypeReference<Map<String, Checksum>>() {
+                            }));
+                }
+                catch (IOException e) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+            return new Checksums(file, new HashMap<>());
+        }
+
+        private String sha256(String path, File file) {
+            Checksum checksum = entries.get(path);
+            if (checksum == null || checksum.size != file.length()
+                    || checksum.lastModified != file.lastModified()) {
+                checksum = new Checksum();
+                checksum.size = file.length();
+                checksum.lastModified = file.lastModified();
+                checksum.checksum = ChecksumUtils.sha256(file);
+                entries.put(path, checksum);
+                changed = true;
+            }
+            return checksum.checksum;
+        }
+
+        private void write() {
+            if (!changed) {
+                return;
+            }
+            try {
+                CacheUtils.writeJson(file, entries, mapper);
+            }
+            catch (IOException e) {
+                // Files get hashed again next time
+            }
+        }
+    }
+
+    private static class Checksum {
+
+        @JsonProperty
+        private String checksum;
+
+        @JsonProperty
+        private long size;
+
+        @JsonProperty
+        private long lastModified;
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    private static class Lock {
+
+        @JsonProperty
+        private int lockfileVersion;
+
+        @JsonProperty
+        private String fingerprint;
+
+        @JsonProperty
+        private LockedArtifact artifact;
+
+        @JsonProperty
+        private List<LockedArtifact> dependencies = new ArrayList<>();
+    }
+
+    @JsonInclude(Include.NON_DEFAULT)
+    private static class LockedArtifact {
+
+        @JsonProperty
+        private String group;
+
+        @JsonProperty
+        private String artifact;
+
+        @JsonProperty
+        private String version;
+
+        @JsonProperty
+        private String extension;
+
+        @JsonProperty
+        private String scope;
+
+        @JsonProperty
+        private String classifier;
+
+        @JsonProperty
+        private boolean project;
+
+        @JsonProperty
+        private String path;
+
+        @JsonProperty
+        private String uri;
+
+        @JsonProperty
+        private String checksum;
+
+        @JsonProperty
+        private String repository;
+
+        @JsonProperty
+        private List<LockedArtifact> dependencies = new ArrayList<>();
+    }
+}
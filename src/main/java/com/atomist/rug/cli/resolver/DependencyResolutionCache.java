@@ -0,0 +1,261 @@
+package com.atomist.rug.cli.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.utils.CacheUtils;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Persistent cache of fully resolved dependency graphs stored in the local repository.
+ * <p>
+ * Entries are keyed by the coordinates of the root artifact and are only considered valid if the
+ * fingerprint of the settings, manifest and package.json still matches and all resolved files in
+ * the local repository are unchanged.
+ */
+public abstract class DependencyResolutionCache {
+
+    private static final String ENABLE_RESOLUTION_CACHE_KEY = "enable_resolution_cache";
+    private static final boolean ENABLE_RESOLUTION_CACHE = true;
+
+    // Version ranges and latest need to be re-evaluated against remote metadata every now and then
+    private static final long FLOATING_VERSION_TTL = TimeUnit.DAYS.toMillis(1);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static Optional<Resolution> read(ArtifactDescriptor artifact) {
+        if (!isEnabled() || CommandLineOptions.hasOption("update")
+                || CommandLineOptions.hasOption("resolver-report")) {
+            return Optional.empty();
+        }
+
+        File cacheFile = cacheFile(artifact);
+        if (!cacheFile.exists()) {
+            return Optional.empty();
+        }
+
+        try {
+            CachedResolution resolution = mapper.readValue(cacheFile, CachedResolution.class);
+            if (!isValid(artifact, resolution)) {
+                return Optional.empty();
+            }
+            return Optional.of(new Resolution(toArtifactDescriptor(resolution.artifact),
+                    resolution.dependencies.stream()
+                            .map(DependencyResolutionCache::toArtifactDescriptor)
+                            .collect(Collectors.toList())));
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // A corrupt cache file is as good as a missing one
+            FileUtils.deleteQuietly(cacheFile);
+            return Optional.empty();
+        }
+    }
+
+    public static void write(ArtifactDescriptor artifact, ArtifactDescriptor resolved,
+            List<ArtifactDescriptor> dependencies) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        CachedResolution resolution = new CachedResolution();
+        resolution.fingerprint = fingerprint(artifact);
+        resolution.created = System.currentTimeMillis();
+        resolution.artifact = toCachedArtifact(resolved);
+        resolution.dependencies = dependencies.stream()
+                .map(DependencyResolutionCache::toCachedArtifact).collect(Collectors.toList());
+
+        try {
+            CacheUtils.writeJson(cacheFile(artifact), resolution, mapper);
+        }
+        catch (IOException e) {
+            // The cache is an optimization only; we can always resolve again next time
+        }
+    }
+
+    public static File cacheRoot() {
+        return new File(SettingsReader.read().getLocalRepository().path(),
+                ".rug-cli" + File.separator + "resolution");
+    }
+
+    private static File cacheFile(ArtifactDescriptor artifact) {
+        StringBuilder key = new StringBuilder().append(artifact.group()).append(":")
+                .append(artifact.artifact()).append(":").append(artifact.version()).append(":")
+                .append(artifact.extension()).append(":").append(artifact.classifier());
+        if (artifact instanceof LocalArtifactDescriptor) {
+            key.append(":").append(artifact.uri());
+        }
+        key.append(":").append(CommandLineOptions.getOptionValue("requires").orElse(""));
+        return new File(cacheRoot(), ChecksumUtils.sha256(key.toString()) + ".json");
+    }
+
+    private static String fingerprint(ArtifactDescriptor artifact) {
+        return ChecksumUtils.sha256(CacheUtils.fingerprint(artifact) + "\n"
+                + SettingsReader.read().getLocalRepository().path() + "\n"
+                + CommandLineOptions.hasOption("disable-verification"));
+    }
+
+    private static boolean isEnabled() {
+        return SettingsReader.read().getConfigValue(ENABLE_RESOLUTION_CACHE_KEY,
+                ENABLE_RESOLUTION_CACHE);
+    }
+
+    private static boolean isFloatingVersion(String version) {
+        return version == null || "latest".equals(version) || version.startsWith("[")
+                || version.startsWith("(") || version.contains(",");
+    }
+
+    private static boolean isValid(ArtifactDescriptor artifact, CachedResolution resolution) {
+        if (resolution.artifact == null || resolution.dependencies == null
+                || !fingerprint(artifact).equals(resolution.fingerprint)) {
+            return false;
+        }
+        if (isFloatingVersion(artifact.version())
+                && System.currentTimeMillis() - resolution.created > FLOATING_VERSION_TTL) {
+            return false;
+        }
+        return isUnchanged(resolution.artifact)
+                && resolution.dependencies.stream().allMatch(DependencyResolutionCache::isUnchanged);
+    }
+
+    private static boolean isUnchanged(CachedArtifact artifact) {
+        if (artifact.uri != null && artifact.checksum != null) {
+            File file = new File(URI.create(artifact.uri));
+            if (!file.isFile()) {
+                return false;
+            }
+            if (file.length() != artifact.size) {
+                return false;
+            }
+            // Only pay for the checksum if the timestamp doesn't match anymore
+            if (file.lastModified() != artifact.lastModified
+                    && !ChecksumUtils.sha256(file).equals(artifact.checksum)) {
+                return false;
+            }
+        }
+        return artifact.dependencies.stream().allMatch(DependencyResolutionCache::isUnchanged);
+    }
+
+    private static ArtifactDescriptor toArtifactDescriptor(CachedArtifact cached) {
+        DefaultArtifactDescriptor artifact = new DefaultArtifactDescriptor(cached.group,
+                cached.artifact, cached.version, Extension.valueOf(cached.extension),
+                (cached.scope != null ? Scope.valueOf(cached.scope) : Scope.COMPILE),
+                cached.classifier, (cached.uri != null ? URI.create(cached.uri) : null));
+        cached.dependencies
+                .forEach(d -> artifact.dependencies().add(toArtifactDescriptor(d)));
+        return artifact;
+    }
+
+    private static CachedArtifact toCachedArtifact(ArtifactDescriptor artifact) {
+        CachedArtifact cached = new CachedArtifact();
+        cached.group = artifact.group();
+        cached.artifact = artifact.artifact();
+        cached.version = artifact.version();
+        cached.extension = artifact.extension().name();
+        cached.scope = (artifact.scope() != null ? artifact.scope().name() : null);
+        cached.classifier = artifact.classifier();
+        if (artifact.uri() != null) {
+            cached.uri = artifact.uri().toString();
+            File file = new File(artifact.uri());
+            if (file.isFile()) {
+                cached.checksum = ChecksumUtils.sha256(file);
+                cached.size = file.length();
+                cached.lastModified = file.lastModified();
+            }
+        }
+        cached.dependencies = artifact.dependencies().stream()
+                .map(DependencyResolutionCache::toCachedArtifact).collect(Collectors.toList());
+        return cached;
+    }
+
+    public static class Resolution {
+
+        private final ArtifactDescriptor artifact;
+        private final List<ArtifactDescriptor> dependencies;
+
+        public Resolution(ArtifactDescriptor artifact, List<ArtifactDescriptor> dependencies) {
+            this.artifact = artifact;
+            this.dependencies = Collections.unmodifiableList(dependencies);
+        }
+
+        public ArtifactDescriptor artifact() {
+            return artifact;
+        }
+
+        public List<ArtifactDescriptor> dependencies() {
+            return dependencies;
+        }
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    private static class CachedResolution {
+
+        @JsonProperty
+        private String fingerprint;
+
+        @JsonProperty
+        private long created;
+
+        @JsonProperty
+        private CachedArtifact artifact;
+
+        @JsonProperty
+        private List<CachedArtifact> dependencies = new ArrayList<>();
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    private static class CachedArtifact {
+
+        @JsonProperty
+        private String group;
+
+        @JsonProperty
+        private String artifact;
+
+        @JsonProperty
+        private String version;
+
+        @JsonProperty
+        private String extension;
+
+        @JsonProperty
+        private String scope;
+
+        @JsonProperty
+        private String classifier;
+
+        @JsonProperty
+        private String uri;
+
+        @JsonProperty
+        private String checksum;
+
+        @JsonProperty
+        private long size;
+
+        @JsonProperty
+        private long lastModified;
+
+        @JsonProperty
+        private List<CachedArtifact> dependencies = new ArrayList<>();
+    }
+}
@@ -3,13 +3,30 @@ package com.atomist.rug.cli.resolver;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
 import org.bouncycastle.openpgp.PGPException;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferEvent.RequestType;
+import org.eclipse.aether.transfer.TransferResource;
 import org.eclipse.aether.util.repository.ConservativeProxySelector;
 import org.eclipse.aether.util.repository.JreProxySelector;
 
@@ -20,7 +37,12 @@ import com.atomist.rug.cli.output.ProgressReporter;
 import com.atomist.rug.cli.output.ProgressReporterUtils;
 import com.atomist.rug.cli.output.ProgressReportingTransferListener;
 import com.atomist.rug.cli.output.Style;
+import com.atomist.rug.cli.resolver.LocalRepositoryLock.Lock;
+import com.atomist.rug.cli.settings.Settings;
+import com.atomist.rug.cli.settings.SettingsReader;
 import com.atomist.rug.cli.utils.CommandLineOptions;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
 import com.atomist.rug.resolver.ArtifactDescriptor;
 import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
 import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
@@ -39,6 +61,11 @@ public abstract class DependencyResolverFactory {
 
     private static final Log log = new Log(DependencyResolverFactory.class);
 
+    static final String RESOLVER_THREADS_KEY = "resolver_threads";
+    static final int RESOLVER_THREADS = 10;
+
+    private static ExecutorService executorService;
+
     public static DependencyVerifier[] verifiers() {
         if (!CommandLineOptions.hasOption("disable-verification")) {
             try {
@@ -57,15 +84,25 @@ public abstract class DependencyResolverFactory {
 
     public static DependencyResolver createDependencyResolver(ArtifactDescriptor artifact,
             ProgressReporter indicator, String... exclusions) {
-        ExecutorService executorService = Executors.newFixedThreadPool(5, r -> {
-            Thread t = Executors.defaultThreadFactory().newThread(r);
-            t.setDaemon(true);
-            return t;
-        });
+        VerificationLedger ledger = new VerificationLedger();
+        ReportingDependencyVerificationListener verificationListener = new ReportingDependencyVerificationListener(
+                ledger);
         MavenProperties properties = MavenPropertiesFactory.create(
                 CommandLineOptions.hasOption("offline"), !CommandLineOptions.hasOption("update"));
         MavenBasedDependencyResolver resolver = new MavenBasedDependencyResolver(
-                MavenPropertiesFactory.repositorySystem(), properties, executorService) {
+                MavenPropertiesFactory.repositorySystem(), properties, executorService()) {
+
+            @Override
+            public List<ArtifactDescriptor> resolveDependencies(ArtifactDescriptor artifact,
+                    DependencyVerifier... verifiers) {
+                try {
+                    return super.resolveDependencies(artifact, verifiers);
+                }
+                finally {
+                    // One write of the ledger per resolution rather than per verified jar
+                    ledger.save();
+                }
+            }
 
             @Override
             protected Dependency createDependencyRoot(ArtifactDescriptor artifact) {
@@ -99,6 +136,20 @@ public abstract class DependencyResolverFactory {
 
             @Override
             protected boolean shouldVerify(DependencyNode node, DependencyNode parent) {
+                if (!requiresVerification(node, parent)) {
+                    return false;
+                }
+                Artifact nodeArtifact = node.getArtifact();
+                if (ledger.isVerified(nodeArtifact.getGroupId(), nodeArtifact.getArtifactId(),
+                        nodeArtifact.getVersion(), nodeArtifact.getFile())) {
+                    verificationListener.cached(nodeArtifact.getGroupId(),
+                            nodeArtifact.getArtifactId(), nodeArtifact.getVersion());
+                    return false;
+                }
+                return true;
+            }
+
+            private boolean requiresVerification(DependencyNode node, DependencyNode parent) {
                 if (parent == null) {
                     return false;
                 }
@@ -118,7 +169,7 @@ public abstract class DependencyResolverFactory {
             }
         };
 
-        resolver.setTransferListener(new ProgressReportingTransferListener(indicator));
+        resolver.setTransferListener(new LockingTransferListener(indicator));
         resolver.setProxySelector(new ConservativeProxySelector(new JreProxySelector()));
         addExclusions(resolver, exclusions);
 
@@ -159,10 +210,55 @@ public abstract class DependencyResolverFactory {
                     Constants.DOT));
         }
 
-        resolver.addDependencyVerificationListener(new ReportingDependencyVerificationListener());
+        resolver.addDependencyVerificationListener(verificationListener);
         return wrapDependencyResolver(resolver, properties.getRepoLocation());
     }
 
+    /**
+     * Downloads exactly the given artifacts into the local repository without resolving any of
+     * their dependencies, e.g. to restore the files pinned by a project's rug.lock.
+     */
+    public static void downloadArtifacts(List<ArtifactDescriptor> artifacts,
+            ProgressReporter indicator) throws ArtifactResolutionException {
+        RepositorySystem system = MavenPropertiesFactory.repositorySystem();
+        DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+        session.setLocalRepositoryManager(system.newLocalRepositoryManager(session,
+                new LocalRepository(SettingsReader.read().getLocalRepository().path())));
+        session.setTransferListener(new LockingTransferListener(indicator));
+        session.setProxySelector(new ConservativeProxySelector(new JreProxySelector()));
+
+        List<RemoteRepository> repositories = MavenPropertiesFactory.remoteRepositories();
+        List<ArtifactRequest> requests = artifacts.stream()
+                .map(a -> new ArtifactRequest(new DefaultArtifact(a.group(), a.artifact(),
+                        a.classifier(), a.extension().toString().toLowerCase(), a.version()),
+                        repositories, null))
+                .collect(Collectors.toList());
+        try (Span span = Profiler.span("download locked dependencies")) {
+            system.resolveArtifacts(session, requests);
+        }
+    }
+
+    /**
+     * All resolvers share one download pool so that resolving several artifacts, e.g. with
+     * --requires or within the shell, doesn't spin up new threads every time.
+     */
+    private static synchronized ExecutorService executorService() {
+        if (executorService == null || executorService.isShutdown()) {
+            Settings settings = SettingsReader.read();
+            int threads = Math.max(1,
+                    settings.getConfigValue(RESOLVER_THREADS_KEY, RESOLVER_THREADS));
+
+            AtomicInteger count = new AtomicInteger();
+            executorService = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("Resolver Thread " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executorService;
+    }
+
     private static void addExclusions(MavenBasedDependencyResolver resolver, String... exclusions) {
         resolver.setExclusions(Arrays.asList(exclusions));
     }
@@ -187,24 +283,81 @@ public abstract class DependencyResolverFactory {
         }
     }
 
-    private static class ReportingDependencyVerificationListener
+    /**
+     * Holds the lock of each file while it gets downloaded into the local repository, so that
+     * other threads and processes never see it half-written.
+     */
+    private static class LockingTransferListener extends ProgressReportingTransferListener {
+
+        private final Map<TransferResource, Lock> locks = new ConcurrentHashMap<>();
+
+        public LockingTransferListener(ProgressReporter indicator) {
+            super(indicator);
+        }
+
+        @Override
+        public void transferInitiated(TransferEvent event) throws TransferCancelledException {
+            File file = event.getResource().getFile();
+            if (file != null && event.getRequestType() == RequestType.GET) {
+                locks.put(event.getResource(), LocalRepositoryLock.lock(file));
+            }
+            super.transferInitiated(event);
+        }
+
+        @Override
+        public void transferFailed(TransferEvent event) {
+            try {
+                super.transferFailed(event);
+            }
+            finally {
+                unlock(event);
+            }
+        }
+
+        @Override
+        public void transferSucceeded(TransferEvent event) {
+            try {
+                super.transferSucceeded(event);
+            }
+            finally {
+                unlock(event);
+            }
+        }
+
+        private void unlock(TransferEvent event) {
+            Lock lock = locks.remove(event.getResource());
+            if (lock != null) {
+                lock.close();
+            }
+        }
+    }
+
+    /**
+     * Reports verifications of jars; several of them can be in flight at the same time.
+     */
+    static class ReportingDependencyVerificationListener
             implements DependencyVerificationListener {
 
         private Log log = new Log(ReportingDependencyVerificationListener.class);
-        private StringBuilder sb;
+        private VerificationLedger ledger;
+        private Map<String, Verification> verifications = new ConcurrentHashMap<>();
+
+        public ReportingDependencyVerificationListener(VerificationLedger ledger) {
+            this.ledger = ledger;
+        }
 
         @Override
         public void starting(String group, String artifact, String version) {
-            sb = new StringBuilder();
-            sb.append(String.format("  Verifying integrity of %s:%s (%s) ", group, artifact,
-                    version));
+            verifications.put(key(group, artifact, version), new Verification(String.format(
+                    "  Verifying integrity of %s:%s (%s) ", group, artifact, version)));
         }
 
         @Override
         public void succeeded(String group, String artifact, String version) {
-            sb.append(Style.green("succeeded"));
+            String message = finish(group, artifact, version, Style.green("succeeded"));
+            ledger.verified(group, artifact, version);
             if (CommandLineOptions.hasOption("noisy")) {
-                log.info(sb.toString());
+                log.info(message);
             }
             else {
                 ProgressReporterUtils.detail(String.format("%s:%s (%s%sverified)", group, artifact,
@@ -212,10 +365,44 @@ public abstract class DependencyResolverFactory {
             }
         }
 
+        public void cached(String group, String artifact, String version) {
+            if (CommandLineOptions.hasOption("noisy")) {
+                log.info(String.format("  Verifying integrity of %s:%s (%s) %s", group, artifact,
+                        version, Style.green("cached")));
+            }
+            else {
+                ProgressReporterUtils.detail(String.format("%s:%s (%s%sverified%scached)", group,
+                        artifact, version, Constants.DOT, Constants.DOT));
+            }
+        }
+
         @Override
         public void failed(String group, String artifact, String version, Exception e) {
-            sb.append(Style.red("failed"));
-            log.info(sb.toString());
+            log.info(finish(group, artifact, version, Style.red("failed")));
+        }
+
+        private String finish(String group, String artifact, String version, String outcome) {
+            Verification verification = verifications.remove(key(group, artifact, version));
+            if (verification == null) {
+                return String.format("  Verifying integrity of %s:%s (%s) %s", group, artifact,
+                        version, outcome);
+            }
+            verification.span.close();
+            return verification.message + outcome;
+        }
+
+        private static String key(String group, String artifact, String version) {
+            return group + ":" + artifact + ":" + version;
+        }
+
+        private static class Verification {
+
+            private final Span span = Profiler.span("verify");
+            private final String message;
+
+            public Verification(String message) {
+                this.message = message;
+            }
         }
     }
 }
@@ -0,0 +1,131 @@
+package com.atomist.rug.cli.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.IOUtils;
+
+import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.output.ProgressReporterUtils;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+
+/**
+ * Coordinates access to the local repository between threads and between <code>rug</code>
+ * processes sharing the same repository.
+ * <p>
+ * Every file of the local repository, and a few named resources like the archive catalog, has its
+ * own lock backed by a lock file under <code>.rug-cli/locks</code>. Whoever holds the lock of a
+ * file is the only one downloading or installing it; everybody else waits until the file is
+ * complete. Unrelated files never wait for each other.
+ */
+public abstract class LocalRepositoryLock {
+
+    public static <T> T withLock(String group, String artifact, LockedOperation<T> operation) {
+        try (Lock lock = lock(group + ":" + artifact)) {
+            return run(operation);
+        }
+    }
+
+    public static <T> T withLock(File file, LockedOperation<T> operation) {
+        try (Lock lock = lock(file)) {
+            return run(operation);
+        }
+    }
+
+    /**
+     * Locks the given file until the returned {@link Lock} is closed; it needs to be closed by the
+     * same thread.
+     */
+    public static Lock lock(File file) {
+        return lock(file.getAbsoluteFile().toPath().normalize().toString());
+    }
+
+    private static Lock lock(String key) {
+        ReentrantLock lock = LocalRepositoryLocks.lock(key);
+        lock.lock();
+        // The file lock is held on behalf of the whole JVM; only take it on first entry
+        if (lock.getHoldCount() > 1) {
+            return new Lock(lock, null, null);
+        }
+        FileChannel channel = null;
+        try {
+            channel = channel(key);
+            return new Lock(lock, channel, lock(channel));
+        }
+        catch (IOException e) {
+            IOUtils.closeQuietly(channel);
+            lock.unlock();
+            throw new RunnerException(e);
+        }
+    }
+
+    private static <T> T run(LockedOperation<T> operation) {
+        try {
+            return operation.run();
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new RunnerException(e);
+        }
+    }
+
+    private static FileLock lock(FileChannel channel) throws IOException {
+        FileLock fileLock = channel.tryLock();
+        if (fileLock == null) {
+            ProgressReporterUtils.detail("waiting for other process");
+            fileLock = channel.lock();
+        }
+        return fileLock;
+    }
+
+    @SuppressWarnings("resource")
+    private static FileChannel channel(String key) throws IOException {
+        File lockFile = new File(lockRoot(), ChecksumUtils.sha256(key) + ".lock");
+        lockFile.getParentFile().mkdirs();
+        return new RandomAccessFile(lockFile, "rw").getChannel();
+    }
+
+    private static File lockRoot() {
+        return new File(DependencyResolutionCache.cacheRoot().getParentFile(), "locks");
+    }
+
+    public static class Lock implements AutoCloseable {
+
+        private final ReentrantLock lock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private Lock(ReentrantLock lock, FileChannel channel, FileLock fileLock) {
+            this.lock = lock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (fileLock != null) {
+                    fileLock.release();
+                }
+            }
+            catch (IOException e) {
+                // Closing the channel releases the file lock as well
+            }
+            finally {
+                IOUtils.closeQuietly(channel);
+                lock.unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface LockedOperation<T> {
+        T run() throws Exception;
+    }
+}
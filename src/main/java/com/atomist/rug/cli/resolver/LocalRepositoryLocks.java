@@ -0,0 +1,20 @@
+package com.atomist.rug.cli.resolver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process locks of {@link LocalRepositoryLock}, one per locked file or resource. This class is
+ * shared by all class loaders so that only one thread of the JVM ever holds the file lock of a
+ * key; locking the same file twice from one JVM fails with an
+ * <code>OverlappingFileLockException</code>.
+ */
+public abstract class LocalRepositoryLocks {
+
+    private static final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public static ReentrantLock lock(String key) {
+        return locks.computeIfAbsent(key, k -> new ReentrantLock());
+    }
+}
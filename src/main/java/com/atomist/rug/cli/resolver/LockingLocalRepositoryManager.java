@@ -0,0 +1,97 @@
+package com.atomist.rug.cli.resolver;
+
+import java.io.File;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import com.atomist.rug.cli.resolver.LocalRepositoryLock.Lock;
+
+/**
+ * {@link LocalRepositoryManager} that waits for downloads of the same file by other threads and
+ * processes before reporting an artifact as missing.
+ * <p>
+ * Downloads hold the lock of their target file while they are in flight and move the completed
+ * file into place before releasing it. An artifact that is missing at first but appears while
+ * waiting for that lock has just been downloaded by someone else and can be used right away
+ * instead of being downloaded again.
+ */
+class LockingLocalRepositoryManager implements LocalRepositoryManager {
+
+    private final LocalRepositoryManager delegate;
+
+    LockingLocalRepositoryManager(LocalRepositoryManager delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LocalArtifactResult find(RepositorySystemSession session, LocalArtifactRequest request) {
+        LocalArtifactResult result = delegate.find(session, request);
+        if (result.isAvailable()) {
+            return result;
+        }
+
+        File file = new File(getRepository().getBasedir(),
+                getPathForLocalArtifact(request.getArtifact()));
+        boolean existed = file.exists();
+        try (Lock lock = LocalRepositoryLock.lock(file)) {
+            // Only waits while somebody else is downloading the file
+        }
+        if (!existed && file.isFile()) {
+            return new LocalArtifactResult(request).setFile(file).setAvailable(true);
+        }
+        return result;
+    }
+
+    @Override
+    public void add(RepositorySystemSession session, LocalArtifactRegistration request) {
+        delegate.add(session, request);
+    }
+
+    @Override
+    public LocalMetadataResult find(RepositorySystemSession session, LocalMetadataRequest request) {
+        return delegate.find(session, request);
+    }
+
+    @Override
+    public void add(RepositorySystemSession session, LocalMetadataRegistration request) {
+        delegate.add(session, request);
+    }
+
+    @Override
+    public LocalRepository getRepository() {
+        return delegate.getRepository();
+    }
+
+    @Override
+    public String getPathForLocalArtifact(Artifact artifact) {
+        return delegate.getPathForLocalArtifact(artifact);
+    }
+
+    @Override
+    public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository,
+            String context) {
+        return delegate.getPathForRemoteArtifact(artifact, repository, context);
+    }
+
+    @Override
+    public String getPathForLocalMetadata(Metadata metadata) {
+        return delegate.getPathForLocalMetadata(metadata);
+    }
+
+    @Override
+    public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository,
+            String context) {
+        return delegate.getPathForRemoteMetadata(metadata, repository, context);
+    }
+}
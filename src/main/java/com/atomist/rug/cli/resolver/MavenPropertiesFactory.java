@@ -1,14 +1,24 @@
 package com.atomist.rug.cli.resolver;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.util.repository.AuthenticationBuilder;
 
 import com.atomist.rug.cli.settings.Settings;
 import com.atomist.rug.cli.settings.Settings.RemoteRepository;
 import com.atomist.rug.cli.settings.SettingsReader;
 import com.atomist.rug.cli.utils.StringUtils;
+import com.atomist.rug.cli.version.VersionUtils;
 import com.atomist.rug.resolver.maven.MavenConfiguration;
 import com.atomist.rug.resolver.maven.MavenProperties;
 import com.atomist.rug.resolver.maven.MavenProperties.Auth;
@@ -16,6 +26,13 @@ import com.atomist.rug.resolver.maven.MavenProperties.Repo;
 
 abstract class MavenPropertiesFactory {
 
+    private static final String RESOLVER_CONNECTIONS_PER_HOST_KEY = "resolver_connections_per_host";
+    private static final String RESOLVER_CONNECT_TIMEOUT_KEY = "resolver_connect_timeout";
+    private static final int RESOLVER_CONNECT_TIMEOUT = 10000;
+    private static final String RESOLVER_REQUEST_TIMEOUT_KEY = "resolver_request_timeout";
+    private static final int RESOLVER_REQUEST_TIMEOUT = 60000;
+    private static final String CONNECTOR_THREADS_PROPERTY = "aether.connector.basic.threads";
+
     public static MavenProperties create(boolean offline, boolean cacheMetadata) {
         MavenProperties properties = new MavenProperties();
         properties.setOffline(offline);
@@ -46,7 +63,77 @@ abstract class MavenPropertiesFactory {
         return properties;
     }
 
+    public static List<org.eclipse.aether.repository.RemoteRepository> remoteRepositories() {
+        return SettingsReader.read().getRemoteRepositories().entrySet().stream().map(e -> {
+            RemoteRepository r = e.getValue();
+
+            org.eclipse.aether.repository.RemoteRepository.Builder builder = new org.eclipse.aether.repository.RemoteRepository.Builder(
+                    e.getKey(), "default", StringUtils.expandEnvironmentVars(r.getUrl()));
+            if (r.getAuthentication() != null) {
+                builder.setAuthentication(new AuthenticationBuilder()
+                        .addUsername(StringUtils
+                                .expandEnvironmentVars(r.getAuthentication().getUsername()))
+                        .addPassword(StringUtils
+                                .expandEnvironmentVars(r.getAuthentication().getPassword()))
+                        .build());
+            }
+            return builder.build();
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * The {@link RepositorySystem} of the resolver. Every session handed to it gets the connection
+     * settings from <code>cli.yml</code>, and local repository managers it creates wait for
+     * concurrent downloads of an artifact instead of downloading it again.
+     */
     public static RepositorySystem repositorySystem() {
-        return new MavenConfiguration().repositorySystem();
+        RepositorySystem system = new MavenConfiguration().repositorySystem();
+        Map<String, Object> config = connectionConfig();
+        return (RepositorySystem) Proxy.newProxyInstance(RepositorySystem.class.getClassLoader(),
+                new Class<?>[] { RepositorySystem.class }, (proxy, method, args) -> {
+                    if (args != null) {
+                        for (int i = 0; i < args.length; i++) {
+                            if (args[i] instanceof RepositorySystemSession) {
+                                args[i] = configure((RepositorySystemSession) args[i], config);
+                            }
+                        }
+                    }
+                    try {
+                        Object result = method.invoke(system, args);
+                        if (result instanceof LocalRepositoryManager) {
+                            return new LockingLocalRepositoryManager(
+                                    (LocalRepositoryManager) result);
+                        }
+                        return result;
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    private static Map<String, Object> connectionConfig() {
+        Settings settings = SettingsReader.read();
+        int threads = settings.getConfigValue(DependencyResolverFactory.RESOLVER_THREADS_KEY,
+                DependencyResolverFactory.RESOLVER_THREADS);
+        Map<String, Object> config = new HashMap<>();
+        // Parallel downloads per remote repository
+        config.put(CONNECTOR_THREADS_PROPERTY, Math.max(1,
+                settings.getConfigValue(RESOLVER_CONNECTIONS_PER_HOST_KEY, threads)));
+        config.put(ConfigurationProperties.CONNECT_TIMEOUT, Math.max(0,
+                settings.getConfigValue(RESOLVER_CONNECT_TIMEOUT_KEY, RESOLVER_CONNECT_TIMEOUT)));
+        config.put(ConfigurationProperties.REQUEST_TIMEOUT, Math.max(0,
+                settings.getConfigValue(RESOLVER_REQUEST_TIMEOUT_KEY, RESOLVER_REQUEST_TIMEOUT)));
+        config.put(ConfigurationProperties.USER_AGENT,
+                "rug-cli/" + VersionUtils.readVersion().orElse("0.0.0"));
+        return config;
+    }
+
+    private static RepositorySystemSession configure(RepositorySystemSession session,
+            Map<String, Object> config) {
+        // The resolver owns its session; hand the repository system a configured copy
+        DefaultRepositorySystemSession configured = new DefaultRepositorySystemSession(session);
+        config.forEach(configured::setConfigProperty);
+        return configured;
     }
 }
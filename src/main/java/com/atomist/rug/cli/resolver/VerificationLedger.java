@@ -0,0 +1,151 @@
+package com.atomist.rug.cli.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.utils.CacheUtils;
+import com.atomist.rug.cli.utils.ChecksumUtils;
+import com.atomist.rug.cli.version.VersionUtils;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Persistent record of jars that passed signature verification. A jar only counts as verified as
+ * long as it is unchanged and it was verified by the same CLI version, i.e. with the same set of
+ * trusted keys. Size and modification time tell whether a jar is unchanged; only if the latter
+ * differs is its checksum compared.
+ * <p>
+ * New verifications are kept in memory until {@link #save()} merges them into the ledger file.
+ */
+class VerificationLedger {
+
+    private static final String ENABLE_VERIFICATION_CACHE_KEY = "enable_verification_cache";
+    private static final boolean ENABLE_VERIFICATION_CACHE = true;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final File ledgerFile;
+    private final String version;
+    private final Map<String, VerifiedArtifact> entries;
+    private final Map<String, File> pending = new HashMap<>();
+    private final Map<String, VerifiedArtifact> updated = new HashMap<>();
+
+    VerificationLedger() {
+        this.ledgerFile = new File(DependencyResolutionCache.cacheRoot().getParentFile(),
+                "verification.json");
+        this.version = VersionUtils.readVersion().orElse("0.0.0");
+        this.entries = read(ledgerFile);
+    }
+
+    /**
+     * Returns true if the given file is known to be verified. Otherwise the file is remembered so
+     * that a successful verification of the coordinates can be recorded.
+     */
+    synchronized boolean isVerified(String group, String artifact, String version, File file) {
+        if (!isEnabled() || file == null || !file.isFile()) {
+            return false;
+        }
+        String key = key(group, artifact, version);
+        VerifiedArtifact entry = entries.get(key);
+        if (entry != null && this.version.equals(entry.version) && file.length() == entry.size) {
+            if (file.lastModified() == entry.lastModified) {
+                return true;
+            }
+            // Touched, e.g. by another download, but possibly still the same jar
+            if (ChecksumUtils.sha256(file).equals(entry.checksum)) {
+                entry.lastModified = file.lastModified();
+                updated.put(key, entry);
+                return true;
+            }
+        }
+        pending.put(key, file);
+        return false;
+    }
+
+    synchronized void verified(String group, String artifact, String version) {
+        File file = pending.remove(key(group, artifact, version));
+        if (file == null || !isEnabled()) {
+            return;
+        }
+        VerifiedArtifact entry = new VerifiedArtifact();
+        entry.checksum = ChecksumUtils.sha256(file);
+        entry.size = file.length();
+        entry.lastModified = file.lastModified();
+        entry.version = this.version;
+        entries.put(key(group, artifact, version), entry);
+        updated.put(key(group, artifact, version), entry);
+    }
+
+    /**
+     * Writes the verifications recorded since the last save. Entries other processes added to the
+     * ledger file in the meantime are kept.
+     */
+    synchronized void save() {
+        if (updated.isEmpty() || !isEnabled()) {
+            return;
+        }
+        LocalRepositoryLock.withLock(".rug-cli", "verification", () -> {
+            Map<String, VerifiedArtifact> merged = read(ledgerFile);
+            merged.putAll(updated);
+            write(merged);
+            entries.putAll(merged);
+            return null;
+        });
+        updated.clear();
+    }
+
+    private void write(Map<String, VerifiedArtifact> entries) {
+        try {
+            CacheUtils.writeJson(ledgerFile, entries, mapper);
+        }
+        catch (IOException e) {
+            // Jars will get verified again next time
+        }
+    }
+
+    private static Map<String, VerifiedArtifact> read(File ledgerFile) {
+        if (isEnabled() && ledgerFile.exists()) {
+            try {
+                return mapper.readValue(ledgerFile,
+                        new TypeReference<Map<String, VerifiedArtifact>>() {
+                        });
+            }
+            catch (IOException e) {
+                FileUtils.deleteQuietly(ledgerFile);
+            }
+        }
+        return new HashMap<>();
+    }
+
+    private static String key(String group, String artifact, String version) {
+        return group + ":" + artifact + ":" + version;
+    }
+
+    private static boolean isEnabled() {
+        return SettingsReader.read().getConfigValue(ENABLE_VERIFICATION_CACHE_KEY,
+                ENABLE_VERIFICATION_CACHE);
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class VerifiedArtifact {
+
+        @JsonProperty
+        private String checksum;
+
+        @JsonProperty
+        private long size;
+
+        @JsonProperty
+        private long lastModified;
+
+        @JsonProperty
+        private String version;
+    }
+}
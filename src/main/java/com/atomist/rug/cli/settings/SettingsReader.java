@@ -5,8 +5,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
 import org.yaml.snakeyaml.Yaml;
@@ -15,8 +22,11 @@ import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.Log;
 import com.atomist.rug.cli.settings.Settings.Authentication;
 import com.atomist.rug.cli.settings.Settings.RemoteRepository;
+import com.atomist.rug.cli.utils.BackgroundTasks;
 import com.atomist.rug.cli.utils.CommandLineOptions;
 import com.atomist.rug.cli.utils.FileUtils;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.Profiler.Span;
 import com.atomist.rug.cli.utils.StringUtils;
 
 public abstract class SettingsReader {
@@ -26,14 +36,46 @@ public abstract class SettingsReader {
 
     private static Log log = new Log(SettingsReader.class);
 
+    // Parsed YAML per settings file; an entry is only reused while the file is unchanged
+    private static final Map<String, ParsedFile> parsedFiles = new ConcurrentHashMap<>();
+
+    // Later reads are served from the parsed files; only the first one gets a span
+    private static final AtomicBoolean profiled = new AtomicBoolean();
+
     public static Settings read() {
+        if (profiled.compareAndSet(false, true)) {
+            try (Span span = Profiler.span("settings read")) {
+                return load();
+            }
+        }
+        return load();
+    }
+
+    /**
+     * Starts parsing the settings files in the background. The next {@link #read()} joins on the
+     * parsing instead of doing it again.
+     */
+    public static void preload() {
+        File settingsFile = settingsFile();
+        Optional<File> projectSettingsFile = projectSettingsFile();
+        BackgroundTasks.submit("settings read", () -> {
+            if (settingsFile.exists()) {
+                parse(settingsFile);
+            }
+            if (projectSettingsFile.isPresent()) {
+                parse(projectSettingsFile.get());
+            }
+            return null;
+        });
+    }
+
+    private static Settings load() {
         File settingsFile = new File(PATH);
         if (!CommandLineOptions.hasOption("settings") && !settingsFile.exists()) {
             createDefaultSettingsFile(settingsFile);
         }
         else if (CommandLineOptions.hasOption("settings")) {
-            settingsFile = new File(StringUtils
-                    .expandEnvironmentVars(CommandLineOptions.getOptionValue("settings").get()));
+            settingsFile = settingsFile();
         }
 
         Settings settings = settingsFromFile(settingsFile);
@@ -44,13 +86,10 @@ public abstract class SettingsReader {
     @SuppressWarnings("unchecked")
     public static Settings settingsFromFile(File settingsFile) {
         try {
-            Yaml yaml = new Yaml();
-            Map<String, Object> data = (Map<String, Object>) yaml
-                    .load(new FileInputStream(settingsFile));
+            Map<String, Object> data = parse(settingsFile);
 
             Settings settings = new Settings();
-            
-            
+
             // For the next releases we keep the old '-' keys around for reading
             if (data.containsKey("local-repository")
                     && ((Map<String, Object>) data.get("local-repository")).containsKey("path")) {
@@ -102,7 +141,8 @@ public abstract class SettingsReader {
 
             if (data.containsKey("configuration")) {
                 Map<String, Object> config = (Map<String, Object>) data.get("configuration");
-                settings.setConfig(config);
+                // The parsed data is shared; hand out a copy that can be changed
+                settings.setConfig(new HashMap<>(config));
             }
 
             return settings;
@@ -113,6 +153,60 @@ public abstract class SettingsReader {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(File settingsFile) throws FileNotFoundException {
+        String stamp = settingsFile.lastModified() + ":" + settingsFile.length();
+        ParsedFile parsedFile = parsedFiles.compute(settingsFile.getAbsolutePath(),
+                (k, v) -> (v != null && v.stamp.equals(stamp) ? v : new ParsedFile(stamp, () -> {
+                    try (InputStream is = new FileInputStream(settingsFile)) {
+                        return (Map<String, Object>) new Yaml().load(is);
+                    }
+                })));
+        // Runs the parsing unless another thread already did or currently does
+        parsedFile.data.run();
+        try {
+            return parsedFile.data.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SettingsException(String.format("Error parsing configuration at '%s'",
+                    settingsFile.getAbsolutePath()), e);
+        }
+        catch (ExecutionException e) {
+            parsedFiles.remove(settingsFile.getAbsolutePath(), parsedFile);
+            if (e.getCause() instanceof FileNotFoundException) {
+                throw (FileNotFoundException) e.getCause();
+            }
+            else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SettingsException(String.format("Error parsing configuration at '%s'",
+                    settingsFile.getAbsolutePath()), e);
+        }
+    }
+
+    private static File settingsFile() {
+        if (CommandLineOptions.hasOption("settings")) {
+            return new File(StringUtils.expandEnvironmentVars(
+                    CommandLineOptions.getOptionValue("settings").get()));
+        }
+        return new File(PATH);
+    }
+
+    private static Optional<File> projectSettingsFile() {
+        if (!CommandLineOptions.hasOption("settings")) {
+            Optional<File> userDir = FileUtils.getWorkingDirectory();
+            if (userDir.isPresent() && userDir.get().exists()) {
+                File projectSettingsFile = new File(userDir.get(),
+                        Constants.ATOMIST_ROOT + File.separator + Constants.CLI_CONFIG_NAME);
+                if (projectSettingsFile.exists()) {
+                    return Optional.of(projectSettingsFile);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
     private static void createDefaultSettingsFile(File settingsFile) {
         try {
             if (!settingsFile.getParentFile().exists()) {
@@ -130,18 +224,21 @@ public abstract class SettingsReader {
     }
 
     private static void readProjectSettings(Settings settings) {
-        if (!CommandLineOptions.hasOption("settings")) {
-            Settings projectSettings = null;
-            Optional<File> userDir = FileUtils.getWorkingDirectory();
-            if (userDir.isPresent() && userDir.get().exists()) {
-                File projetSettingsFile = new File(userDir.get(),
-                        Constants.ATOMIST_ROOT + File.separator + Constants.CLI_CONFIG_NAME);
-                if (projetSettingsFile.exists()) {
-                    projectSettings = settingsFromFile(projetSettingsFile);
-                    // now merge both files
-                    settings.override(projectSettings);
-                }
-            }
+        Optional<File> projectSettingsFile = projectSettingsFile();
+        if (projectSettingsFile.isPresent()) {
+            // now merge both files
+            settings.override(settingsFromFile(projectSettingsFile.get()));
+        }
+    }
+
+    private static class ParsedFile {
+
+        private final String stamp;
+        private final FutureTask<Map<String, Object>> data;
+
+        public ParsedFile(String stamp, Callable<Map<String, Object>> parser) {
+            this.stamp = stamp;
+            this.data = new FutureTask<>(parser);
         }
     }
 }
@@ -0,0 +1,64 @@
+package com.atomist.rug.cli.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.atomist.rug.cli.RunnerException;
+import com.atomist.rug.cli.utils.Profiler.Span;
+
+/**
+ * Runs independent pieces of work off the main thread so that they overlap with each other. Each
+ * task needs to be joined explicitly before its result is used.
+ */
+public abstract class BackgroundTasks {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "rug-background");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Submits the task to run with the context class loader of the calling thread.
+     */
+    public static <T> Future<T> submit(String name, Callable<T> task) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return executor.submit(() -> {
+            Thread thread = Thread.currentThread();
+            ClassLoader old = thread.getContextClassLoader();
+            thread.setContextClassLoader(classLoader);
+            try (Span span = Profiler.span(name)) {
+                return task.call();
+            }
+            finally {
+                thread.setContextClassLoader(old);
+            }
+        });
+    }
+
+    /**
+     * Waits for the task to finish; a failure of the task is thrown on the joining thread.
+     */
+    public static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RunnerException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RunnerException(cause);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.atomist.rug.cli.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.settings.SettingsReader;
+import com.atomist.rug.cli.version.VersionUtils;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Helpers for the files the CLI keeps next to the local repository and in projects: atomic writes
+ * and fingerprints of what determines a dependency graph.
+ */
+public abstract class CacheUtils {
+
+    /**
+     * Writes the given content into a temporary file next to the target and moves it over the
+     * target, so that readers never see a partially written file.
+     */
+    public static void write(File file, byte[] content) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tempFile = File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        try {
+            Files.write(tempFile.toPath(), content);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    public static void writeJson(File file, Object value, ObjectMapper mapper)
+            throws IOException {
+        write(file, mapper.writeValueAsBytes(value));
+    }
+
+    /**
+     * Fingerprint of the CLI version, the configured remote repositories and, for local projects,
+     * the declared dependencies in manifest.yml and package.json.
+     */
+    public static String fingerprint(ArtifactDescriptor artifact) {
+        StringBuilder fingerprint = new StringBuilder()
+                .append(VersionUtils.readVersion().orElse("0.0.0")).append("\n");
+        SettingsReader.read().getRemoteRepositories().entrySet().stream()
+                .sorted((r1, r2) -> r1.getKey().compareTo(r2.getKey()))
+                .forEach(r -> fingerprint.append(r.getKey()).append("=")
+                        .append(r.getValue().getUrl()).append("\n"));
+        if (artifact instanceof LocalArtifactDescriptor) {
+            File root = new File(new File(artifact.uri()), Constants.ATOMIST_ROOT);
+            fingerprint.append(contentOf(new File(root, "manifest.yml")));
+            fingerprint.append(contentOf(new File(root, "package.json")));
+        }
+        return ChecksumUtils.sha256(fingerprint.toString());
+    }
+
+    private static String contentOf(File file) {
+        if (file.exists()) {
+            try {
+                return ChecksumUtils.sha256(org.apache.commons.io.FileUtils
+                        .readFileToString(file, StandardCharsets.UTF_8)) + "\n";
+            }
+            catch (IOException e) {
+                // Fall through and treat as missing file
+            }
+        }
+        return "-\n";
+    }
+}
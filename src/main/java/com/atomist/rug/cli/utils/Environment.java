@@ -0,0 +1,29 @@
+package com.atomist.rug.cli.utils;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Environment variables of the current command. Usually that is the environment of this JVM; the
+ * daemon replaces it with the environment of the client for the duration of each request, so that
+ * one client never sees variables of the daemon or of another client.
+ * <p>
+ * This class is shared with the rug classloader so that commands see the same environment.
+ */
+public abstract class Environment {
+
+    private static volatile Map<String, String> environment = null;
+
+    public static String get(String name) {
+        Map<String, String> env = environment;
+        return (env != null ? env.get(name) : System.getenv(name));
+    }
+
+    /**
+     * Replace the environment with the given variables; <code>null</code> restores the
+     * environment of this JVM.
+     */
+    public static void set(Map<String, String> env) {
+        environment = (env != null ? Collections.unmodifiableMap(env) : null);
+    }
+}
@@ -0,0 +1,174 @@
+package com.atomist.rug.cli.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+import com.atomist.rug.cli.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records nested spans for the phases of a <code>rug</code> invocation when running with
+ * <code>--profile</code>. Spans can be exported as a Chrome trace file (chrome://tracing) and
+ * summarized per phase.
+ */
+public abstract class Profiler {
+
+    private static final Span NOOP = new Span(null, 0, 0, null);
+
+    private static final ThreadLocal<Deque<Span>> stack = ThreadLocal
+            .withInitial(ConcurrentLinkedDeque::new);
+    private static final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+
+    private static volatile boolean enabled = false;
+    private static long origin;
+
+    /**
+     * Starts recording. Everything between JVM start and this call is recorded as startup.
+     */
+    public static synchronized void enable() {
+        if (enabled) {
+            return;
+        }
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        origin = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(uptime);
+        enabled = true;
+        Span startup = new Span("startup", origin, 0, null);
+        startup.close();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stops recording and drops all recorded spans.
+     */
+    public static synchronized void reset() {
+        enabled = false;
+        spans.clear();
+        stack.remove();
+    }
+
+    /**
+     * Opens a new span on the current thread. Spans need to get closed; preferably in a
+     * try-with-resources block.
+     */
+    public static Span span(String name) {
+        if (!enabled) {
+            return NOOP;
+        }
+        Deque<Span> current = stack.get();
+        Span span = new Span(name, System.nanoTime(), current.size(), current);
+        current.push(span);
+        return span;
+    }
+
+    /**
+     * Writes all spans in Chrome's trace event format and returns the file.
+     */
+    public static File writeTrace() throws IOException {
+        File traceFile = new File(org.apache.commons.io.FileUtils.getUserDirectoryPath(),
+                Constants.ATOMIST_ROOT + File.separator + "profiles" + File.separator + "rug-"
+                        + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        traceFile.getParentFile().mkdirs();
+
+        List<Map<String, Object>> events = new ArrayList<>();
+        completed().forEach(s -> {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("name", s.name);
+            event.put("cat", "rug");
+            event.put("ph", "X");
+            event.put("ts", TimeUnit.NANOSECONDS.toMicros(s.start - origin));
+            event.put("dur", TimeUnit.NANOSECONDS.toMicros(s.end - s.start));
+            event.put("pid", 1);
+            event.put("tid", s.thread);
+            events.add(event);
+        });
+        Map<String, Object> trace = new LinkedHashMap<>();
+        trace.put("traceEvents", events);
+        trace.put("displayTimeUnit", "ms");
+        new ObjectMapper().writeValue(traceFile, trace);
+        return traceFile;
+    }
+
+    /**
+     * Returns total duration and number of occurrences per phase in the order the phases were
+     * first entered; nested phases are indented.
+     */
+    public static List<String[]> summary() {
+        Map<String, long[]> phases = new LinkedHashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        completed().forEach(s -> {
+            long[] phase = phases.computeIfAbsent(s.name, k -> new long[2]);
+            phase[0] += (s.end - s.start);
+            phase[1]++;
+            depths.putIfAbsent(s.name, s.depth);
+        });
+
+        List<String[]> summary = new ArrayList<>();
+        phases.forEach((name, phase) -> {
+            StringBuilder indent = new StringBuilder();
+            for (int i = 0; i < depths.get(name); i++) {
+                indent.append("  ");
+            }
+            summary.add(new String[] { indent + name, String.valueOf(phase[1]),
+                    String.format("%d ms", TimeUnit.NANOSECONDS.toMillis(phase[0])) });
+        });
+        return summary;
+    }
+
+    private static List<Span> completed() {
+        List<Span> completed;
+        synchronized (spans) {
+            completed = new ArrayList<>(spans);
+        }
+        completed.sort((s1, s2) -> Long.compare(s1.start, s2.start));
+        return completed;
+    }
+
+    public static class Span implements AutoCloseable {
+
+        private final String name;
+        private final long start;
+        private final int depth;
+        private final long thread;
+        private final Deque<Span> owner;
+        private long end = -1;
+
+        private Span(String name, long start, int depth, Deque<Span> owner) {
+            this.name = name;
+            this.start = start;
+            this.depth = depth;
+            this.owner = owner;
+            this.thread = Thread.currentThread().getId();
+        }
+
+        /**
+         * Closes the span; it is safe to close a span from a different thread than the one that
+         * opened it.
+         */
+        @Override
+        public void close() {
+            if (name == null || end >= 0) {
+                return;
+            }
+            end = System.nanoTime();
+            if (owner != null) {
+                owner.remove(this);
+            }
+            spans.add(this);
+        }
+    }
+}
@@ -8,7 +8,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import org.springframework.util.SystemPropertyUtils;
+import org.springframework.util.PropertyPlaceholderHelper;
 
 import com.atomist.rug.cli.Constants;
 import com.atomist.rug.cli.Log;
@@ -20,6 +20,9 @@ public abstract class StringUtils {
 
     private static final Log log = new Log(StringUtils.class);
 
+    private static final PropertyPlaceholderHelper placeholders = new PropertyPlaceholderHelper(
+            "${", "}", ":", true);
+
     public static void printClosestMatch(String name, ArtifactDescriptor artifact,
             Seq<String> nameOptions) {
         printClosestMatch(name, artifact, asJavaCollection(nameOptions));
@@ -68,7 +71,11 @@ public abstract class StringUtils {
         if (text == null) {
             return text;
         }
-        return SystemPropertyUtils.resolvePlaceholders(text);
+        // Like SystemPropertyUtils but with the environment of the current command
+        return placeholders.replacePlaceholders(text, name -> {
+            String value = System.getProperty(name);
+            return (value != null ? value : Environment.get(name));
+        });
     }
 
     public static String stripName(String name, ArtifactDescriptor artifact) {
@@ -30,7 +30,7 @@ import com.github.tomaslanger.chalk.Chalk;
 
 public abstract class AbstractCommandTest {
     
-    private static File cliYml = new File(SystemUtils.getUserDir(), "target/test-classes/cli.yml");
+    protected static File cliYml = new File(SystemUtils.getUserDir(), "target/test-classes/cli.yml");
 
     private static String startingUserDir = getCWD();
 
@@ -0,0 +1,118 @@
+package com.atomist.rug.cli;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import com.atomist.rug.cli.utils.CommandLineOptions;
+
+/**
+ * Base for tests of the caches and indexes kept in the local repository. Every test gets its own
+ * settings file pointing to an empty local repository and its own home directory in a temporary
+ * folder.
+ */
+public abstract class AbstractLocalRepositoryTest {
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected File repository;
+
+    private File settings;
+
+    @Before
+    public void setupLocalRepository() throws Exception {
+        System.setProperty("user.home", folder.newFolder("home").getAbsolutePath());
+        repository = folder.newFolder("repository");
+        settings = folder.newFile("cli.yml");
+        write(settings, "local_repository:\n  path: '" + repository.getAbsolutePath() + "'\n"
+                + configuration());
+        commandLine();
+    }
+
+    /**
+     * Sets the given global options, e.g. <code>--offline</code> or <code>--update</code>, next to
+     * the test settings file.
+     */
+    protected void commandLine(String... args) throws ParseException {
+        Options options = new Options();
+        options.addOption(Option.builder("s").longOpt("settings").hasArg().build());
+        options.addOption(Option.builder("o").longOpt("offline").build());
+        options.addOption(Option.builder("u").longOpt("update").build());
+        String[] arguments = Arrays.copyOf(args, args.length + 2);
+        arguments[args.length] = "-s";
+        arguments[args.length + 1] = settings.getAbsolutePath();
+        CommandLineOptions.set(new DefaultParser().parse(options, arguments));
+    }
+
+    @After
+    public void resetCommandLineOptions() throws ParseException {
+        CommandLineOptions.set(new DefaultParser().parse(new Options(), new String[0]));
+    }
+
+    /**
+     * Additional content of the settings file, eg. a <code>configuration</code> section.
+     */
+    protected String configuration() {
+        return "";
+    }
+
+    /**
+     * Writes the given content into the file, creating parent directories as needed.
+     */
+    protected static File write(File file, String content) throws IOException {
+        FileUtils.write(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Returns the file of the given artifact in the local repository.
+     */
+    protected File repositoryFile(String group, String artifact, String version,
+            String extension) {
+        return new File(repository, group.replace('.', '/') + "/" + artifact + "/" + version
+                + "/" + artifact + "-" + version + "." + extension);
+    }
+
+    /**
+     * Creates a project folder with the given manifest.
+     */
+    protected File project(String name, String manifest) throws IOException {
+        File project = folder.newFolder(name);
+        write(new File(project, ".atomist/manifest.yml"), manifest);
+        return project;
+    }
+
+    /**
+     * Writes a zip with the given alternating entry names and contents.
+     */
+    protected static File zip(File file, String... entries) throws IOException {
+        file.getParentFile().mkdirs();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                zip.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,74 @@
+package com.atomist.rug.cli.classloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+
+public class ClassLoaderCacheTest extends AbstractLocalRepositoryTest {
+
+    @Test
+    public void testMissAndHit() throws Exception {
+        ClassLoaderCache cache = new ClassLoaderCache(2);
+        URLClassLoader classLoader = classLoader("a");
+
+        assertFalse(cache.get("a").isPresent());
+        cache.put("a", classLoader);
+        assertSame(classLoader, cache.get("a").get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testEvictsAndClosesLeastRecentlyUsed() throws Exception {
+        ClassLoaderCache cache = new ClassLoaderCache(2);
+        URLClassLoader a = classLoader("a");
+        URLClassLoader b = classLoader("b");
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.get("a");
+        cache.put("c", classLoader("c"));
+
+        assertTrue(cache.get("a").isPresent());
+        assertFalse(cache.get("b").isPresent());
+        assertTrue(cache.get("c").isPresent());
+        // Closed classloaders don't find their resources anymore
+        assertNotNull(a.getResource("a.txt"));
+        assertNull(b.getResource("b.txt"));
+    }
+
+    @Test
+    public void testFingerprintChangesWithRebuiltJar() throws Exception {
+        ArtifactDescriptor artifact = new DefaultArtifactDescriptor("com.atomist", "test",
+                "1.0.0", Extension.ZIP);
+        File jar = write(folder.newFile("extension.jar"), "extension");
+        List<URL> urls = Collections.singletonList(jar.toURI().toURL());
+        String fingerprint = ClassLoaderCache.fingerprint(artifact, urls);
+
+        assertEquals(fingerprint, ClassLoaderCache.fingerprint(artifact, urls));
+        write(jar, "rebuilt extension");
+        assertNotEquals(fingerprint, ClassLoaderCache.fingerprint(artifact, urls));
+    }
+
+    private URLClassLoader classLoader(String name) throws Exception {
+        File dir = folder.newFolder(name);
+        write(new File(dir, name + ".txt"), name);
+        return new URLClassLoader(new URL[] { dir.toURI().toURL() }, null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.atomist.rug.cli.classloading;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.Constants;
+import com.atomist.rug.cli.resolver.LocalRepositoryLocks;
+import com.atomist.rug.cli.utils.Profiler;
+import com.atomist.rug.cli.utils.StringUtils;
+
+public class DelegatingUrlClassLoaderTest extends AbstractLocalRepositoryTest {
+
+    private DelegatingUrlClassLoader classLoader;
+
+    @Before
+    public void setupClassLoader() throws Exception {
+        File jar = folder.newFile("utils.jar");
+        String path = StringUtils.class.getName().replace('.', '/') + ".class";
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+                InputStream is = getClass().getClassLoader().getResourceAsStream(path)) {
+            zip.putNextEntry(new ZipEntry(path));
+            IOUtils.copy(is, zip);
+            zip.closeEntry();
+        }
+        classLoader = new DelegatingUrlClassLoader(new URL[] { jar.toURI().toURL() },
+                getClass().getClassLoader());
+    }
+
+    @After
+    public void closeClassLoader() throws Exception {
+        classLoader.close();
+    }
+
+    @Test
+    public void testLoadsClassesFromIndexedJar() throws Exception {
+        Class<?> cls = classLoader.loadClass(StringUtils.class.getName());
+        assertSame(classLoader, cls.getClassLoader());
+        assertNotSame(StringUtils.class, cls);
+    }
+
+    @Test
+    public void testDelegatesSharedPackagesAndClasses() throws Exception {
+        assertSame(Constants.class, classLoader.loadClass(Constants.class.getName()));
+        assertSame(Profiler.class, classLoader.loadClass(Profiler.class.getName()));
+        assertSame(Profiler.Span.class, classLoader.loadClass(Profiler.Span.class.getName()));
+        assertSame(LocalRepositoryLocks.class,
+                classLoader.loadClass(LocalRepositoryLocks.class.getName()));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testCompleteIndexFailsFastForMissingClasses() throws Exception {
+        classLoader.loadClass("com.atomist.rug.cli.utils.Missing");
+    }
+}
@@ -0,0 +1,84 @@
+package com.atomist.rug.cli.classloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.resolver.DependencyResolutionCache;
+
+public class PackageIndexTest extends AbstractLocalRepositoryTest {
+
+    @Test
+    public void testIndexesPackagesOfJars() throws Exception {
+        URL first = zip(folder.newFile("first.jar"), "com/a/A.class", "a", "com/a/a.txt", "a")
+                .toURI().toURL();
+        URL second = zip(folder.newFile("second.jar"), "com/b/B.class", "b", "Root.class", "r")
+                .toURI().toURL();
+
+        PackageIndex index = PackageIndex.create(new URL[] { first, second });
+        assertTrue(index.isComplete());
+        assertEquals(Collections.singletonList(first), index.jars("com.a"));
+        assertEquals(Collections.singletonList(second), index.jars("com.b"));
+        assertEquals(Collections.singletonList(second), index.jars(""));
+        assertTrue(index.jars("com.c").isEmpty());
+    }
+
+    @Test
+    public void testDirectoriesMakeIndexIncomplete() throws Exception {
+        URL jar = zip(folder.newFile("first.jar"), "com/a/A.class", "a").toURI().toURL();
+        URL dir = folder.newFolder("classes").toURI().toURL();
+
+        assertFalse(PackageIndex.create(new URL[] { jar, dir }).isComplete());
+    }
+
+    @Test
+    public void testReadsStoredIndex() throws Exception {
+        URL[] urls = new URL[] {
+                zip(folder.newFile("first.jar"), "com/a/A.class", "a").toURI().toURL() };
+        PackageIndex.create(urls);
+
+        // Prove that the stored index is used instead of reading the jar again
+        File indexFile = indexFile();
+        FileUtils.write(indexFile, "complete\ncom.stored\n", StandardCharsets.UTF_8);
+        assertEquals(Collections.singletonList(urls[0]),
+                PackageIndex.create(urls).jars("com.stored"));
+    }
+
+    @Test
+    public void testIndexesChangedJarAgain() throws Exception {
+        File jar = zip(folder.newFile("first.jar"), "com/a/A.class", "a");
+        URL[] urls = new URL[] { jar.toURI().toURL() };
+        assertEquals(1, PackageIndex.create(urls).jars("com.a").size());
+
+        zip(jar, "com/b/B.class", "changed jar");
+        PackageIndex index = PackageIndex.create(urls);
+        assertTrue(index.jars("com.a").isEmpty());
+        assertEquals(1, index.jars("com.b").size());
+    }
+
+    @Test
+    public void testRebuildsCorruptIndex() throws Exception {
+        URL[] urls = new URL[] {
+                zip(folder.newFile("first.jar"), "com/a/A.class", "a").toURI().toURL() };
+        PackageIndex.create(urls);
+
+        FileUtils.write(indexFile(), "complete\n", StandardCharsets.UTF_8);
+        assertEquals(1, PackageIndex.create(urls).jars("com.a").size());
+    }
+
+    private File indexFile() {
+        File[] indexFiles = new File(DependencyResolutionCache.cacheRoot().getParentFile(),
+                "classpath").listFiles();
+        assertEquals(1, indexFiles.length);
+        return indexFiles[0];
+    }
+}
@@ -0,0 +1,68 @@
+package com.atomist.rug.cli.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+
+public class AbstractCompilingAndOperationLoadingCommandTest extends AbstractLocalRepositoryTest {
+
+    @Override
+    protected String configuration() {
+        return "configuration:\n  dependency_threads: 3\n";
+    }
+
+    @After
+    public void shutdown() {
+        AbstractCompilingAndOperationLoadingCommand.shutdownDependencyPool();
+    }
+
+    @Test
+    public void testPoolSizeFromSettings() {
+        assertEquals(3, AbstractCompilingAndOperationLoadingCommand.dependencyPool()
+                .getParallelism());
+    }
+
+    @Test
+    public void testPoolIsKeptUntilShutdown() {
+        ForkJoinPool pool = AbstractCompilingAndOperationLoadingCommand.dependencyPool();
+        assertSame(pool, AbstractCompilingAndOperationLoadingCommand.dependencyPool());
+
+        AbstractCompilingAndOperationLoadingCommand.shutdownDependencyPool();
+        assertTrue(pool.isShutdown());
+        assertFalse(CommandContext.contains(ForkJoinPool.class));
+        assertNotSame(pool, AbstractCompilingAndOperationLoadingCommand.dependencyPool());
+    }
+
+    @Test
+    public void testParallelStreamsRunWithRugClassLoader() throws Exception {
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader rugClassLoader = new URLClassLoader(new URL[0], original)) {
+            Thread.currentThread().setContextClassLoader(rugClassLoader);
+            ForkJoinPool pool = AbstractCompilingAndOperationLoadingCommand.dependencyPool();
+            Thread.currentThread().setContextClassLoader(original);
+
+            List<ClassLoader> classLoaders = pool.submit(() -> IntStream.range(0, 100).parallel()
+                    .mapToObj(i -> Thread.currentThread().getContextClassLoader()).distinct()
+                    .collect(Collectors.toList())).get();
+            assertEquals(1, classLoaders.size());
+            assertSame(rugClassLoader, classLoaders.get(0));
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.atomist.rug.cli.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+
+import com.atomist.rug.cli.Constants;
+
+public class CommandContextRebuilderTest {
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    private final List<Integer> generations = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void before() {
+        CommandContextRebuilder.reset();
+        Constants.setReload(false);
+    }
+
+    @After
+    public void after() {
+        CommandContextRebuilder.reset();
+    }
+
+    @Test
+    public void testInvalidateRebuildsAndCommits() {
+        AtomicInteger invalidations = new AtomicInteger();
+        AtomicInteger updates = new AtomicInteger();
+        CommandContextRebuilder.register((artifact, generation) -> {
+            generations.add(generation);
+            assertTrue(CommandContextRebuilder.commit(generation, updates::incrementAndGet));
+        });
+
+        CommandContextRebuilder.invalidate(null, invalidations::incrementAndGet);
+        CommandContextRebuilder.await();
+
+        assertEquals(1, invalidations.get());
+        assertEquals(1, generations.size());
+        assertEquals(1, updates.get());
+        assertFalse(CommandContextRebuilder.isRebuilding());
+        assertFalse(Constants.isRebuilding());
+    }
+
+    @Test
+    public void testStaleRebuildDoesNotCommit() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Boolean> commits = new CopyOnWriteArrayList<>();
+        CommandContextRebuilder.register((artifact, generation) -> {
+            generations.add(generation);
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            commits.add(CommandContextRebuilder.commit(generation, () -> {
+            }));
+        });
+
+        CommandContextRebuilder.invalidate(null, () -> {
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(CommandContextRebuilder.isRebuilding());
+
+        // Files change again while the first rebuild is still running
+        CommandContextRebuilder.invalidate(null, () -> {
+        });
+        release.countDown();
+        CommandContextRebuilder.await();
+
+        assertEquals(2, generations.size());
+        assertFalse(commits.get(0));
+        assertTrue(commits.get(1));
+        assertFalse(Constants.isRebuilding());
+    }
+
+    @Test
+    public void testNoRebuildOnReload() {
+        CommandContextRebuilder.register((artifact, generation) -> generations.add(generation));
+        Constants.setReload(true);
+
+        CommandContextRebuilder.invalidate(null, () -> {
+        });
+        CommandContextRebuilder.await();
+
+        assertTrue(generations.isEmpty());
+        assertFalse(Constants.isRebuilding());
+    }
+
+    @Test
+    public void testResetDropsRebuilder() {
+        AtomicInteger invalidations = new AtomicInteger();
+        CommandContextRebuilder.register((artifact, generation) -> generations.add(generation));
+        CommandContextRebuilder.reset();
+
+        CommandContextRebuilder.invalidate(null, invalidations::incrementAndGet);
+        CommandContextRebuilder.await();
+
+        assertEquals(1, invalidations.get());
+        assertTrue(generations.isEmpty());
+        assertFalse(CommandContextRebuilder.isRebuilding());
+    }
+}
@@ -0,0 +1,62 @@
+package com.atomist.rug.cli.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.atomist.rug.cli.command.edit.EditCommand;
+import com.atomist.rug.cli.command.edit.EditCommandInfo;
+
+public class CommandIndexTest {
+
+    @Test
+    public void testIndexMatchesCommandInfos() {
+        Optional<CommandIndex> index = CommandIndex.load();
+        assertTrue(index.isPresent());
+
+        List<CommandInfo> commands = new ArrayList<>();
+        ServiceLoader.load(CommandInfo.class).forEach(commands::add);
+        commands.sort(Comparator.comparingInt(CommandInfo::order));
+        assertEquals(commands.stream().map(CommandInfo::name).collect(Collectors.toList()),
+                index.get().names());
+    }
+
+    @Test
+    public void testFindsCommandsByNameAliasAndClass() {
+        CommandIndex index = CommandIndex.load().get();
+
+        assertEquals(EditCommandInfo.class.getName(), index.infoClassName("edit").get());
+        assertEquals(EditCommandInfo.class.getName(), index.infoClassName("ed").get());
+        assertEquals(EditCommandInfo.class.getName(),
+                index.infoClassNameForCommand(EditCommand.class.getName()).get());
+        assertFalse(index.infoClassName("unknown").isPresent());
+    }
+
+    @Test
+    public void testMergesOptionsOfAllCommands() {
+        CommandIndex index = CommandIndex.load().get();
+
+        assertTrue(index.options().hasOption("settings"));
+        assertTrue(index.options().getOption("branch").hasArg());
+        assertTrue(index.options().getOptions().stream().noneMatch(o -> o.isRequired()));
+    }
+
+    @Test
+    public void testCorruptIndexFallsBack() {
+        String corrupt = "command\tInfo\tCommand\tname\t\noption\t-?\t\tfalse\n";
+        assertFalse(CommandIndex
+                .read(new ByteArrayInputStream(corrupt.getBytes(StandardCharsets.UTF_8)))
+                .isPresent());
+    }
+}
@@ -1,10 +1,22 @@
 package com.atomist.rug.cli.command.edit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.junit.Test;
 
 import com.atomist.rug.cli.AbstractCommandTest;
@@ -34,6 +46,196 @@ public class EditCommandIntegrationTest extends AbstractCommandTest {
                 "LogEntriesTesting", "-l", "-d");
     }
 
+    @Test
+    public void testSuccessfulEditOfMultipleProjects() throws Exception {
+        assertSuccess("Successfully edited 1 projects (1 changed, 0 unchanged)", "edit",
+                "LogEntriesTesting", "-l", "-d", "-m", ".");
+    }
+
+    @Test
+    public void testSuccessfulEditOfMultipleProjectsInParallel() throws Exception {
+        File first = createRepository();
+        File second = createRepository();
+        File third = createRepository();
+
+        assertCommandLine(0, () -> {
+            try {
+                new SystemOutAssertion("Successfully edited 3 projects (3 changed, 0 unchanged)")
+                        .checkAssertion();
+                // Changes are listed per project after all got edited
+                String out = systemOutRule.getLogWithNormalizedLineSeparator();
+                assertEquals(3, out.split("src/main/whitespace created", -1).length - 1);
+                for (File root : new File[] { first, second, third }) {
+                    assertTrue(new File(root, "src/main/whitespace").exists());
+                }
+            }
+            finally {
+                FileUtils.deleteQuietly(first);
+                FileUtils.deleteQuietly(second);
+                FileUtils.deleteQuietly(third);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "--projects", first.getAbsolutePath() + ","
+                + second.getAbsolutePath() + "," + third.getAbsolutePath());
+    }
+
+    @Test
+    public void testUnSuccessfulEditOfMultipleProjectsReportsAllFailures() throws Exception {
+        File clean = createRepository();
+        File dirty = createRepository();
+        FileUtils.write(new File(dirty, "untracked.txt"), "changes", StandardCharsets.UTF_8);
+
+        assertCommandLine(1, () -> {
+            try {
+                new SystemOutAssertion("Editor failed on 1 of 2 projects (1 changed, 0 unchanged)")
+                        .checkAssertion();
+                new SystemOutAssertion("not clean").checkAssertion();
+                // The other project still got edited and committed
+                try (Git git = Git.open(clean)) {
+                    assertTrue(git.status().call().isClean());
+                    assertTrue(new File(clean, "src/main/whitespace").exists());
+                }
+                assertFalse(new File(dirty, "src/main/whitespace").exists());
+            }
+            finally {
+                FileUtils.deleteQuietly(clean);
+                FileUtils.deleteQuietly(dirty);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-R", "--projects",
+                clean.getAbsolutePath() + "," + dirty.getAbsolutePath());
+    }
+
+    @Test
+    public void testSuccessfulEditOfBranch() throws Exception {
+        File root = createRepository();
+        ObjectId head = head(root);
+
+        // Assertions run after the command called System.exit
+        assertCommandLine(0, () -> {
+            try (Git git = Git.open(root)) {
+                assertBranch(git.getRepository(), head);
+                // Neither working tree nor index got touched
+                assertFalse(new File(root, "src/main/whitespace").exists());
+                assertTrue(git.status().call().isClean());
+                assertEquals("refs/heads/master", git.getRepository().getFullBranch());
+            }
+            finally {
+                FileUtils.deleteQuietly(root);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-R", "-C", root.getAbsolutePath(), "--branch",
+                "rug-edit");
+    }
+
+    @Test
+    public void testSuccessfulEditOfBranchWithoutCommit() throws Exception {
+        File root = createRepository();
+        ObjectId head = head(root);
+
+        assertCommandLine(0, () -> {
+            try (Git git = Git.open(root)) {
+                new SystemOutAssertion("Changes not committed").checkAssertion();
+                assertNull(git.getRepository().resolve("refs/heads/rug-edit"));
+                assertEquals(head, git.getRepository().resolve("refs/heads/master"));
+                assertFalse(new File(root, "src/main/whitespace").exists());
+            }
+            finally {
+                FileUtils.deleteQuietly(root);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-C", root.getAbsolutePath(), "--branch",
+                "rug-edit");
+    }
+
+    @Test
+    public void testSuccessfulEditOfBranchInBareRepository() throws Exception {
+        File root = createRepository();
+        File bare = Files.createTempDirectory("rug-edit-bare").toFile();
+        Git.cloneRepository().setBare(true).setURI(root.toURI().toString()).setDirectory(bare)
+                .call().close();
+        ObjectId head = head(bare);
+
+        assertCommandLine(0, () -> {
+            try (Git git = Git.open(bare)) {
+                assertBranch(git.getRepository(), head);
+            }
+            finally {
+                FileUtils.deleteQuietly(root);
+                FileUtils.deleteQuietly(bare);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-R", "-C", bare.getAbsolutePath(), "--branch",
+                "rug-edit");
+    }
+
+    @Test
+    public void testUnSuccessfulEditOfCheckedOutBranch() throws Exception {
+        File root = createRepository();
+        assertCommandLine(1, () -> {
+            try {
+                new SystemOutAssertion("Branch master is checked out").checkAssertion();
+            }
+            finally {
+                FileUtils.deleteQuietly(root);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-C", root.getAbsolutePath(), "--branch",
+                "master");
+    }
+
+    @Test
+    public void testUnSuccessfulEditOfBranchOutsideRepositoryRoot() throws Exception {
+        File root = createRepository();
+        File nested = new File(root, "nested");
+        nested.mkdirs();
+        assertCommandLine(1, () -> {
+            try {
+                new SystemOutAssertion("No git repository found at").checkAssertion();
+            }
+            finally {
+                FileUtils.deleteQuietly(root);
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-C", nested.getAbsolutePath(), "--branch",
+                "rug-edit");
+    }
+
+    @Test
+    public void testUnSuccessfulEditWithInvalidBranch() throws Exception {
+        assertFailure("Invalid branch name rug..edit", "edit", "LogEntriesTesting", "-l",
+                "--branch", "rug..edit");
+    }
+
+    private File createRepository() throws Exception {
+        File root = Files.createTempDirectory("rug-edit").toFile();
+        try (Git git = Git.init().setDirectory(root).call()) {
+            FileUtils.write(new File(root, "README.md"), "# Test\n", StandardCharsets.UTF_8);
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Initial commit").setAuthor("Test", "test@atomist.com")
+                    .call();
+        }
+        return root;
+    }
+
+    private ObjectId head(File root) throws Exception {
+        try (Git git = Git.open(root)) {
+            return git.getRepository().resolve("HEAD");
+        }
+    }
+
+    private void assertBranch(Repository repository, ObjectId head) throws Exception {
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(repository.resolve("refs/heads/rug-edit"));
+            assertEquals(1, commit.getParentCount());
+            assertEquals(head, commit.getParent(0).getId());
+            assertNotNull(TreeWalk.forPath(repository, "src/main/whitespace", commit.getTree()));
+            assertNotNull(TreeWalk.forPath(repository, "README.md", commit.getTree()));
+            // The original branch didn't move
+            assertEquals(head, repository.resolve("refs/heads/master"));
+        }
+    }
+
+    @Test
+    public void testUnSuccessfulEditWithNoMatchingProjects() throws Exception {
+        assertFailure("No project directories found matching does-not-exist/*", "edit",
+                "atomist-rugs:common-editors:AddReadme", "--projects", "does-not-exist/*", "-a",
+                "0.8.0", "-l");
+    }
+
     @Test
     public void testUnSuccessfulEditWithInvalidParameter() throws Exception {
         assertFailure("Invalid parameter value\n  project_name = $#%$#%$#^$%$W...@432", "edit",
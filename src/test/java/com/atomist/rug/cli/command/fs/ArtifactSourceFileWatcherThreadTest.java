@@ -0,0 +1,86 @@
+package com.atomist.rug.cli.command.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+
+public class ArtifactSourceFileWatcherThreadTest extends AbstractLocalRepositoryTest {
+
+    private final BlockingQueue<Set<File>> notifications = new LinkedBlockingQueue<>();
+
+    private File project;
+    private ArtifactSourceFileWatcherThread watcher;
+
+    @Override
+    protected String configuration() {
+        return "configuration:\n  file_watcher_debounce: 500\n";
+    }
+
+    @Before
+    public void startWatcher() throws Exception {
+        project = folder.newFolder("project");
+        new File(project, ".git").mkdirs();
+        new File(project, ".atomist/target").mkdirs();
+        watcher = new ArtifactSourceFileWatcherThread(new LocalArtifactDescriptor("test",
+                "project", "1.0.0", Extension.ZIP, Scope.COMPILE, project.toURI()));
+        watcher.addListener((artifact, changes) -> notifications.add(changes));
+    }
+
+    @After
+    public void stopWatcher() {
+        watcher.shutdown();
+    }
+
+    @Test
+    public void testBurstOfChangesIsCoalesced() throws Exception {
+        File readme = write("README.md");
+        File editor = write(".atomist/editors/Editor.ts");
+        File other = write("src/Other.java");
+
+        Set<File> changes = notifications.poll(30, TimeUnit.SECONDS);
+        assertNotNull(changes);
+        // New directories are reported themselves; files in them only if they got watched in time
+        File editors = editor.getParentFile();
+        File src = other.getParentFile();
+        assertTrue(changes.containsAll(Arrays.asList(readme, editors, src)));
+        assertTrue(Arrays.asList(readme, editors, editor, src, other).containsAll(changes));
+        assertNull(notifications.poll(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testChangesInGitAndTargetDirectoriesAreIgnored() throws Exception {
+        write(".git/index");
+        write(".atomist/target/.jscache/editor.js");
+        File readme = write("README.md");
+
+        Set<File> changes = notifications.poll(30, TimeUnit.SECONDS);
+        assertNotNull(changes);
+        assertEquals(Collections.singleton(readme), changes);
+    }
+
+    private File write(String path) throws Exception {
+        File file = new File(project, path);
+        FileUtils.write(file, path, StandardCharsets.UTF_8);
+        return file;
+    }
+}
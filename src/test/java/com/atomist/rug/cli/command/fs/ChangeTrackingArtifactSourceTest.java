@@ -0,0 +1,111 @@
+package com.atomist.rug.cli.command.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.atomist.rug.cli.command.utils.ArtifactSourceUtils;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+import com.atomist.source.ArtifactSource;
+
+public class ChangeTrackingArtifactSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File project;
+    private ChangeTrackingArtifactSource tracking;
+
+    @Before
+    public void readProject() throws Exception {
+        project = folder.newFolder("project");
+        write("README.md", "# Project");
+        write(".atomist/editors/Editor.ts", "editor");
+        write("src/main/Main.java", "main");
+        ArtifactDescriptor artifact = new LocalArtifactDescriptor("test", "project", "1.0.0",
+                Extension.ZIP, Scope.COMPILE, project.toURI());
+        tracking = new ChangeTrackingArtifactSource(artifact,
+                ArtifactSourceUtils.createArtifactSource(artifact));
+    }
+
+    @Test
+    public void testUnchangedSourceIsReused() {
+        ArtifactSource source = tracking.patch().get();
+        assertSame(source, tracking.patch().get());
+    }
+
+    @Test
+    public void testChangedAddedAndDeletedFiles() throws Exception {
+        File readme = write("README.md", "# Changed");
+        File added = write(".atomist/editors/Other.ts", "other");
+        File main = new File(project, "src/main/Main.java");
+        main.delete();
+        tracking.changed(new HashSet<>(Arrays.asList(readme, added, main)));
+
+        ArtifactSource patched = tracking.patch().get();
+        assertEquals("# Changed", content(patched, "README.md"));
+        assertEquals("other", content(patched, ".atomist/editors/Other.ts"));
+        assertEquals("editor", content(patched, ".atomist/editors/Editor.ts"));
+        assertFalse(patched.findFile("src/main/Main.java").isDefined());
+    }
+
+    @Test
+    public void testDeletedDirectoryTakesItsContent() throws Exception {
+        File src = new File(project, "src");
+        FileUtils.deleteDirectory(src);
+        tracking.changed(Collections.singleton(src));
+
+        ArtifactSource patched = tracking.patch().get();
+        assertFalse(patched.findFile("src/main/Main.java").isDefined());
+        assertTrue(patched.findFile("README.md").isDefined());
+    }
+
+    @Test
+    public void testFilesOfNewDirectoryAreRead() throws Exception {
+        write("src/test/MainTest.java", "test");
+        tracking.changed(Collections.singleton(new File(project, "src/test")));
+
+        assertEquals("test", content(tracking.patch().get(), "src/test/MainTest.java"));
+    }
+
+    @Test
+    public void testChangesAreOnlyAppliedOnce() throws Exception {
+        tracking.changed(Collections.singleton(write("README.md", "# Changed")));
+        ArtifactSource patched = tracking.patch().get();
+        tracking.update(patched);
+
+        assertSame(patched, tracking.patch().get());
+    }
+
+    @Test
+    public void testLostEventsNeedCompleteRead() {
+        tracking.changed(Collections.singleton(project));
+        assertFalse(tracking.patch().isPresent());
+    }
+
+    private File write(String path, String content) throws Exception {
+        File file = new File(project, path);
+        FileUtils.write(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static String content(ArtifactSource source, String path) {
+        return source.findFile(path).get().content();
+    }
+}
@@ -55,6 +55,15 @@ public class ListCommandIntegrationTest extends AbstractCommandTest {
         }, "list", "-f", "group=*atomist?rugs");
     }
 
+    @Test
+    public void testGroupFilteredOnGroupOnly() throws Exception {
+        // The group pattern is not matched against the archive's location in the repository
+        assertCommandLine(0,
+                () -> assertFalse(systemOutRule.getLogWithNormalizedLineSeparator()
+                        .contains("atomist-rugs:spring-boot-rest-service")),
+                "list", "-f", "group=spring-boot-rest-service");
+    }
+
     @Test
     public void testVersionFiltered() throws Exception {
         assertCommandLine(0, () -> {
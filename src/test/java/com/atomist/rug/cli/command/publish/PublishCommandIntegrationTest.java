@@ -1,5 +1,6 @@
 package com.atomist.rug.cli.command.publish;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -8,12 +9,17 @@ import java.io.IOException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.atomist.rug.cli.AbstractCommandTest;
 
 public class PublishCommandIntegrationTest extends AbstractCommandTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void cleanUp() throws IOException {
         FileUtils.deleteDirectory(new File(getRepoDir(), "rug-cli-tests"));
@@ -34,6 +40,28 @@ public class PublishCommandIntegrationTest extends AbstractCommandTest {
                 "4.0.0", "-F");
     }
 
+    @Test
+    public void testPartiallyFailedPublishReportsEveryRepository() throws Exception {
+        // Publishing into a file below /dev/null can never succeed
+        String settings = FileUtils.readFileToString(cliYml, "UTF-8").replace(
+                "remote_repositories:\n",
+                "remote_repositories:\n  broken:\n    publish: true\n"
+                        + "    url: \"file:///dev/null/repository-publish/\"\n");
+        File settingsFile = folder.newFile("cli.yml");
+        FileUtils.writeStringToFile(settingsFile, settings, "UTF-8");
+
+        assertCommandLine(1, () -> {
+            String output = systemOutRule.getLogWithNormalizedLineSeparator()
+                    + systemErrRule.getLogWithNormalizedLineSeparator();
+            assertTrue(output.contains("Publishing failed for 1 of 2 repositories"));
+            assertTrue(output.contains("broken: "));
+            assertTrue(output.contains("repository-publish/rug-cli-tests/common-editors/0.8.0/"
+                    + "common-editors-0.8.0.zip"));
+            assertFalse(output.contains("Successfully published archive"));
+        }, false, "publish", "-F", "--id", "local,broken", "-q", "-s",
+                settingsFile.getAbsolutePath(), "-X", "-t");
+    }
+
     private void assertVersion(String group, String artifact, String version) throws IOException {
         assertTrue(systemOutRule.getLogWithNormalizedLineSeparator()
                 .contains(group + ":" + artifact + " (" + version + ")"));
@@ -0,0 +1,45 @@
+package com.atomist.rug.cli.command.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class TestCommandTest {
+
+    private List<String> features = Arrays.asList(".atomist/tests/project/Zeta.feature",
+            ".atomist/tests/project/Alpha.feature", ".atomist/tests/handlers/Alpha.feature");
+
+    @Test
+    public void testFeaturesWithSameNameGoToDifferentWorkers() {
+        assertNotEquals(TestCommand.worker(features.get(1), features, 2),
+                TestCommand.worker(features.get(2), features, 2));
+    }
+
+    @Test
+    public void testFeaturesAreAssignedRoundRobin() {
+        assertEquals(0, TestCommand.worker(features.get(0), features, 2));
+        assertEquals(1, TestCommand.worker(features.get(1), features, 2));
+        assertEquals(0, TestCommand.worker(features.get(2), features, 2));
+    }
+
+    @Test
+    public void testUnknownFeaturesGoToFirstWorker() {
+        assertEquals(0, TestCommand.worker(".atomist/tests/Other.feature", features, 2));
+    }
+
+    @Test
+    public void testResultsAreSortedInFeatureOrder() {
+        // Results as collected from two workers
+        List<String> results = new ArrayList<>(Arrays.asList(features.get(0), features.get(2),
+                ".atomist/tests/Other.feature", features.get(1)));
+        TestCommand.sortInFeatureOrder(results, Function.identity(), features);
+        assertEquals(Arrays.asList(features.get(0), features.get(1), features.get(2),
+                ".atomist/tests/Other.feature"), results);
+    }
+}
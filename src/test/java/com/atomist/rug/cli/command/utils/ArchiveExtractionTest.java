@@ -0,0 +1,72 @@
+package com.atomist.rug.cli.command.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+
+public class ArchiveExtractionTest extends AbstractLocalRepositoryTest {
+
+    @Test
+    public void testExtractedOutsideLocalRepository() throws Exception {
+        File archive = archive("version: 1.0.0");
+        Optional<File> root = ArtifactSourceUtils.extract(archive);
+        assertTrue(root.isPresent());
+        assertEquals(ArtifactSourceUtils.archiveCacheRoot(), root.get().getParentFile());
+        assertEquals("version: 1.0.0", FileUtils.readFileToString(
+                new File(root.get(), ".atomist/manifest.yml"), StandardCharsets.UTF_8));
+        // Nothing but the archive itself in the repository
+        assertEquals(1, archive.getParentFile().list().length);
+        // No temporary directories left behind
+        assertEquals(1, ArtifactSourceUtils.archiveCacheRoot().list().length);
+    }
+
+    @Test
+    public void testReusedWhileUnchanged() throws Exception {
+        File archive = archive("version: 1.0.0");
+        File root = ArtifactSourceUtils.extract(archive).get();
+        File marker = new File(root, "marker");
+        FileUtils.touch(marker);
+
+        assertEquals(root, ArtifactSourceUtils.extract(archive).get());
+        assertTrue(marker.exists());
+    }
+
+    @Test
+    public void testChangedContentIsExtractedAgain() throws Exception {
+        File archive = archive("version: 1.0.0");
+        File root = ArtifactSourceUtils.extract(archive).get();
+        long lastModified = archive.lastModified();
+
+        archive("version: 1.0.1");
+        // Same size and timestamp; only the content tells the archives apart
+        archive.setLastModified(lastModified);
+        File changed = ArtifactSourceUtils.extract(archive).get();
+        assertNotEquals(root, changed);
+        assertEquals("version: 1.0.1", FileUtils.readFileToString(
+                new File(changed, ".atomist/manifest.yml"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEntriesOutsideRootAreRejected() throws Exception {
+        File archive = zip(new File(repository, "com/atomist/test/1.0.0/test-1.0.0.zip"),
+                "../../escaped.txt", "content");
+        assertFalse(ArtifactSourceUtils.extract(archive).isPresent());
+        assertFalse(new File(ArtifactSourceUtils.archiveCacheRoot(), "../escaped.txt").exists());
+        assertEquals(0, ArtifactSourceUtils.archiveCacheRoot().list().length);
+    }
+
+    private File archive(String manifest) throws Exception {
+        return zip(new File(repository, "com/atomist/test/1.0.0/test-1.0.0.zip"),
+                ".atomist/manifest.yml", manifest);
+    }
+}
@@ -0,0 +1,65 @@
+package com.atomist.rug.cli.command.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+import com.atomist.source.ArtifactSource;
+
+public class ArtifactSourceCacheTest extends AbstractLocalRepositoryTest {
+
+    private File archive;
+    private ArtifactDescriptor artifact;
+
+    @Before
+    public void setupArchive() throws Exception {
+        ArtifactSourceCache.resetStatistics();
+        archive = zip(repositoryFile("com.atomist", "test", "1.0.0", "zip"),
+                ".atomist/manifest.yml", "version: 1.0.0");
+        artifact = new DefaultArtifactDescriptor("com.atomist", "test", "1.0.0", Extension.ZIP,
+                Scope.COMPILE, null, archive.toURI());
+    }
+
+    @Test
+    public void testMissAndHit() {
+        ArtifactSource source = ArtifactSourceCache.createArtifactSource(artifact);
+        assertSame(source, ArtifactSourceCache.createArtifactSource(artifact));
+        assertEquals(1, ArtifactSourceCache.hits());
+        assertEquals(1, ArtifactSourceCache.misses());
+    }
+
+    @Test
+    public void testReadsChangedArchiveAgain() throws Exception {
+        ArtifactSource source = ArtifactSourceCache.createArtifactSource(artifact);
+        zip(archive, ".atomist/manifest.yml", "version: 1.0.0-SNAPSHOT");
+
+        ArtifactSource changed = ArtifactSourceCache.createArtifactSource(artifact);
+        assertNotSame(source, changed);
+        assertEquals("version: 1.0.0-SNAPSHOT",
+                changed.findFile(".atomist/manifest.yml").get().content());
+        assertEquals(0, ArtifactSourceCache.hits());
+        assertEquals(2, ArtifactSourceCache.misses());
+    }
+
+    @Test
+    public void testLocalProjectsAreNotCached() throws Exception {
+        File project = project("project", "version: 1.0.0");
+        ArtifactDescriptor local = new LocalArtifactDescriptor("com.atomist", "test", "1.0.0",
+                Extension.ZIP, Scope.COMPILE, project.toURI());
+
+        assertNotSame(ArtifactSourceCache.createArtifactSource(local),
+                ArtifactSourceCache.createArtifactSource(local));
+        assertEquals(0, ArtifactSourceCache.hits());
+        assertEquals(0, ArtifactSourceCache.misses());
+    }
+}
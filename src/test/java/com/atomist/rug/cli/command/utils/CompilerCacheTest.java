@@ -0,0 +1,91 @@
+package com.atomist.rug.cli.command.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+
+public class CompilerCacheTest extends AbstractLocalRepositoryTest {
+
+    private File root;
+    private File sharedRoot;
+
+    @Before
+    public void setupRoots() throws Exception {
+        root = folder.newFolder("cache");
+        sharedRoot = folder.newFolder("shared");
+    }
+
+    @Test
+    public void testMissAndHit() {
+        CompilerCache cache = new CompilerCache(root, null, 0);
+        String key = cache.key("editor.ts", "source");
+
+        assertFalse(cache.get(key).isPresent());
+        cache.put(key, outputs("compiled"));
+        assertEquals(outputs("compiled"), cache.get(key).get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testKeyChangesWithSource() {
+        CompilerCache cache = new CompilerCache(root, null, 0);
+        assertEquals(cache.key("editor.ts", "source"), cache.key("editor.ts", "source"));
+        assertNotEquals(cache.key("editor.ts", "source"), cache.key("editor.ts", "changed"));
+    }
+
+    @Test
+    public void testCorruptEntryIsAMiss() throws Exception {
+        CompilerCache cache = new CompilerCache(root, null, 0);
+        String key = cache.key("editor.ts", "source");
+        cache.put(key, outputs("compiled"));
+
+        write(CompilerCache.entry(root, key), "{ \"editor.js\": ");
+        assertFalse(cache.get(key).isPresent());
+    }
+
+    @Test
+    public void testCopiesEntriesFromSharedCache() {
+        CompilerCache shared = new CompilerCache(sharedRoot, null, 0);
+        String key = shared.key("editor.ts", "source");
+        shared.put(key, outputs("compiled"));
+
+        CompilerCache cache = new CompilerCache(root, sharedRoot, 0);
+        assertEquals(outputs("compiled"), cache.get(key).get());
+        assertTrue(CompilerCache.entry(root, key).exists());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        CompilerCache cache = new CompilerCache(root, null, 0);
+        String[] keys = new String[] { cache.key("a.ts"), cache.key("b.ts"), cache.key("c.ts") };
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], outputs("compiled"));
+            CompilerCache.entry(root, keys[i])
+                    .setLastModified(System.currentTimeMillis() - (3 - i) * 10000);
+        }
+
+        // Room for two and a half entries; evicting the oldest is enough to get below 90%
+        long size = CompilerCache.entry(root, keys[0]).length();
+        CompilerCache bounded = new CompilerCache(root, null, size * 5 / 2);
+        bounded.put(keys[2], outputs("compiled"));
+        bounded.evict();
+        assertFalse(CompilerCache.entry(root, keys[0]).exists());
+        assertTrue(CompilerCache.entry(root, keys[1]).exists());
+        assertTrue(CompilerCache.entry(root, keys[2]).exists());
+    }
+
+    private static Map<String, String> outputs(String content) {
+        return Collections.singletonMap("editor.js", content);
+    }
+}
@@ -0,0 +1,106 @@
+package com.atomist.rug.cli.command.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.atomist.source.ArtifactSource;
+import com.atomist.source.ByteArrayFileArtifact;
+import com.atomist.source.FileAdditionDelta;
+import com.atomist.source.FileArtifact;
+import com.atomist.source.StringFileArtifact;
+
+public class GitTreeProjectTest {
+
+    private static final byte[] IMAGE = new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, 0, 1, 2 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+
+    private ObjectId head;
+
+    @Before
+    public void createRepository() throws Exception {
+        root = folder.newFolder("project");
+        try (Git git = Git.init().setDirectory(root).call()) {
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("user", null, "name", "Jane Doe");
+            config.setString("user", null, "email", "jane@example.com");
+            config.save();
+            FileUtils.write(new File(root, "README.md"), "# Test\n", StandardCharsets.UTF_8);
+            FileUtils.writeByteArrayToFile(new File(root, "images/logo.png"), IMAGE);
+            git.add().addFilepattern(".").call();
+            head = git.commit().setMessage("Initial commit").call().getId();
+        }
+    }
+
+    @Test
+    public void testSourceContainsBinaryFiles() {
+        try (GitTreeProject project = GitTreeProject.open(root, "rug-edit")) {
+            ArtifactSource source = project.source();
+            FileArtifact image = source.findFile("images/logo.png").get();
+            assertTrue(image instanceof ByteArrayFileArtifact);
+            assertArrayEquals(IMAGE, ((ByteArrayFileArtifact) image).bytes());
+            assertEquals("# Test\n", source.findFile("README.md").get().content());
+        }
+    }
+
+    @Test
+    public void testCommitWithoutCheckout() throws Exception {
+        ObjectId commitId;
+        try (GitTreeProject project = GitTreeProject.open(root, "rug-edit")) {
+            project.source();
+            commitId = project.commit(
+                    Collections.singletonList(new FileAdditionDelta(
+                            StringFileArtifact.apply("new.txt", "src", "content"))),
+                    "Add new file\n\nDetails");
+        }
+
+        try (Git git = Git.open(root); RevWalk walk = new RevWalk(git.getRepository())) {
+            assertEquals(commitId, git.getRepository().resolve("refs/heads/rug-edit"));
+            RevCommit commit = walk.parseCommit(commitId);
+            assertEquals(head, commit.getParent(0).getId());
+            assertEquals("Add new file\n\nDetails", commit.getFullMessage());
+            assertEquals(GitUtils.AUTHOR_NAME, commit.getAuthorIdent().getName());
+            assertEquals("Jane Doe", commit.getCommitterIdent().getName());
+            assertEquals("jane@example.com", commit.getCommitterIdent().getEmailAddress());
+
+            // Unchanged files, binary ones included, keep pointing to the same blobs
+            RevCommit base = walk.parseCommit(head);
+            assertEquals(blob(git, base, "images/logo.png"), blob(git, commit, "images/logo.png"));
+            assertEquals(blob(git, base, "README.md"), blob(git, commit, "README.md"));
+            assertNotNull(blob(git, commit, "src/new.txt"));
+
+            // Neither the checked out branch, working tree nor index got touched
+            assertEquals(head, git.getRepository().resolve("refs/heads/master"));
+            assertFalse(new File(root, "src/new.txt").exists());
+            assertTrue(git.status().call().isClean());
+        }
+    }
+
+    private ObjectId blob(Git git, RevCommit commit, String path) throws Exception {
+        try (TreeWalk walk = TreeWalk.forPath(git.getRepository(), path, commit.getTree())) {
+            return (walk != null ? walk.getObjectId(0) : null);
+        }
+    }
+}
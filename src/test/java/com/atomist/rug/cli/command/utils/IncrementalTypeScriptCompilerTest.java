@@ -0,0 +1,130 @@
+package com.atomist.rug.cli.command.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.atomist.rug.cli.utils.ChecksumUtils;
+
+public class IncrementalTypeScriptCompilerTest {
+
+    private Set<String> paths = new HashSet<>(Arrays.asList("editors/Editor.ts",
+            "editors/Helper.ts", "editors/Other.ts", "lib/index.ts", "lib/Util.ts"));
+
+    @Test
+    public void testImportsAndExports() {
+        String content = "import { Helper } from './Helper';\n"
+                + "import * as lib from \"../lib\";\n"
+                + "import './Other';\n"
+                + "export * from '../lib/Util';\n"
+                + "import { Project } from '@atomist/rug/model/Core';\n";
+        assertEquals(set("editors/Helper.ts", "lib/index.ts", "editors/Other.ts", "lib/Util.ts"),
+                IncrementalTypeScriptCompiler.imports("editors/Editor.ts", content, paths));
+    }
+
+    @Test
+    public void testMultiLineExportFrom() {
+        String content = "export {\n  Helper,\n  Other\n} from\"./Helper\";";
+        assertEquals(set("editors/Helper.ts"),
+                IncrementalTypeScriptCompiler.imports("editors/Editor.ts", content, paths));
+    }
+
+    @Test
+    public void testRequireAndDynamicImports() {
+        String content = "import util = require('../lib/Util');\n"
+                + "const helper = require( \"./Helper.js\" );\n"
+                + "const other = await import('./Other');\n";
+        assertEquals(set("lib/Util.ts", "editors/Helper.ts", "editors/Other.ts"),
+                IncrementalTypeScriptCompiler.imports("editors/Editor.ts", content, paths));
+    }
+
+    @Test
+    public void testUnknownImportsAreIgnored() {
+        String content = "import { Missing } from './Missing';\nimport '../../outside';";
+        assertTrue(IncrementalTypeScriptCompiler.imports("editors/Editor.ts", content, paths)
+                .isEmpty());
+    }
+
+    @Test
+    public void testChangeInvalidatesImporters() {
+        Map<String, Set<String>> imports = new HashMap<>();
+        imports.put("a.ts", set("b.ts"));
+        imports.put("b.ts", set("c.ts"));
+        imports.put("c.ts", set());
+        imports.put("d.ts", set());
+        Map<String, String> hashes = hashes(imports, "a", "b", "c", "d");
+        Map<String, String> changed = hashes(imports, "a", "b", "changed", "d");
+
+        assertNotEquals(hashes.get("a.ts"), changed.get("a.ts"));
+        assertNotEquals(hashes.get("b.ts"), changed.get("b.ts"));
+        assertNotEquals(hashes.get("c.ts"), changed.get("c.ts"));
+        assertEquals(hashes.get("d.ts"), changed.get("d.ts"));
+    }
+
+    @Test
+    public void testChangeInCycleInvalidatesWholeCycle() {
+        Map<String, Set<String>> imports = new HashMap<>();
+        imports.put("a.ts", set("b.ts"));
+        imports.put("b.ts", set("a.ts"));
+        imports.put("c.ts", set("b.ts"));
+        imports.put("d.ts", set("c.ts"));
+        Map<String, String> hashes = hashes(imports, "a", "b", "c", "d");
+
+        // Whichever file of the cycle changes, all of it and everything importing it is affected
+        for (String[] contents : new String[][] { { "changed", "b", "c", "d" },
+                { "a", "changed", "c", "d" } }) {
+            Map<String, String> changed = hashes(imports, contents);
+            imports.keySet().forEach(p -> assertNotEquals(p, hashes.get(p), changed.get(p)));
+        }
+        assertEquals(hashes.get("a.ts"), hashes.get("b.ts"));
+    }
+
+    @Test
+    public void testHashesDontDependOnTraversalOrder() {
+        Map<String, Set<String>> imports = new HashMap<>();
+        imports.put("a.ts", set("b.ts"));
+        imports.put("b.ts", set("c.ts"));
+        imports.put("c.ts", set("a.ts"));
+        Map<String, String> hashes = hashes(imports, "a", "b", "c");
+
+        // Starting the traversal in the middle of the cycle
+        Map<String, Set<String>> renamed = new HashMap<>();
+        renamed.put("a.ts", set("b.ts"));
+        renamed.put("b.ts", set("c.ts"));
+        renamed.put("c.ts", set("a.ts"));
+        renamed.put("0.ts", set("b.ts"));
+        Map<String, String> contents = contents(imports.keySet(), "a", "b", "c");
+        contents.put("0.ts", ChecksumUtils.sha256("0"));
+        Map<String, String> other = IncrementalTypeScriptCompiler.hashes(contents, renamed);
+        imports.keySet().forEach(p -> assertEquals(hashes.get(p), other.get(p)));
+    }
+
+    private static Map<String, String> hashes(Map<String, Set<String>> imports,
+            String... contents) {
+        return IncrementalTypeScriptCompiler.hashes(contents(imports.keySet(), contents),
+                imports);
+    }
+
+    private static Map<String, String> contents(Set<String> paths, String... contents) {
+        // Contents are assigned to the paths in alphabetical order
+        String[] sorted = paths.stream().sorted().toArray(String[]::new);
+        Map<String, String> hashes = new HashMap<>();
+        for (int i = 0; i < sorted.length; i++) {
+            hashes.put(sorted[i], ChecksumUtils.sha256(contents[i]));
+        }
+        return hashes;
+    }
+
+    private static Set<String> set(String... paths) {
+        return Arrays.stream(paths).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,94 @@
+package com.atomist.rug.cli.command.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.atomist.source.Artifact;
+import com.atomist.source.ArtifactSource;
+import com.atomist.source.EmptyArtifactSource;
+import com.atomist.source.StringFileArtifact;
+
+import scala.collection.JavaConverters;
+
+public class RugIndexTest {
+
+    private final ArtifactSource source = source(
+            ".atomist/manifest.yml", "group: test\nartifact: test\n",
+            ".atomist/index.js", "require(\"./editors/First\");\nrequire(\"./editors/Second\");",
+            ".atomist/editors/First.js",
+            "var h = require(\"./Helper\");\nexports.first = Editor(\"First\", \"description\");",
+            ".atomist/editors/First.js.map", "{}",
+            ".atomist/editors/Helper.js", "exports.helper = \"com.atomist:other:Other\";",
+            ".atomist/editors/Second.js",
+            "exports.second = Editor('Second', 'description');\nedit('Third');",
+            ".atomist/editors/Third.js", "exports.third = Editor(\"Third\", \"description\");",
+            ".atomist/node_modules/lib/index.js", "exports.dep = Editor(\"Dependency\", \"d\");");
+
+    @Test
+    public void testDeclaresRugsOutsideNodeModules() {
+        RugIndex index = RugIndex.create(source);
+        assertTrue(index.declares("First"));
+        assertTrue(index.declares("Third"));
+        assertFalse(index.declares("Dependency"));
+    }
+
+    @Test
+    public void testNarrowsToDeclaringAndRequiredFiles() {
+        ArtifactSource narrowed = RugIndex.create(source).narrow(Collections.singleton("First"));
+        assertContains(narrowed, ".atomist/manifest.yml", ".atomist/editors/First.js",
+                ".atomist/editors/First.js.map", ".atomist/editors/Helper.js",
+                ".atomist/node_modules/lib/index.js");
+        // index.js would pull in Second.js
+        assertMissing(narrowed, ".atomist/index.js", ".atomist/editors/Second.js",
+                ".atomist/editors/Third.js");
+    }
+
+    @Test
+    public void testNarrowingKeepsRugsReferencedByName() {
+        ArtifactSource narrowed = RugIndex.create(source).narrow(Collections.singleton("Second"));
+        assertContains(narrowed, ".atomist/editors/Second.js", ".atomist/editors/Third.js");
+        assertMissing(narrowed, ".atomist/editors/First.js", ".atomist/editors/First.js.map");
+    }
+
+    @Test
+    public void testLiteralsReferenceRugsOfDependencies() {
+        RugIndex index = RugIndex.create(source);
+        Set<String> literals = index.literals(Collections.singleton("First"));
+        assertTrue(literals.contains("com.atomist:other:Other"));
+        assertFalse(literals.contains("Third"));
+
+        assertEquals(new HashSet<>(Arrays.asList("First", "Third")), index.referenced(
+                new HashSet<>(Arrays.asList("First", "test:test:Third", "Other")), "test",
+                "test"));
+    }
+
+    private static ArtifactSource source(String... files) {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (int i = 0; i < files.length; i += 2) {
+            String path = files[i];
+            int ix = path.lastIndexOf('/');
+            artifacts.add(StringFileArtifact.apply(path.substring(ix + 1),
+                    path.substring(0, ix), files[i + 1]));
+        }
+        return new EmptyArtifactSource("test")
+                .plus(JavaConverters.asScalaBufferConverter(artifacts).asScala());
+    }
+
+    private static void assertContains(ArtifactSource source, String... paths) {
+        Arrays.stream(paths).forEach(p -> assertTrue(p, source.findFile(p).isDefined()));
+    }
+
+    private static void assertMissing(ArtifactSource source, String... paths) {
+        Arrays.stream(paths).forEach(p -> assertFalse(p, source.findFile(p).isDefined()));
+    }
+}
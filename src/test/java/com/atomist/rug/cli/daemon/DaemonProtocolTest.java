@@ -0,0 +1,68 @@
+package com.atomist.rug.cli.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import com.atomist.rug.cli.daemon.DaemonProtocol.State;
+
+public class DaemonProtocolTest {
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setupUserHome() throws Exception {
+        System.setProperty("user.home", folder.newFolder("home").getAbsolutePath());
+    }
+
+    @Test
+    public void testStringRoundTrip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        DaemonProtocol.writeString(out, "edit --change-dir /tmp/projekt-ü");
+        DaemonProtocol.writeString(out, "");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("edit --change-dir /tmp/projekt-ü", DaemonProtocol.readString(in));
+        assertEquals("", DaemonProtocol.readString(in));
+    }
+
+    @Test
+    public void testStateRoundTrip() throws Exception {
+        assertFalse(DaemonProtocol.readState().isPresent());
+
+        DaemonProtocol.writeState(new State(4711, "secret", "1.0.0"));
+        Optional<State> state = DaemonProtocol.readState();
+        assertTrue(state.isPresent());
+        assertEquals(4711, state.get().port());
+        assertEquals("secret", state.get().token());
+        assertEquals("1.0.0", state.get().version());
+
+        DaemonProtocol.deleteState();
+        assertFalse(DaemonProtocol.readState().isPresent());
+    }
+
+    @Test
+    public void testCorruptStateIsIgnored() throws Exception {
+        DaemonProtocol.stateFile().getParentFile().mkdirs();
+        FileUtils.write(DaemonProtocol.stateFile(), "port=none", "UTF-8");
+        assertFalse(DaemonProtocol.readState().isPresent());
+    }
+}
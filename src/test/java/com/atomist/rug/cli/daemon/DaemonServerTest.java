@@ -0,0 +1,78 @@
+package com.atomist.rug.cli.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import com.atomist.rug.cli.command.ServiceLoadingCommandInfoRegistry;
+import com.atomist.rug.cli.daemon.DaemonProtocol.State;
+
+public class DaemonServerTest {
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Thread server;
+
+    @Before
+    public void startServer() throws Exception {
+        System.setProperty("user.home", folder.newFolder("home").getAbsolutePath());
+        server = new Thread(() -> new DaemonServer(new ServiceLoadingCommandInfoRegistry())
+                .serve());
+        server.start();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!DaemonProtocol.readState().isPresent()) {
+            assertTrue("Daemon didn't start", System.currentTimeMillis() < timeout);
+            Thread.sleep(50);
+        }
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        if (server.isAlive()) {
+            DaemonClient.stop();
+        }
+        server.join(10000);
+    }
+
+    @Test
+    public void testRejectsWrongToken() throws Exception {
+        State state = DaemonProtocol.readState().get();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), state.port())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(DaemonProtocol.REQUEST_STOP);
+            DaemonProtocol.writeString(out, "not-the-token");
+            DaemonProtocol.writeString(out, state.version());
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertEquals(DaemonProtocol.FRAME_REJECT, in.readByte());
+        }
+        // Still serving
+        assertTrue(server.isAlive());
+        assertTrue(DaemonClient.isRunning());
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        assertTrue(DaemonClient.stop());
+        server.join(10000);
+        assertFalse(server.isAlive());
+        assertFalse(DaemonProtocol.readState().isPresent());
+    }
+}
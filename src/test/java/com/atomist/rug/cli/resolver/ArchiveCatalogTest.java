@@ -0,0 +1,87 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+
+public class ArchiveCatalogTest extends AbstractLocalRepositoryTest {
+
+    @Test
+    public void testScansRepositoryWithoutCatalog() throws Exception {
+        archive("com.atomist", "first", "1.0.0");
+        archive("com.atomist.rugs", "second", "2.0.0");
+        // Not an archive without metadata
+        zip(new File(repository, "com/atomist/other/1.0.0/other-1.0.0.zip"), "a", "a");
+
+        assertEquals(Arrays.asList("com.atomist:first:1.0.0", "com.atomist.rugs:second:2.0.0"),
+                archives());
+        assertTrue(ArchiveCatalog.lastModified() > 0);
+    }
+
+    @Test
+    public void testUsesCatalogUntilUpdated() throws Exception {
+        archive("com.atomist", "first", "1.0.0");
+        assertEquals(Collections.singletonList("com.atomist:first:1.0.0"), archives());
+
+        // Installed behind the catalog's back
+        File second = archive("com.atomist", "second", "1.0.0");
+        assertEquals(Collections.singletonList("com.atomist:first:1.0.0"), archives());
+
+        ArchiveCatalog.update(Collections.singletonList(new DefaultArtifactDescriptor(
+                "com.atomist", "second", "1.0.0", Extension.ZIP, Scope.COMPILE, null,
+                second.toURI())));
+        assertEquals(Arrays.asList("com.atomist:first:1.0.0", "com.atomist:second:1.0.0"),
+                archives());
+    }
+
+    @Test
+    public void testLeavesOutDeletedArchives() throws Exception {
+        File first = archive("com.atomist", "first", "1.0.0");
+        archive("com.atomist", "second", "1.0.0");
+        assertEquals(2, archives().size());
+
+        assertTrue(first.delete());
+        assertEquals(Collections.singletonList("com.atomist:second:1.0.0"), archives());
+    }
+
+    @Test
+    public void testRebuildsCorruptCatalog() throws Exception {
+        archive("com.atomist", "first", "1.0.0");
+        assertEquals(1, archives().size());
+
+        archive("com.atomist", "second", "1.0.0");
+        File catalog = new File(DependencyResolutionCache.cacheRoot().getParentFile(),
+                "catalog.json");
+        FileUtils.write(catalog, "[ { \"group\": ", StandardCharsets.UTF_8);
+        assertEquals(2, archives().size());
+    }
+
+    private File archive(String group, String artifact, String version) throws Exception {
+        File dir = new File(repository,
+                group.replace('.', '/') + "/" + artifact + "/" + version);
+        FileUtils.write(new File(dir, artifact + "-" + version + "-metadata.json"), "{}",
+                StandardCharsets.UTF_8);
+        return zip(new File(dir, artifact + "-" + version + ".zip"), ".atomist/manifest.yml",
+                "artifact: " + artifact);
+    }
+
+    private List<String> archives() {
+        return ArchiveCatalog.archives().stream()
+                .map(a -> a.group() + ":" + a.artifact() + ":" + a.version()).sorted()
+                .collect(Collectors.toList());
+    }
+}
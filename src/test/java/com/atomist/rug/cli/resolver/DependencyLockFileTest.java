@@ -0,0 +1,143 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.command.CommandException;
+import com.atomist.rug.cli.resolver.DependencyResolutionCache.Resolution;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+
+public class DependencyLockFileTest extends AbstractLocalRepositoryTest {
+
+    private File manifest;
+    private File lockFile;
+    private File jar;
+    private ArtifactDescriptor artifact;
+
+    @Override
+    protected String configuration() {
+        return "configuration:\n  enable_lockfile: true\n";
+    }
+
+    @Before
+    public void setupProject() throws Exception {
+        File project = folder.newFolder("project");
+        manifest = new File(project, ".atomist/manifest.yml");
+        lockFile = new File(project, ".atomist/rug.lock");
+        FileUtils.write(manifest, "group: test\nartifact: project\nversion: 1.0.0\n",
+                StandardCharsets.UTF_8);
+        jar = new File(repository, "com/atomist/dep/1.0.0/dep-1.0.0.jar");
+        FileUtils.write(jar, "dependency", StandardCharsets.UTF_8);
+        artifact = new LocalArtifactDescriptor("test", "project", "1.0.0", Extension.ZIP,
+                Scope.COMPILE, project.toURI());
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        assertFalse(DependencyLockFile.read(artifact, null).isPresent());
+
+        write();
+        assertTrue(lockFile.exists());
+        Optional<Resolution> resolution = DependencyLockFile.read(artifact, null);
+        assertTrue(resolution.isPresent());
+        assertEquals(artifact.uri(), resolution.get().artifact().uri());
+        assertEquals(1, resolution.get().dependencies().size());
+        assertEquals(jar, new File(resolution.get().dependencies().get(0).uri()));
+    }
+
+    @Test
+    public void testInvalidatedByChangedManifest() throws Exception {
+        write();
+        FileUtils.write(manifest, "group: test\nartifact: project\nversion: 1.0.1\n",
+                StandardCharsets.UTF_8);
+        assertFalse(DependencyLockFile.read(artifact, null).isPresent());
+    }
+
+    @Test
+    public void testExistingLockIsNotRewritten() throws Exception {
+        write();
+        String content = FileUtils.readFileToString(lockFile, StandardCharsets.UTF_8);
+
+        // Ranges resolving to something newer don't change the pinned graph
+        DependencyLockFile.write(artifact, artifact,
+                Collections.singletonList(dependency("1.0.1")));
+        assertEquals(content, FileUtils.readFileToString(lockFile, StandardCharsets.UTF_8));
+        assertEquals("1.0.0",
+                DependencyLockFile.read(artifact, null).get().dependencies().get(0).version());
+    }
+
+    @Test
+    public void testRewrittenWithUpdate() throws Exception {
+        write();
+        commandLine("--update");
+        assertFalse(DependencyLockFile.read(artifact, null).isPresent());
+
+        DependencyLockFile.write(artifact, artifact,
+                Collections.singletonList(dependency("1.0.1")));
+        commandLine();
+        assertEquals("1.0.1",
+                DependencyLockFile.read(artifact, null).get().dependencies().get(0).version());
+    }
+
+    @Test(expected = CommandException.class)
+    public void testMissingDependencyFailsOffline() throws Exception {
+        write();
+        assertTrue(jar.delete());
+        commandLine("--offline");
+        DependencyLockFile.read(artifact, null);
+    }
+
+    @Test(expected = CommandException.class)
+    public void testChangedDependencyOfSameSizeFails() throws Exception {
+        write();
+        assertTrue(DependencyLockFile.read(artifact, null).isPresent());
+
+        long lastModified = jar.lastModified();
+        FileUtils.write(jar, "dependencz", StandardCharsets.UTF_8);
+        jar.setLastModified(lastModified + 2000);
+        DependencyLockFile.read(artifact, null);
+    }
+
+    @Test(expected = CommandException.class)
+    public void testCorruptLockFileFails() throws Exception {
+        write();
+        FileUtils.write(lockFile, "{ \"artifact\": ", StandardCharsets.UTF_8);
+        DependencyLockFile.read(artifact, null);
+    }
+
+    @Test
+    public void testCorruptChecksumsAreRecomputed() throws Exception {
+        write();
+        File checksums = new File(DependencyResolutionCache.cacheRoot().getParentFile(),
+                "checksums.json");
+        assertTrue(checksums.exists());
+
+        FileUtils.write(checksums, "{ \"com/atomist", StandardCharsets.UTF_8);
+        assertTrue(DependencyLockFile.read(artifact, null).isPresent());
+    }
+
+    private void write() {
+        DependencyLockFile.write(artifact, artifact,
+                Collections.singletonList(dependency("1.0.0")));
+    }
+
+    private ArtifactDescriptor dependency(String version) {
+        return new DefaultArtifactDescriptor("com.atomist", "dep", version, Extension.JAR,
+                Scope.COMPILE, null, jar.toURI());
+    }
+}
@@ -0,0 +1,80 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.resolver.DependencyResolutionCache.Resolution;
+import com.atomist.rug.resolver.ArtifactDescriptor;
+import com.atomist.rug.resolver.ArtifactDescriptor.Extension;
+import com.atomist.rug.resolver.ArtifactDescriptor.Scope;
+import com.atomist.rug.resolver.DefaultArtifactDescriptor;
+import com.atomist.rug.resolver.LocalArtifactDescriptor;
+
+public class DependencyResolutionCacheTest extends AbstractLocalRepositoryTest {
+
+    private File manifest;
+    private File jar;
+    private ArtifactDescriptor artifact;
+
+    @Before
+    public void setupProject() throws Exception {
+        File project = project("project", "group: test\nartifact: project\nversion: 1.0.0\n");
+        manifest = new File(project, ".atomist/manifest.yml");
+        jar = zip(repositoryFile("com.atomist", "dep", "1.0.0", "jar"), "Dep.class",
+                "dependency");
+        artifact = new LocalArtifactDescriptor("test", "project", "1.0.0", Extension.ZIP,
+                Scope.COMPILE, project.toURI());
+    }
+
+    @Test
+    public void testMissAndHit() {
+        assertFalse(DependencyResolutionCache.read(artifact).isPresent());
+
+        writeResolution();
+        Optional<Resolution> resolution = DependencyResolutionCache.read(artifact);
+        assertTrue(resolution.isPresent());
+        assertEquals("project", resolution.get().artifact().artifact());
+        assertEquals(1, resolution.get().dependencies().size());
+        assertEquals(jar.toURI(), resolution.get().dependencies().get(0).uri());
+    }
+
+    @Test
+    public void testInvalidatedByChangedManifest() throws Exception {
+        writeResolution();
+        write(manifest, "group: test\nartifact: project\nversion: 1.0.1\n");
+        assertFalse(DependencyResolutionCache.read(artifact).isPresent());
+    }
+
+    @Test
+    public void testInvalidatedByChangedDependency() throws Exception {
+        writeResolution();
+        zip(jar, "Dep.class", "changed dependency");
+        assertFalse(DependencyResolutionCache.read(artifact).isPresent());
+    }
+
+    @Test
+    public void testCorruptCacheFileIsDropped() throws Exception {
+        writeResolution();
+        File[] cacheFiles = DependencyResolutionCache.cacheRoot().listFiles();
+        assertEquals(1, cacheFiles.length);
+
+        write(cacheFiles[0], "{ \"artifact\": ");
+        assertFalse(DependencyResolutionCache.read(artifact).isPresent());
+        assertFalse(cacheFiles[0].exists());
+    }
+
+    private void writeResolution() {
+        DependencyResolutionCache.write(artifact, artifact,
+                Collections.singletonList(new DefaultArtifactDescriptor("com.atomist", "dep",
+                        "1.0.0", Extension.JAR, Scope.COMPILE, null, jar.toURI())));
+    }
+}
@@ -0,0 +1,71 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.resolver.LocalRepositoryLock.Lock;
+
+public class LocalRepositoryLockTest extends AbstractLocalRepositoryTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setupExecutor() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testUnrelatedFilesDontWaitForEachOther() throws Exception {
+        try (Lock lock = LocalRepositoryLock.lock(new File(repository, "a/a-1.0.0.jar"))) {
+            Future<String> other = executor.submit(() -> LocalRepositoryLock
+                    .withLock(new File(repository, "b/b-1.0.0.jar"), () -> "locked"));
+            assertEquals("locked", other.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testSameFileWaitsUntilReleased() throws Exception {
+        File file = new File(repository, "a/a-1.0.0.jar");
+        Future<String> other;
+        try (Lock lock = LocalRepositoryLock.lock(file)) {
+            other = executor.submit(() -> LocalRepositoryLock.withLock(file, () -> "locked"));
+            try {
+                other.get(200, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e) {
+                // Expected while we hold the lock
+            }
+            assertFalse(other.isDone());
+        }
+        assertEquals("locked", other.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReentrant() throws Exception {
+        File file = new File(repository, "a/a-1.0.0.jar");
+        try (Lock lock = LocalRepositoryLock.lock(file)) {
+            assertEquals("locked", LocalRepositoryLock.withLock(file, () -> "locked"));
+        }
+        // Still usable from another thread after both got released
+        assertEquals("locked", executor
+                .submit(() -> LocalRepositoryLock.withLock(file, () -> "locked"))
+                .get(5, TimeUnit.SECONDS));
+    }
+}
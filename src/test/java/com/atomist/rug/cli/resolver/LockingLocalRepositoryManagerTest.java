@@ -0,0 +1,72 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.internal.impl.EnhancedLocalRepositoryManagerFactory;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.resolver.LocalRepositoryLock.Lock;
+
+public class LockingLocalRepositoryManagerTest extends AbstractLocalRepositoryTest {
+
+    private ExecutorService executor;
+    private DefaultRepositorySystemSession session;
+    private LockingLocalRepositoryManager manager;
+    private LocalArtifactRequest request;
+    private File file;
+
+    @Before
+    public void setupManager() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        session = MavenRepositorySystemUtils.newSession();
+        manager = new LockingLocalRepositoryManager(new EnhancedLocalRepositoryManagerFactory()
+                .newInstance(session, new LocalRepository(repository)));
+        request = new LocalArtifactRequest(new DefaultArtifact("com.atomist:dep:jar:1.0.0"),
+                Collections.emptyList(), null);
+        file = new File(repository, manager.getPathForLocalArtifact(request.getArtifact()));
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMissingArtifact() {
+        assertFalse(manager.find(session, request).isAvailable());
+    }
+
+    @Test
+    public void testReusesConcurrentDownload() throws Exception {
+        Future<LocalArtifactResult> result;
+        try (Lock lock = LocalRepositoryLock.lock(file)) {
+            // Another download is in flight while the artifact gets looked up
+            result = executor.submit(() -> manager.find(session, request));
+            Thread.sleep(200);
+            assertFalse(result.isDone());
+            FileUtils.write(file, "downloaded", StandardCharsets.UTF_8);
+        }
+        assertTrue(result.get(5, TimeUnit.SECONDS).isAvailable());
+        assertEquals(file, result.get().getFile());
+    }
+}
@@ -0,0 +1,52 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+import com.atomist.rug.cli.resolver.DependencyResolverFactory.ReportingDependencyVerificationListener;
+import com.atomist.rug.cli.utils.Profiler;
+
+public class ReportingDependencyVerificationListenerTest extends AbstractLocalRepositoryTest {
+
+    @After
+    public void resetProfiler() {
+        Profiler.reset();
+    }
+
+    @Test
+    public void testOverlappingVerifications() throws Exception {
+        File first = zip(new File(repository, "com/atomist/first/1.0.0/first-1.0.0.jar"),
+                "First.class", "first");
+        File second = zip(new File(repository, "com/atomist/second/1.0.0/second-1.0.0.jar"),
+                "Second.class", "second");
+        VerificationLedger ledger = new VerificationLedger();
+        ledger.isVerified("com.atomist", "first", "1.0.0", first);
+        ledger.isVerified("com.atomist", "second", "1.0.0", second);
+
+        Profiler.enable();
+        ReportingDependencyVerificationListener listener = new ReportingDependencyVerificationListener(
+                ledger);
+        listener.starting("com.atomist", "first", "1.0.0");
+        listener.starting("com.atomist", "second", "1.0.0");
+        listener.succeeded("com.atomist", "first", "1.0.0");
+        listener.failed("com.atomist", "second", "1.0.0", new Exception("Invalid signature"));
+
+        // Both verifications got their own span
+        Optional<String[]> verify = Profiler.summary().stream()
+                .filter(p -> p[0].trim().equals("verify")).findFirst();
+        assertTrue(verify.isPresent());
+        assertEquals("2", verify.get()[1]);
+
+        // Only the successful one got recorded
+        assertTrue(ledger.isVerified("com.atomist", "first", "1.0.0", first));
+        assertFalse(ledger.isVerified("com.atomist", "second", "1.0.0", second));
+    }
+}
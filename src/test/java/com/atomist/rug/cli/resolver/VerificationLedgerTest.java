@@ -0,0 +1,87 @@
+package com.atomist.rug.cli.resolver;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractLocalRepositoryTest;
+
+public class VerificationLedgerTest extends AbstractLocalRepositoryTest {
+
+    private File jar;
+
+    @Before
+    public void setupJar() throws Exception {
+        jar = jar("dependency");
+    }
+
+    @Test
+    public void testVerifiedAcrossLedgers() {
+        VerificationLedger ledger = new VerificationLedger();
+        assertFalse(isVerified(ledger));
+        ledger.verified("com.atomist", "dep", "1.0.0");
+        assertTrue(isVerified(ledger));
+        ledger.save();
+
+        assertTrue(isVerified(new VerificationLedger()));
+    }
+
+    @Test
+    public void testOnlyVerifiedAfterSuccessfulVerification() {
+        VerificationLedger ledger = new VerificationLedger();
+        // Nothing to record for a jar that wasn't looked up first
+        ledger.verified("com.atomist", "dep", "1.0.0");
+        ledger.save();
+        assertFalse(isVerified(new VerificationLedger()));
+    }
+
+    @Test
+    public void testChangedJarIsVerifiedAgain() throws Exception {
+        verify();
+        long lastModified = jar.lastModified();
+        // Same size, different content and timestamp
+        jar("dEpendency");
+        jar.setLastModified(lastModified + 10000);
+
+        assertFalse(isVerified(new VerificationLedger()));
+    }
+
+    @Test
+    public void testTouchedJarStaysVerified() throws Exception {
+        verify();
+        long touched = jar.lastModified() + 10000;
+        jar.setLastModified(touched);
+
+        VerificationLedger ledger = new VerificationLedger();
+        assertTrue(isVerified(ledger));
+        ledger.save();
+
+        // The new timestamp got recorded; size and timestamp alone now identify the jar
+        jar("dEpendency");
+        jar.setLastModified(touched);
+        assertTrue(isVerified(new VerificationLedger()));
+    }
+
+    private void verify() {
+        VerificationLedger ledger = new VerificationLedger();
+        isVerified(ledger);
+        ledger.verified("com.atomist", "dep", "1.0.0");
+        ledger.save();
+    }
+
+    private boolean isVerified(VerificationLedger ledger) {
+        return ledger.isVerified("com.atomist", "dep", "1.0.0", jar);
+    }
+
+    private File jar(String content) throws Exception {
+        File file = new File(repository, "com/atomist/dep/1.0.0/dep-1.0.0.jar");
+        FileUtils.write(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
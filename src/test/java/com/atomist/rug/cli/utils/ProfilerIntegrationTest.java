@@ -0,0 +1,47 @@
+package com.atomist.rug.cli.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.atomist.rug.cli.AbstractCommandTest;
+import com.atomist.rug.cli.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ProfilerIntegrationTest extends AbstractCommandTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCommandSpansInTrace() throws Exception {
+        File profiles = new File(FileUtils.getUserDirectoryPath(),
+                Constants.ATOMIST_ROOT + File.separator + "profiles");
+        long started = System.currentTimeMillis() - 1000;
+
+        assertCommandLine(0, () -> {
+            try {
+                File[] traces = profiles.listFiles(
+                        f -> f.getName().endsWith(".json") && f.lastModified() >= started);
+                assertEquals(1, traces.length);
+
+                Map<String, Object> trace = new ObjectMapper().readValue(traces[0], Map.class);
+                List<String> names = ((List<Map<String, Object>>) trace.get("traceEvents"))
+                        .stream().map(e -> (String) e.get("name")).collect(Collectors.toList());
+                // Recorded by the command in the rug classloader
+                assertTrue(names.contains("load rugs"));
+                assertTrue(names.contains("command edit"));
+                Arrays.stream(traces).forEach(File::delete);
+            }
+            finally {
+                Profiler.reset();
+            }
+        }, "edit", "LogEntriesTesting", "-l", "-d", "--profile");
+    }
+}